@@ -0,0 +1,109 @@
+package api;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Holds the estimated number of administration instances in which a pair of
+ * drugs was administered together, scaled up from a sample of instances, with
+ * a confidence interval.
+ *
+ * @author Monica
+ */
+public class DrugPairEstimate {
+
+	private final String _drugA;
+	private final String _drugB;
+	private final int _sampledCount;
+	private final double _estimate;
+	private final double _low;
+	private final double _high;
+
+	/**
+	 * Constructor
+	 *
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @param sampledCount_
+	 *            Number of sampled administration instances with both drugs.
+	 * @param estimate_
+	 *            Estimated number of administration instances with both drugs.
+	 * @param low_
+	 *            Lower bound of the confidence interval of the estimate.
+	 * @param high_
+	 *            Upper bound of the confidence interval of the estimate.
+	 */
+	public DrugPairEstimate(final String drugA_, final String drugB_,
+			final int sampledCount_, final double estimate_,
+			final double low_, final double high_) {
+		_drugA = drugA_;
+		_drugB = drugB_;
+		_sampledCount = sampledCount_;
+		_estimate = estimate_;
+		_low = low_;
+		_high = high_;
+	}
+
+	/**
+	 * @return A drug in the pair.
+	 */
+	public String getDrugA() {
+		return _drugA;
+	}
+
+	/**
+	 * @return Another drug in the pair.
+	 */
+	public String getDrugB() {
+		return _drugB;
+	}
+
+	/**
+	 * @return Number of sampled administration instances with both drugs.
+	 */
+	public int getSampledCount() {
+		return _sampledCount;
+	}
+
+	/**
+	 * @return Estimated number of administration instances with both drugs.
+	 */
+	public double getEstimate() {
+		return _estimate;
+	}
+
+	/**
+	 * @return Lower bound of the confidence interval of the estimate.
+	 */
+	public double getLow() {
+		return _low;
+	}
+
+	/**
+	 * @return Upper bound of the confidence interval of the estimate.
+	 */
+	public double getHigh() {
+		return _high;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this,
+				ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+
+	@Override
+	public int hashCode() {
+		return HashCodeBuilder.reflectionHashCode(this);
+	}
+
+	@Override
+	public boolean equals(Object obj_) {
+		return EqualsBuilder.reflectionEquals(this, obj_);
+	}
+
+}
@@ -0,0 +1,146 @@
+package api;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Holds association statistics for a pair of drugs administered together,
+ * derived from the number of administration instances containing the pair,
+ * each of its drugs, and overall.
+ *
+ * @author Monica
+ */
+public class DrugPairStatistics {
+
+	private final String _drugA;
+	private final String _drugB;
+	private final int _pairCount;
+	private final int _drugACount;
+	private final int _drugBCount;
+	private final long _totalCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @param pairCount_
+	 *            Number of administration instances with both drugs.
+	 * @param drugACount_
+	 *            Number of administration instances with drug A.
+	 * @param drugBCount_
+	 *            Number of administration instances with drug B.
+	 * @param totalCount_
+	 *            Total number of administration instances.
+	 */
+	public DrugPairStatistics(final String drugA_, final String drugB_,
+			final int pairCount_, final int drugACount_, final int drugBCount_,
+			final long totalCount_) {
+		_drugA = drugA_;
+		_drugB = drugB_;
+		_pairCount = pairCount_;
+		_drugACount = drugACount_;
+		_drugBCount = drugBCount_;
+		_totalCount = totalCount_;
+	}
+
+	/**
+	 * @return A drug in the pair.
+	 */
+	public String getDrugA() {
+		return _drugA;
+	}
+
+	/**
+	 * @return Another drug in the pair.
+	 */
+	public String getDrugB() {
+		return _drugB;
+	}
+
+	/**
+	 * @return Number of administration instances with both drugs.
+	 */
+	public int getPairCount() {
+		return _pairCount;
+	}
+
+	/**
+	 * @return Fraction of all administration instances with both drugs.
+	 */
+	public double getSupport() {
+		return (double) _pairCount / _totalCount;
+	}
+
+	/**
+	 * @return Fraction of administration instances with drug A that also have
+	 *         drug B.
+	 */
+	public double getConfidenceAToB() {
+		return (double) _pairCount / _drugACount;
+	}
+
+	/**
+	 * @return Fraction of administration instances with drug B that also have
+	 *         drug A.
+	 */
+	public double getConfidenceBToA() {
+		return (double) _pairCount / _drugBCount;
+	}
+
+	/**
+	 * @return How many times more often the drugs are given together than
+	 *         they would be if they were given independently.
+	 */
+	public double getLift() {
+		return (double) _pairCount * _totalCount
+				/ ((double) _drugACount * _drugBCount);
+	}
+
+	/**
+	 * @return Pointwise mutual information of the drugs, log2 of the lift.
+	 */
+	public double getPointwiseMutualInformation() {
+		return Math.log(getLift()) / Math.log(2);
+	}
+
+	/**
+	 * @return Pearson's chi-square statistic of the 2x2 table of instances
+	 *         with and without each drug; larger means stronger evidence the
+	 *         drugs are not given independently.
+	 */
+	public double getChiSquare() {
+		double both = _pairCount;
+		double onlyA = _drugACount - _pairCount;
+		double onlyB = _drugBCount - _pairCount;
+		double neither = _totalCount - _drugACount - _drugBCount + _pairCount;
+		double denominator = (double) _drugACount * _drugBCount
+				* (_totalCount - _drugACount) * (_totalCount - _drugBCount);
+		if (denominator == 0) {
+			return 0;
+		}
+		double crossDifference = both * neither - onlyA * onlyB;
+		return _totalCount * crossDifference * crossDifference / denominator;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this,
+				ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+
+	@Override
+	public int hashCode() {
+		return HashCodeBuilder.reflectionHashCode(this);
+	}
+
+	@Override
+	public boolean equals(Object obj_) {
+		return EqualsBuilder.reflectionEquals(this, obj_);
+	}
+
+}
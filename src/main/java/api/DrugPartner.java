@@ -0,0 +1,62 @@
+package api;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Holds a drug administered together with another drug and the number of
+ * administration instances in which the two were given together.
+ *
+ * @author Monica
+ */
+public class DrugPartner {
+
+	private final String _partner;
+	private final int _count;
+
+	/**
+	 * Constructor
+	 *
+	 * @param partner_
+	 *            The drug given together with another.
+	 * @param count_
+	 *            Number of administration instances with both drugs.
+	 */
+	public DrugPartner(final String partner_, final int count_) {
+		_partner = partner_;
+		_count = count_;
+	}
+
+	/**
+	 * @return The drug given together with another.
+	 */
+	public String getPartner() {
+		return _partner;
+	}
+
+	/**
+	 * @return Number of administration instances with both drugs.
+	 */
+	public int getCount() {
+		return _count;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this,
+				ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+
+	@Override
+	public int hashCode() {
+		return HashCodeBuilder.reflectionHashCode(this);
+	}
+
+	@Override
+	public boolean equals(Object obj_) {
+		return EqualsBuilder.reflectionEquals(this, obj_);
+	}
+
+}
@@ -0,0 +1,108 @@
+package calc;
+
+/**
+ * Holds estimates of the size of a drug administration input, as gathered by a
+ * sampling pre-pass, for use in planning how to calculate its drug pairs.
+ *
+ * @author Monica
+ */
+public class CardinalityEstimate {
+
+	private final long _rows;
+	private final long _patients;
+	private final long _administrationInstances;
+	private final long _drugs;
+	private final long _drugPairs;
+	private final long _sampledRows;
+	private final boolean _exhaustive;
+
+	/**
+	 * Constructor
+	 *
+	 * @param rows_
+	 *            Estimated number of rows (single drug administrations).
+	 * @param patients_
+	 *            Estimated number of distinct patients.
+	 * @param administrationInstances_
+	 *            Estimated number of distinct administration instances.
+	 * @param drugs_
+	 *            Estimated number of distinct drugs.
+	 * @param drugPairs_
+	 *            Estimated number of distinct drug pairs administered
+	 *            together.
+	 * @param sampledRows_
+	 *            The number of rows the estimates were drawn from.
+	 * @param exhaustive_
+	 *            Whether every row of the input was sampled.
+	 */
+	public CardinalityEstimate(final long rows_, final long patients_,
+			final long administrationInstances_, final long drugs_,
+			final long drugPairs_, final long sampledRows_,
+			final boolean exhaustive_) {
+		_rows = rows_;
+		_patients = patients_;
+		_administrationInstances = administrationInstances_;
+		_drugs = drugs_;
+		_drugPairs = drugPairs_;
+		_sampledRows = sampledRows_;
+		_exhaustive = exhaustive_;
+	}
+
+	/**
+	 * @return Estimated number of rows (single drug administrations).
+	 */
+	public long getRows() {
+		return _rows;
+	}
+
+	/**
+	 * @return Estimated number of distinct patients.
+	 */
+	public long getPatients() {
+		return _patients;
+	}
+
+	/**
+	 * @return Estimated number of distinct administration instances.
+	 */
+	public long getAdministrationInstances() {
+		return _administrationInstances;
+	}
+
+	/**
+	 * @return Estimated number of distinct drugs.
+	 */
+	public long getDrugs() {
+		return _drugs;
+	}
+
+	/**
+	 * @return Estimated number of distinct drug pairs administered together.
+	 */
+	public long getDrugPairs() {
+		return _drugPairs;
+	}
+
+	/**
+	 * @return The number of rows the estimates were drawn from.
+	 */
+	public long getSampledRows() {
+		return _sampledRows;
+	}
+
+	/**
+	 * @return Whether every row of the input was sampled.
+	 */
+	public boolean isExhaustive() {
+		return _exhaustive;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"rows=%d patients=%d instances=%d drugs=%d pairs=%d "
+						+ "(from %d sampled rows%s)", _rows, _patients,
+				_administrationInstances, _drugs, _drugPairs, _sampledRows,
+				_exhaustive ? ", whole input" : "");
+	}
+}
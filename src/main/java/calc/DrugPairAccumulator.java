@@ -0,0 +1,366 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+import api.DrugPairStatistics;
+import api.SingleDrugAdministration;
+
+/**
+ * Incrementally accumulates drug administrations into the grouping of
+ * administration instance to drugs administered, and keeps the drug pair
+ * occurrence counts up to date as each administration is added. Because the
+ * pair counts never lag behind the grouping, the two together form a
+ * consistent snapshot at any point, which is what allows a long calculation to
+ * be checkpointed and resumed.
+ * <p>
+ * In the same pass it counts the number of administration instances each drug
+ * was given in, so that association statistics (support, confidence, lift)
+ * can be calculated for every pair without reading the input again.
+ * <p>
+ * Accumulators built over separate parts of the input, such as by a parallel
+ * stream, can be combined with {@link #merge(DrugPairAccumulator)}, even when
+ * one administration instance is spread across several parts.
+ *
+ * @author Monica
+ */
+public class DrugPairAccumulator {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairAccumulator.class);
+
+	private final Map<AdministrationInstance, Set<String>> _drugAdminMap;
+	private final DrugPairCounts _drugPairCounts;
+	private final Map<String, Integer> _drugToInstanceCount;
+	private long _drugAdministrationCount;
+
+	/**
+	 * Constructor for an empty accumulator.
+	 */
+	public DrugPairAccumulator() {
+		this(new HashMap<AdministrationInstance, Set<String>>(),
+				new HashMap<DrugPair, Integer>(), 0);
+	}
+
+	/**
+	 * Constructor for an accumulator restored from previously saved state. The
+	 * given maps are used directly, not copied.
+	 *
+	 * @param drugAdminMap_
+	 *            A map of administration instance to drugs administered during
+	 *            that instance.
+	 * @param drugPairToOccurrenceMap_
+	 *            A map of drug pairs to number of times administered together,
+	 *            consistent with the administration instance map.
+	 * @param drugAdministrationCount_
+	 *            The number of drug administrations added so far.
+	 */
+	public DrugPairAccumulator(
+			final Map<AdministrationInstance, Set<String>> drugAdminMap_,
+			final Map<DrugPair, Integer> drugPairToOccurrenceMap_,
+			final long drugAdministrationCount_) {
+		this(drugAdminMap_, new HashDrugPairCounts(drugPairToOccurrenceMap_),
+				drugAdministrationCount_);
+	}
+
+	/**
+	 * Constructor for an accumulator that counts drug pairs into the given
+	 * counting structure. The given map and counts are used directly, not
+	 * copied, so several accumulators can share one set of counts as long as
+	 * they see disjoint administration instances.
+	 *
+	 * @param drugAdminMap_
+	 *            A map of administration instance to drugs administered during
+	 *            that instance.
+	 * @param drugPairCounts_
+	 *            The drug pair counts, consistent with the administration
+	 *            instance map.
+	 * @param drugAdministrationCount_
+	 *            The number of drug administrations added so far.
+	 */
+	public DrugPairAccumulator(
+			final Map<AdministrationInstance, Set<String>> drugAdminMap_,
+			final DrugPairCounts drugPairCounts_,
+			final long drugAdministrationCount_) {
+		_drugAdminMap = drugAdminMap_;
+		_drugPairCounts = drugPairCounts_;
+		_drugAdministrationCount = drugAdministrationCount_;
+		_drugToInstanceCount = new HashMap<String, Integer>();
+		for (Set<String> drugSet : drugAdminMap_.values()) {
+			for (String drug : drugSet) {
+				addInstanceCount(drug, 1);
+			}
+		}
+	}
+
+	/**
+	 * Add a single drug administration. If the drug is new to its
+	 * administration instance, it is paired with every drug already
+	 * administered during that instance.
+	 *
+	 * @param drugAdministration_
+	 *            The drug administration to add.
+	 */
+	public void add(final SingleDrugAdministration drugAdministration_) {
+		AdministrationInstance adminInstance = drugAdministration_
+				.getAdministrationInstance();
+		String drugAdministered = drugAdministration_.getDrug();
+		_drugAdministrationCount++;
+
+		Set<String> drugsSoFar = _drugAdminMap.get(adminInstance);
+		if (drugsSoFar == null) {
+			// This is a new administration instance.
+			drugsSoFar = new HashSet<String>();
+			_drugAdminMap.put(adminInstance, drugsSoFar);
+		}
+		if (!drugsSoFar.add(drugAdministered)) {
+			// The drug was already administered during this instance, so it
+			// cannot form any new pairs.
+			return;
+		}
+		addInstanceCount(drugAdministered, 1);
+		for (String otherDrug : drugsSoFar) {
+			if (!otherDrug.equals(drugAdministered)) {
+				_drugPairCounts.increment(otherDrug, drugAdministered);
+			}
+		}
+	}
+
+	/**
+	 * Add a batch of drug administrations.
+	 *
+	 * @param drugAdministrations_
+	 *            The drug administrations to add.
+	 */
+	public void addBatch(
+			final Iterable<SingleDrugAdministration> drugAdministrations_) {
+		for (SingleDrugAdministration drugAdministration : drugAdministrations_) {
+			add(drugAdministration);
+		}
+	}
+
+	/**
+	 * Merge the drug administrations accumulated by another accumulator into
+	 * this one. Where both accumulators hold the same administration instance,
+	 * the drugs are unioned and the pair counts corrected so that every pair
+	 * of the combined instance is counted exactly once. The other accumulator
+	 * must not be used afterwards.
+	 *
+	 * @param other_
+	 *            The accumulator to merge in. It must not share its drug pair
+	 *            counts with this one.
+	 * @return This accumulator.
+	 */
+	public DrugPairAccumulator merge(final DrugPairAccumulator other_) {
+		if (other_._drugPairCounts == _drugPairCounts) {
+			throw new IllegalArgumentException(
+					"Cannot merge accumulators that share drug pair counts.");
+		}
+		for (Map.Entry<DrugPair, Integer> entry : other_._drugPairCounts
+				.toMap().entrySet()) {
+			String[] drugs = entry.getKey().getDrugs().toArray(new String[2]);
+			_drugPairCounts.add(drugs[0], drugs[1], entry.getValue());
+		}
+		for (Map.Entry<String, Integer> entry : other_._drugToInstanceCount
+				.entrySet()) {
+			addInstanceCount(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<AdministrationInstance, Set<String>> entry : other_._drugAdminMap
+				.entrySet()) {
+			Set<String> drugsHere = _drugAdminMap.get(entry.getKey());
+			if (drugsHere == null) {
+				_drugAdminMap.put(entry.getKey(), entry.getValue());
+			} else {
+				mergeInstance(drugsHere, entry.getValue());
+			}
+		}
+		_drugAdministrationCount += other_._drugAdministrationCount;
+		return this;
+	}
+
+	/**
+	 * Get the drug pairs that occur with at least the minimum specified
+	 * occurrence among the drug administrations added so far. Equivalent to
+	 * {@link #getDrugPairsWithMinOccurrence(int)}.
+	 *
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pair required.
+	 * @return Only those drug pairs meeting the minimum occurrence.
+	 */
+	public Set<DrugPair> result(final int minOccurrence_) {
+		return getDrugPairsWithMinOccurrence(minOccurrence_);
+	}
+
+	/**
+	 * Calculate association statistics for every drug pair that occurs with at
+	 * least the minimum specified occurrence and lift. Per-drug and total
+	 * instance counts were gathered while accumulating, so no further pass over
+	 * the drug administrations is needed.
+	 *
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pair required.
+	 * @param minLift_
+	 *            The minimum lift of the drug pair required; 0 for no lift
+	 *            filter.
+	 * @return The statistics of the drug pairs meeting both minimums.
+	 */
+	public List<DrugPairStatistics> getDrugPairStatistics(
+			final int minOccurrence_, final double minLift_) {
+		long totalInstances = _drugAdminMap.size();
+		List<DrugPairStatistics> statistics = new ArrayList<DrugPairStatistics>();
+		for (DrugPair drugPair : _drugPairCounts
+				.getDrugPairsWithMinOccurrence(minOccurrence_)) {
+			String[] drugs = drugPair.getDrugs().toArray(new String[2]);
+			String drugA = drugs[0];
+			String drugB = drugs[1];
+			if (drugA.compareTo(drugB) > 0) {
+				drugA = drugs[1];
+				drugB = drugs[0];
+			}
+			DrugPairStatistics pairStatistics = new DrugPairStatistics(drugA,
+					drugB, _drugPairCounts.getOccurrence(drugA, drugB),
+					getInstanceCount(drugA), getInstanceCount(drugB),
+					totalInstances);
+			if (pairStatistics.getLift() >= minLift_) {
+				statistics.add(pairStatistics);
+			}
+		}
+		LOGGER.info(
+				"Calculated association statistics for {} drug pairs with minimum occurrence {} and lift {}.",
+				statistics.size(), minOccurrence_, minLift_);
+		return statistics;
+	}
+
+	/**
+	 * @param drug_
+	 *            A drug.
+	 * @return The number of administration instances the drug was given in.
+	 */
+	public int getInstanceCount(final String drug_) {
+		Integer count = _drugToInstanceCount.get(drug_);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Get a collector that accumulates a stream of drug administrations. The
+	 * collector is unordered and safe to use on parallel streams: each thread
+	 * accumulates its own part and the parts are merged.
+	 *
+	 * @return The collector.
+	 */
+	public static Collector<SingleDrugAdministration, ?, DrugPairAccumulator> collector() {
+		return Collector.of(DrugPairAccumulator::new, DrugPairAccumulator::add,
+				DrugPairAccumulator::merge, Collector.Characteristics.UNORDERED,
+				Collector.Characteristics.IDENTITY_FINISH);
+	}
+
+	/**
+	 * Get the drug pairs that occur with at least the minimum specified
+	 * occurrence among the drug administrations added so far.
+	 *
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pair required.
+	 * @return Only those drug pairs meeting the minimum occurrence.
+	 */
+	public Set<DrugPair> getDrugPairsWithMinOccurrence(final int minOccurrence_) {
+		LOGGER.info(
+				"Going to calculate the drug pairs with minimum occurrence {} "
+						+ "from {} accumulated drug administrations.",
+				minOccurrence_, _drugAdministrationCount);
+		return _drugPairCounts.getDrugPairsWithMinOccurrence(minOccurrence_);
+	}
+
+	/**
+	 * @return The map of administration instance to drugs administered during
+	 *         that instance.
+	 */
+	public Map<AdministrationInstance, Set<String>> getMapOfAdminInstanceToDrugsAdministered() {
+		return _drugAdminMap;
+	}
+
+	/**
+	 * @return The map of drug pairs to number of times administered together.
+	 */
+	public Map<DrugPair, Integer> getMapOfDrugPairToOccurrence() {
+		return _drugPairCounts.toMap();
+	}
+
+	/**
+	 * @return The drug pair counts.
+	 */
+	public DrugPairCounts getDrugPairCounts() {
+		return _drugPairCounts;
+	}
+
+	/**
+	 * @return The number of drug administrations added so far.
+	 */
+	public long getDrugAdministrationCount() {
+		return _drugAdministrationCount;
+	}
+
+	private void addInstanceCount(final String drug_, final int instances_) {
+		Integer currentCount = _drugToInstanceCount.get(drug_);
+		if (currentCount == null) {
+			_drugToInstanceCount.put(drug_, instances_);
+		} else {
+			_drugToInstanceCount.put(drug_, currentCount + instances_);
+		}
+	}
+
+	/**
+	 * Union another part's drugs of an administration instance into this
+	 * part's, correcting the pair counts. Both parts have already counted the
+	 * pairs within their own drugs, so the pairs within the drugs they share
+	 * were counted twice, and the pairs between the drugs only one part has
+	 * were not counted at all.
+	 *
+	 * @param drugsHere_
+	 *            This accumulator's drugs for the instance; updated in place.
+	 * @param drugsThere_
+	 *            The other accumulator's drugs for the instance.
+	 */
+	private void mergeInstance(final Set<String> drugsHere_,
+			final Set<String> drugsThere_) {
+		List<String> shared = new ArrayList<String>();
+		List<String> onlyHere = new ArrayList<String>();
+		List<String> onlyThere = new ArrayList<String>();
+		for (String drug : drugsHere_) {
+			if (drugsThere_.contains(drug)) {
+				shared.add(drug);
+			} else {
+				onlyHere.add(drug);
+			}
+		}
+		for (String drug : drugsThere_) {
+			if (!drugsHere_.contains(drug)) {
+				onlyThere.add(drug);
+			}
+		}
+		for (String drug : shared) {
+			// Both parts counted this instance for the drug.
+			addInstanceCount(drug, -1);
+		}
+		for (int a = 0; a < shared.size(); a++) {
+			for (int b = a + 1; b < shared.size(); b++) {
+				_drugPairCounts.add(shared.get(a), shared.get(b), -1);
+			}
+		}
+		for (String drugHere : onlyHere) {
+			for (String drugThere : onlyThere) {
+				_drugPairCounts.increment(drugHere, drugThere);
+			}
+		}
+		drugsHere_.addAll(onlyThere);
+	}
+}
@@ -5,6 +5,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +54,56 @@ public class DrugPairCalculator {
 		return drugPairsWithMinOccurrence;
 	}
 
+	/**
+	 * Get all drug pairs administered together with a given minimum occurrence
+	 * from a stream of drug administrations, without first collecting them
+	 * into a list. The stream may be parallel.
+	 * 
+	 * @param drugAdministrations_
+	 *            A stream of drug administrations.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @return A set of all drug pairs administered together with a given
+	 *         minimum occurrence.
+	 */
+	public static Set<DrugPair> getDrugPairsWithMinOccurence(
+			final Stream<SingleDrugAdministration> drugAdministrations_,
+			final int minOccurrence_) {
+		return accumulate(drugAdministrations_).result(minOccurrence_);
+	}
+
+	/**
+	 * Accumulate a stream of drug administrations. Parallel streams are
+	 * accumulated in parts that are then merged.
+	 * 
+	 * @param drugAdministrations_
+	 *            A stream of drug administrations.
+	 * @return The accumulator, to which more administrations may be added or
+	 *         other accumulators merged before taking the result.
+	 */
+	public static DrugPairAccumulator accumulate(
+			final Stream<SingleDrugAdministration> drugAdministrations_) {
+		return drugAdministrations_.collect(DrugPairAccumulator.collector());
+	}
+
+	/**
+	 * Accumulate the drug administrations of a spliterator.
+	 * 
+	 * @param drugAdministrations_
+	 *            A spliterator over drug administrations.
+	 * @param parallel_
+	 *            Whether to split the spliterator and accumulate its parts in
+	 *            parallel.
+	 * @return The accumulator.
+	 */
+	public static DrugPairAccumulator accumulate(
+			final Spliterator<SingleDrugAdministration> drugAdministrations_,
+			final boolean parallel_) {
+		return accumulate(StreamSupport.stream(drugAdministrations_,
+				parallel_));
+	}
+
 	/**
 	 * Get the drug pairs that occur with at least the minimum specified
 	 * occurrence.
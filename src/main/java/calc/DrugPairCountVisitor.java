@@ -0,0 +1,23 @@
+package calc;
+
+/**
+ * Receives drug pair counts one pair at a time, so the caller does not have to
+ * hold every drug pair in a map.
+ * 
+ * @author Monica
+ */
+public interface DrugPairCountVisitor {
+
+	/**
+	 * Called for each drug pair counted at least once.
+	 * 
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @param count_
+	 *            The number of times the pair was administered together.
+	 */
+	void visit(String drugA_, String drugB_, int count_);
+
+}
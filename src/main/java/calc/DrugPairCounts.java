@@ -0,0 +1,90 @@
+package calc;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import api.DrugPair;
+
+/**
+ * Counts the number of times each pair of drugs was administered together.
+ * Implementations trade memory for speed differently depending on how many
+ * distinct drugs and drug pairs there are.
+ * 
+ * @author Monica
+ */
+public interface DrugPairCounts {
+
+	/**
+	 * Count one more occurrence of a drug pair.
+	 * 
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 */
+	void increment(String drugA_, String drugB_);
+
+	/**
+	 * Add a number of occurrences to a drug pair.
+	 * 
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @param occurrences_
+	 *            The number of occurrences to add; may be negative.
+	 */
+	void add(String drugA_, String drugB_, int occurrences_);
+
+	/**
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @return The number of times the pair was administered together.
+	 */
+	int getOccurrence(String drugA_, String drugB_);
+
+	/**
+	 * @return The number of distinct drug pairs counted at least once.
+	 */
+	int size();
+
+	/**
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pair required.
+	 * @return Only those drug pairs meeting the minimum occurrence.
+	 */
+	Set<DrugPair> getDrugPairsWithMinOccurrence(int minOccurrence_);
+
+	/**
+	 * @return A map of every drug pair counted at least once to its number of
+	 *         occurrences.
+	 */
+	Map<DrugPair, Integer> toMap();
+
+	/**
+	 * Visit every drug pair counted at least once, without building a map of
+	 * them.
+	 * 
+	 * @param visitor_
+	 *            The visitor to give each drug pair and its count.
+	 */
+	void forEach(DrugPairCountVisitor visitor_);
+
+	/**
+	 * Visit every drug pair counted at least once in parallel, without
+	 * building a map of them. The drug pairs are split into disjoint parts
+	 * that are visited on the common fork/join pool, each by a visitor of its
+	 * own, so the visitors need not be thread safe.
+	 * 
+	 * @param visitorSupplier_
+	 *            Supplies a new visitor for each part.
+	 * @return The visitor of each part, for the caller to combine.
+	 */
+	<V extends DrugPairCountVisitor> List<V> forEachParallel(
+			Supplier<V> visitorSupplier_);
+
+}
@@ -0,0 +1,166 @@
+package calc;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.joda.time.YearMonth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+
+/**
+ * Holds drug pair occurrence counts pre-aggregated into one bucket per month of
+ * administration date. Counts for any range of months are the sum of the
+ * buckets in the range, so date-restricted questions can be answered without
+ * going back to the raw drug administrations.
+ * 
+ * Each month also records the days of the month that were loaded into it, so
+ * that a month can be built up from several loads of disjoint days (such as
+ * daily shards) and told apart from a restatement of the days already loaded.
+ * 
+ * @author Monica
+ */
+public class DrugPairCube {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairCube.class);
+
+	private final SortedMap<YearMonth, DrugPairCounts> _monthToDrugPairCounts = new TreeMap<YearMonth, DrugPairCounts>();
+	private final Map<YearMonth, SortedSet<Integer>> _monthToDays = new TreeMap<YearMonth, SortedSet<Integer>>();
+
+	/**
+	 * Set the drug pair counts of a month, replacing any already held.
+	 * 
+	 * @param month_
+	 *            The month of administration.
+	 * @param days_
+	 *            The days of the month the counts were loaded from.
+	 * @param drugPairCounts_
+	 *            The drug pair counts of administration instances in that
+	 *            month.
+	 */
+	public void putMonth(final YearMonth month_, final Set<Integer> days_,
+			final DrugPairCounts drugPairCounts_) {
+		_monthToDrugPairCounts.put(month_, drugPairCounts_);
+		_monthToDays.put(month_, new TreeSet<Integer>(days_));
+	}
+
+	/**
+	 * @param month_
+	 *            A month held by this cube.
+	 * @return The days of the month its drug pair counts were loaded from.
+	 */
+	public SortedSet<Integer> getDays(final YearMonth month_) {
+		return Collections.unmodifiableSortedSet(_monthToDays.get(month_));
+	}
+
+	/**
+	 * @return The drug pair counts of each month held, in month order.
+	 */
+	public SortedMap<YearMonth, DrugPairCounts> getMonths() {
+		return Collections.unmodifiableSortedMap(_monthToDrugPairCounts);
+	}
+
+	/**
+	 * Update this cube with the months of a newer cube. A month of the newer
+	 * cube that was loaded from every day already held for it replaces the held
+	 * month, so reloading a month does not double count it. A month loaded from
+	 * days none of which are held yet is added to the held month; an
+	 * administration instance falls on a single day, so counts of disjoint days
+	 * add up exactly. Any other overlap of days is ambiguous and rejected before
+	 * this cube is changed.
+	 * 
+	 * @param newer_
+	 *            The cube holding new or restated months.
+	 * @throws IllegalArgumentException
+	 *             If a month of the newer cube was loaded from some but not all
+	 *             of the days already held for it.
+	 */
+	public void update(final DrugPairCube newer_) {
+		for (Map.Entry<YearMonth, SortedSet<Integer>> entry : newer_._monthToDays
+				.entrySet()) {
+			SortedSet<Integer> heldDays = _monthToDays.get(entry.getKey());
+			if (heldDays != null && !entry.getValue().containsAll(heldDays)
+					&& !Collections.disjoint(entry.getValue(), heldDays)) {
+				throw new IllegalArgumentException("Days " + entry.getValue()
+						+ " of month " + entry.getKey()
+						+ " overlap but do not cover the days " + heldDays
+						+ " already in the cube; reload the whole month.");
+			}
+		}
+		for (Map.Entry<YearMonth, DrugPairCounts> entry : newer_._monthToDrugPairCounts
+				.entrySet()) {
+			YearMonth month = entry.getKey();
+			SortedSet<Integer> days = newer_._monthToDays.get(month);
+			SortedSet<Integer> heldDays = _monthToDays.get(month);
+			if (heldDays == null) {
+				putMonth(month, days, entry.getValue());
+				LOGGER.info("Added drug pair counts for month {}.", month);
+			} else if (days.containsAll(heldDays)) {
+				putMonth(month, days, entry.getValue());
+				LOGGER.info("Replaced drug pair counts for month {}.", month);
+			} else {
+				DrugPairCounts heldCounts = _monthToDrugPairCounts.get(month);
+				for (Map.Entry<DrugPair, Integer> pairEntry : entry.getValue()
+						.toMap().entrySet()) {
+					String[] drugs = pairEntry.getKey().getDrugs()
+							.toArray(new String[2]);
+					heldCounts.add(drugs[0], drugs[1], pairEntry.getValue());
+				}
+				heldDays.addAll(days);
+				LOGGER.info("Added days {} to drug pair counts for month {}.",
+						days, month);
+			}
+		}
+	}
+
+	/**
+	 * Sum the drug pair counts of every month in a range.
+	 * 
+	 * @param from_
+	 *            The first month of the range, or null for no lower bound.
+	 * @param to_
+	 *            The last month of the range (inclusive), or null for no upper
+	 *            bound.
+	 * @return The summed drug pair counts.
+	 */
+	public DrugPairCounts sumMonths(final YearMonth from_, final YearMonth to_) {
+		DrugPairCounts total = new HashDrugPairCounts(0);
+		for (Map.Entry<YearMonth, DrugPairCounts> entry : _monthToDrugPairCounts
+				.entrySet()) {
+			if (isInRange(entry.getKey(), from_, to_)) {
+				for (Map.Entry<DrugPair, Integer> pairEntry : entry.getValue()
+						.toMap().entrySet()) {
+					String[] drugs = pairEntry.getKey().getDrugs()
+							.toArray(new String[2]);
+					total.add(drugs[0], drugs[1], pairEntry.getValue());
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Check whether a month falls in a range.
+	 * 
+	 * @param month_
+	 *            The month to check.
+	 * @param from_
+	 *            The first month of the range, or null for no lower bound.
+	 * @param to_
+	 *            The last month of the range (inclusive), or null for no upper
+	 *            bound.
+	 * @return Whether the month is in the range.
+	 */
+	public static boolean isInRange(final YearMonth month_,
+			final YearMonth from_, final YearMonth to_) {
+		return (from_ == null || !month_.isBefore(from_))
+				&& (to_ == null || !month_.isAfter(to_));
+	}
+}
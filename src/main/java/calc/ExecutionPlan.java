@@ -0,0 +1,147 @@
+package calc;
+
+/**
+ * Describes how a drug pair calculation will be carried out: which structure
+ * counts the drug pairs, how large the hash tables are made up front, and into
+ * how many partitions the input is spilled so that each partition's grouping
+ * of administration instances fits in memory.
+ * 
+ * @author Monica
+ */
+public class ExecutionPlan {
+
+	/**
+	 * The structure used to count drug pair occurrences.
+	 */
+	public enum CountingStructure {
+		/** A hash map keyed by drug pair; see {@link HashDrugPairCounts}. */
+		HASH,
+		/** A dense drug by drug matrix; see {@link MatrixDrugPairCounts}. */
+		MATRIX
+	}
+
+	private final CardinalityEstimate _estimate;
+	private final long _memoryBudgetBytes;
+	private final CountingStructure _countingStructure;
+	private final int _partitions;
+	private final long _countingBytes;
+	private final long _groupingBytes;
+	private final boolean _overridden;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param estimate_
+	 *            The cardinality estimate the plan is based on.
+	 * @param memoryBudgetBytes_
+	 *            The memory the calculation is allowed to use.
+	 * @param countingStructure_
+	 *            The structure used to count drug pair occurrences.
+	 * @param partitions_
+	 *            The number of partitions to spill the input into; 1 means
+	 *            the input is grouped in memory without spilling.
+	 * @param countingBytes_
+	 *            Estimated memory used by the drug pair counts.
+	 * @param groupingBytes_
+	 *            Estimated memory used to group all administration instances
+	 *            at once.
+	 * @param overridden_
+	 *            Whether any choice was overridden by the user.
+	 */
+	public ExecutionPlan(final CardinalityEstimate estimate_,
+			final long memoryBudgetBytes_,
+			final CountingStructure countingStructure_, final int partitions_,
+			final long countingBytes_, final long groupingBytes_,
+			final boolean overridden_) {
+		_estimate = estimate_;
+		_memoryBudgetBytes = memoryBudgetBytes_;
+		_countingStructure = countingStructure_;
+		_partitions = partitions_;
+		_countingBytes = countingBytes_;
+		_groupingBytes = groupingBytes_;
+		_overridden = overridden_;
+	}
+
+	/**
+	 * Create empty drug pair counts of the planned structure and size.
+	 * 
+	 * @return The drug pair counts.
+	 */
+	public DrugPairCounts createDrugPairCounts() {
+		if (_countingStructure == CountingStructure.MATRIX) {
+			return new MatrixDrugPairCounts((int) Math.min(
+					_estimate.getDrugs(), Integer.MAX_VALUE));
+		}
+		return new HashDrugPairCounts((int) Math.min(
+				_estimate.getDrugPairs(), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * @return The cardinality estimate the plan is based on.
+	 */
+	public CardinalityEstimate getEstimate() {
+		return _estimate;
+	}
+
+	/**
+	 * @return The structure used to count drug pair occurrences.
+	 */
+	public CountingStructure getCountingStructure() {
+		return _countingStructure;
+	}
+
+	/**
+	 * @return The number of partitions to spill the input into; 1 means no
+	 *         spilling.
+	 */
+	public int getPartitions() {
+		return _partitions;
+	}
+
+	/**
+	 * @return The number of administration instances expected in each
+	 *         partition, used to size the grouping map up front.
+	 */
+	public long getExpectedInstancesPerPartition() {
+		return _estimate.getAdministrationInstances() / _partitions + 1;
+	}
+
+	/**
+	 * @return A human readable description of the plan and the estimates
+	 *         behind it.
+	 */
+	public String explain() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Execution plan").append(_overridden ? " (overridden)" : "")
+				.append('\n');
+		sb.append("  estimate:          ").append(_estimate).append('\n');
+		sb.append("  memory budget:     ").append(megabytes(_memoryBudgetBytes))
+				.append('\n');
+		sb.append("  pair counting:     ").append(_countingStructure)
+				.append(", est. ").append(megabytes(_countingBytes))
+				.append('\n');
+		sb.append("  grouping:          est. ").append(megabytes(_groupingBytes))
+				.append(" for all instances\n");
+		if (_partitions > 1) {
+			sb.append("  spill:             ").append(_partitions)
+					.append(" partitions by administration instance, ~")
+					.append(getExpectedInstancesPerPartition())
+					.append(" instances each\n");
+		} else {
+			sb.append("  spill:             none, ~")
+					.append(getExpectedInstancesPerPartition())
+					.append(" instances grouped in memory\n");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionPlan[" + _countingStructure + ", partitions="
+				+ _partitions + "]";
+	}
+
+	private static String megabytes(final long bytes_) {
+		return String.format("%.1f MB", bytes_ / (1024.0 * 1024.0));
+	}
+}
@@ -0,0 +1,152 @@
+package calc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import calc.ExecutionPlan.CountingStructure;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses an execution plan for a drug pair calculation from a cardinality
+ * estimate and a memory budget. The drug pair counts are kept in whichever of a
+ * hash map or a dense matrix is estimated to be smaller, a matrix only if the
+ * vocabulary fits in one. If grouping every
+ * administration instance at once would not fit in what remains of the budget,
+ * the input is spilled into enough partitions (by administration instance) for
+ * each partition to be grouped in memory on its own.
+ * 
+ * @author Monica
+ */
+public class ExecutionPlanner {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ExecutionPlanner.class);
+
+	/**
+	 * Approximate heap cost of one entry in the drug pair hash map: the map
+	 * entry, the drug pair and its two element set, and the boxed count.
+	 */
+	static final long BYTES_PER_HASHED_DRUG_PAIR = 300;
+
+	/**
+	 * Approximate heap cost of one administration instance in the grouping
+	 * map: the map entry, the instance and its date, and an empty drug set.
+	 */
+	static final long BYTES_PER_ADMINISTRATION_INSTANCE = 250;
+
+	/**
+	 * Approximate heap cost of one row in the grouping map: a set entry and
+	 * the drug name string.
+	 */
+	static final long BYTES_PER_ROW = 100;
+
+	/**
+	 * Fraction of the maximum heap used as the memory budget by default,
+	 * leaving room for parsing and garbage collection headroom.
+	 */
+	static final double DEFAULT_HEAP_FRACTION = 0.6;
+
+	/**
+	 * @return The default memory budget, a fraction of the maximum heap.
+	 */
+	public static long getDefaultMemoryBudgetBytes() {
+		return (long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION);
+	}
+
+	/**
+	 * Choose an execution plan.
+	 * 
+	 * @param estimate_
+	 *            The cardinality estimate of the input.
+	 * @param memoryBudgetBytes_
+	 *            The memory the calculation is allowed to use.
+	 * @param countingStructureOverride_
+	 *            The counting structure to use, or null to choose one.
+	 * @param partitionsOverride_
+	 *            The number of partitions to use, or null to choose.
+	 * @return The plan.
+	 * @throws IllegalArgumentException
+	 *             If a matrix is asked for but the estimated number of drugs
+	 *             is more than a matrix can hold, or the number of partitions
+	 *             asked for is not positive.
+	 */
+	public ExecutionPlan plan(final CardinalityEstimate estimate_,
+			final long memoryBudgetBytes_,
+			final CountingStructure countingStructureOverride_,
+			final Integer partitionsOverride_) {
+		Preconditions.checkArgument(partitionsOverride_ == null
+				|| partitionsOverride_ > 0,
+				"Partitions must be positive but was %s.", partitionsOverride_);
+		long hashBytes = estimate_.getDrugPairs() * BYTES_PER_HASHED_DRUG_PAIR;
+		long matrixBytes = MatrixDrugPairCounts.estimateMemoryBytes(estimate_
+				.getDrugs());
+		boolean matrixFits = estimate_.getDrugs() <= MatrixDrugPairCounts.MAX_DRUGS;
+		if (countingStructureOverride_ == CountingStructure.MATRIX
+				&& !matrixFits) {
+			throw new IllegalArgumentException("An estimated "
+					+ estimate_.getDrugs()
+					+ " drugs are more than a drug pair matrix can hold ("
+					+ MatrixDrugPairCounts.MAX_DRUGS + ").");
+		}
+		CountingStructure countingStructure;
+		if (countingStructureOverride_ != null) {
+			countingStructure = countingStructureOverride_;
+		} else if (matrixFits && matrixBytes < hashBytes) {
+			countingStructure = CountingStructure.MATRIX;
+		} else {
+			countingStructure = CountingStructure.HASH;
+		}
+		long countingBytes = countingStructure == CountingStructure.MATRIX ? matrixBytes
+				: hashBytes;
+
+		long groupingBytes = estimateGroupingBytes(estimate_);
+		int partitions;
+		if (partitionsOverride_ != null) {
+			partitions = partitionsOverride_;
+		} else {
+			long groupingBudget = memoryBudgetBytes_ - countingBytes;
+			if (groupingBudget <= 0) {
+				LOGGER.warn(
+						"Drug pair counts alone are estimated at {} bytes, over the memory budget of {} bytes.",
+						countingBytes, memoryBudgetBytes_);
+				// Leave the counts as much room as we can by spilling down to
+				// small partitions; they may still not fit.
+				groupingBudget = Math.max(1, memoryBudgetBytes_ / 10);
+			}
+			partitions = choosePartitions(estimate_, groupingBudget);
+		}
+
+		ExecutionPlan plan = new ExecutionPlan(estimate_, memoryBudgetBytes_,
+				countingStructure, partitions, countingBytes, groupingBytes,
+				countingStructureOverride_ != null
+						|| partitionsOverride_ != null);
+		LOGGER.info("Chose {}.", plan);
+		return plan;
+	}
+
+	/**
+	 * Choose how many partitions to spill an input into for the administration
+	 * instances of each partition to be grouped within a budget.
+	 * 
+	 * @param estimate_
+	 *            The cardinality estimate of the input.
+	 * @param groupingBudgetBytes_
+	 *            The memory grouping a partition is allowed to use.
+	 * @return The number of partitions, at least 1.
+	 */
+	public int choosePartitions(final CardinalityEstimate estimate_,
+			final long groupingBudgetBytes_) {
+		long groupingBudget = Math.max(1, groupingBudgetBytes_);
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1,
+				(estimateGroupingBytes(estimate_) + groupingBudget - 1)
+						/ groupingBudget));
+	}
+
+	private static long estimateGroupingBytes(
+			final CardinalityEstimate estimate_) {
+		return estimate_.getAdministrationInstances()
+				* BYTES_PER_ADMINISTRATION_INSTANCE + estimate_.getRows()
+				* BYTES_PER_ROW;
+	}
+}
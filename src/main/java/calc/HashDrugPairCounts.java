@@ -0,0 +1,162 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import api.DrugPair;
+
+/**
+ * Drug pair counts kept in a hash map keyed by drug pair. Memory grows with the
+ * number of distinct pairs seen, which suits a large drug vocabulary in which
+ * most pairs never occur.
+ * 
+ * @author Monica
+ */
+public class HashDrugPairCounts implements DrugPairCounts {
+
+	/**
+	 * Parts per thread a parallel visit is split into, so that parts of
+	 * uneven size still keep every thread busy.
+	 */
+	private static final int PARALLEL_PARTS_PER_THREAD = 4;
+
+	private final Map<DrugPair, Integer> _drugPairToOccurrenceMap;
+
+	/**
+	 * Constructor for empty counts.
+	 * 
+	 * @param expectedDrugPairs_
+	 *            The number of distinct drug pairs expected, used to size the
+	 *            map up front.
+	 */
+	public HashDrugPairCounts(final int expectedDrugPairs_) {
+		this(new HashMap<DrugPair, Integer>(capacityFor(expectedDrugPairs_)));
+	}
+
+	/**
+	 * Constructor wrapping an existing map of drug pairs to occurrences. The
+	 * map is used directly, not copied.
+	 * 
+	 * @param drugPairToOccurrenceMap_
+	 *            The map of drug pairs to number of times administered
+	 *            together.
+	 */
+	public HashDrugPairCounts(
+			final Map<DrugPair, Integer> drugPairToOccurrenceMap_) {
+		_drugPairToOccurrenceMap = drugPairToOccurrenceMap_;
+	}
+
+	@Override
+	public void increment(final String drugA_, final String drugB_) {
+		add(drugA_, drugB_, 1);
+	}
+
+	@Override
+	public void add(final String drugA_, final String drugB_,
+			final int occurrences_) {
+		DrugPair drugPair = new DrugPair(drugA_, drugB_);
+		Integer currentCount = _drugPairToOccurrenceMap.get(drugPair);
+		int newCount = currentCount == null ? occurrences_ : currentCount
+				+ occurrences_;
+		if (newCount == 0) {
+			_drugPairToOccurrenceMap.remove(drugPair);
+		} else {
+			_drugPairToOccurrenceMap.put(drugPair, newCount);
+		}
+	}
+
+	@Override
+	public int getOccurrence(final String drugA_, final String drugB_) {
+		Integer count = _drugPairToOccurrenceMap.get(new DrugPair(drugA_,
+				drugB_));
+		return count == null ? 0 : count;
+	}
+
+	@Override
+	public int size() {
+		return _drugPairToOccurrenceMap.size();
+	}
+
+	@Override
+	public Set<DrugPair> getDrugPairsWithMinOccurrence(final int minOccurrence_) {
+		return DrugPairCalculator.getDrugPairsWithMinOccurrence(
+				_drugPairToOccurrenceMap, minOccurrence_);
+	}
+
+	@Override
+	public Map<DrugPair, Integer> toMap() {
+		return _drugPairToOccurrenceMap;
+	}
+
+	@Override
+	public void forEach(final DrugPairCountVisitor visitor_) {
+		for (Map.Entry<DrugPair, Integer> entry : _drugPairToOccurrenceMap
+				.entrySet()) {
+			visit(entry, visitor_);
+		}
+	}
+
+	@Override
+	public <V extends DrugPairCountVisitor> List<V> forEachParallel(
+			final Supplier<V> visitorSupplier_) {
+		// Split the map's own spliterator breadth first into even parts.
+		int targetParts = getParallelParts();
+		List<Spliterator<Map.Entry<DrugPair, Integer>>> parts = new ArrayList<Spliterator<Map.Entry<DrugPair, Integer>>>();
+		parts.add(_drugPairToOccurrenceMap.entrySet().spliterator());
+		boolean split = true;
+		while (split && parts.size() < targetParts) {
+			split = false;
+			for (int i = parts.size() - 1; i >= 0
+					&& parts.size() < targetParts; i--) {
+				Spliterator<Map.Entry<DrugPair, Integer>> part = parts.get(i)
+						.trySplit();
+				if (part != null) {
+					parts.add(part);
+					split = true;
+				}
+			}
+		}
+		return parts.parallelStream().map(part -> {
+			V visitor = visitorSupplier_.get();
+			part.forEachRemaining(entry -> visit(entry, visitor));
+			return visitor;
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * Get the number of parts to split a parallel visit of drug pair counts
+	 * into: a few per thread of the common fork/join pool.
+	 * 
+	 * @return The number of parts.
+	 */
+	static int getParallelParts() {
+		return ForkJoinPool.getCommonPoolParallelism()
+				* PARALLEL_PARTS_PER_THREAD;
+	}
+
+	private static void visit(final Map.Entry<DrugPair, Integer> entry_,
+			final DrugPairCountVisitor visitor_) {
+		String[] drugs = entry_.getKey().getDrugs().toArray(new String[2]);
+		visitor_.visit(drugs[0], drugs[1], entry_.getValue());
+	}
+
+	/**
+	 * Get a hash map capacity that holds the expected number of entries
+	 * without rehashing.
+	 * 
+	 * @param expectedSize_
+	 *            The expected number of entries.
+	 * @return The initial capacity to use.
+	 */
+	public static int capacityFor(final long expectedSize_) {
+		long capacity = expectedSize_ * 4 / 3 + 1;
+		return (int) Math.min(Math.max(capacity, 16), 1 << 30);
+	}
+}
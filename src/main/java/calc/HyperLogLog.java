@@ -0,0 +1,157 @@
+package calc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * HyperLogLog sketch for estimating the number of distinct values seen using a
+ * small, fixed amount of memory. With precision p the sketch holds 2^p one-byte
+ * registers and has a standard error of about 1.04 / sqrt(2^p).
+ *
+ * @author Monica
+ */
+public class HyperLogLog {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private static final int MIN_PRECISION = 4;
+	private static final int MAX_PRECISION = 18;
+
+	private final int _precision;
+	private final byte[] _registers;
+
+	/**
+	 * Constructor
+	 *
+	 * @param precision_
+	 *            The number of hash bits used to pick a register, between 4 and
+	 *            18.
+	 */
+	public HyperLogLog(final int precision_) {
+		Preconditions.checkArgument(precision_ >= MIN_PRECISION
+				&& precision_ <= MAX_PRECISION,
+				"HyperLogLog precision must be between %s and %s but was %s.",
+				MIN_PRECISION, MAX_PRECISION, precision_);
+		_precision = precision_;
+		_registers = new byte[1 << precision_];
+	}
+
+	/**
+	 * Add a value to the sketch.
+	 *
+	 * @param value_
+	 *            The value to add.
+	 */
+	public void add(final String value_) {
+		addHash(HASH_FUNCTION.hashString(value_, StandardCharsets.UTF_8)
+				.asLong());
+	}
+
+	/**
+	 * Add an already hashed value to the sketch. The hash must be uniformly
+	 * distributed over all 64 bits.
+	 *
+	 * @param hash_
+	 *            The 64 bit hash of the value to add.
+	 */
+	public void addHash(final long hash_) {
+		int index = (int) (hash_ >>> (Long.SIZE - _precision));
+		long remainder = hash_ << _precision;
+		int rank = Math.min(Long.numberOfLeadingZeros(remainder), Long.SIZE
+				- _precision) + 1;
+		if (rank > _registers[index]) {
+			_registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * @return The estimated number of distinct values added.
+	 */
+	public long estimate() {
+		int registerCount = _registers.length;
+		double sum = 0;
+		int zeroRegisters = 0;
+		for (byte register : _registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeroRegisters++;
+			}
+		}
+		double estimate = alpha(registerCount) * registerCount * registerCount
+				/ sum;
+		if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+			// Small range correction: linear counting is more accurate.
+			estimate = registerCount
+					* Math.log((double) registerCount / zeroRegisters);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Fold another sketch of the same precision into this one, so this sketch
+	 * estimates the distinct values added to either.
+	 *
+	 * @param other_
+	 *            The sketch to merge in.
+	 */
+	public void merge(final HyperLogLog other_) {
+		Preconditions.checkArgument(other_._precision == _precision,
+				"Cannot merge HyperLogLog of precision %s into precision %s.",
+				other_._precision, _precision);
+		for (int i = 0; i < _registers.length; i++) {
+			if (other_._registers[i] > _registers[i]) {
+				_registers[i] = other_._registers[i];
+			}
+		}
+	}
+
+	/**
+	 * @return The precision of the sketch.
+	 */
+	public int getPrecision() {
+		return _precision;
+	}
+
+	/**
+	 * @return The number of bytes used by the registers.
+	 */
+	public int getMemoryBytes() {
+		return _registers.length;
+	}
+
+	@Override
+	public String toString() {
+		return "HyperLogLog[precision=" + _precision + ",estimate="
+				+ estimate() + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(_registers);
+	}
+
+	@Override
+	public boolean equals(final Object obj_) {
+		if (!(obj_ instanceof HyperLogLog)) {
+			return false;
+		}
+		return Arrays.equals(_registers, ((HyperLogLog) obj_)._registers);
+	}
+
+	private static double alpha(final int registerCount_) {
+		switch (registerCount_) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / registerCount_);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package calc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+
+/**
+ * Drug pair counts kept in a dense triangular matrix indexed by drug. Each drug
+ * is given an index the first time it is seen and the count for drugs i < j
+ * lives at j * (j - 1) / 2 + i, so existing counts never move when the matrix
+ * grows to admit new drugs. This uses four bytes per possible pair and no
+ * per-pair objects, which suits a small drug vocabulary in which many pairs
+ * occur. A Java array holds at most about 2^31 counts, which limits the
+ * matrix to {@link #MAX_DRUGS} drugs.
+ * 
+ * @author Monica
+ */
+public class MatrixDrugPairCounts implements DrugPairCounts {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(MatrixDrugPairCounts.class);
+
+	// The largest array length every JVM allows.
+	private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The largest number of distinct drugs whose pair counts fit in one array.
+	 */
+	public static final int MAX_DRUGS = maxDrugs();
+
+	private final Map<String, Integer> _drugIndexes;
+	private String[] _drugs;
+	private int[] _counts;
+	private int _nonZeroCounts;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param expectedDrugs_
+	 *            The number of distinct drugs expected, used to size the
+	 *            matrix up front. At most {@link #MAX_DRUGS} are allowed
+	 *            for.
+	 */
+	public MatrixDrugPairCounts(final int expectedDrugs_) {
+		int capacity = Math.min(Math.max(expectedDrugs_, 2), MAX_DRUGS);
+		_drugIndexes = new HashMap<String, Integer>(
+				HashDrugPairCounts.capacityFor(capacity));
+		_drugs = new String[capacity];
+		_counts = new int[(int) triangleSize(capacity)];
+	}
+
+	@Override
+	public void increment(final String drugA_, final String drugB_) {
+		add(drugA_, drugB_, 1);
+	}
+
+	@Override
+	public void add(final String drugA_, final String drugB_,
+			final int occurrences_) {
+		int cell = cellOf(indexOf(drugA_), indexOf(drugB_));
+		int before = _counts[cell];
+		int after = before + occurrences_;
+		_counts[cell] = after;
+		if (before == 0 && after != 0) {
+			_nonZeroCounts++;
+		} else if (before != 0 && after == 0) {
+			_nonZeroCounts--;
+		}
+	}
+
+	@Override
+	public int getOccurrence(final String drugA_, final String drugB_) {
+		Integer indexA = _drugIndexes.get(drugA_);
+		Integer indexB = _drugIndexes.get(drugB_);
+		if (indexA == null || indexB == null) {
+			return 0;
+		}
+		return _counts[cellOf(indexA, indexB)];
+	}
+
+	@Override
+	public int size() {
+		return _nonZeroCounts;
+	}
+
+	@Override
+	public Set<DrugPair> getDrugPairsWithMinOccurrence(final int minOccurrence_) {
+		LOGGER.info(
+				"Going to calculate which of the {} drug pairs occurred more than {} times.",
+				_nonZeroCounts, minOccurrence_);
+		Set<DrugPair> drugPairsWithMinOccurrence = new HashSet<DrugPair>();
+		int drugCount = _drugIndexes.size();
+		for (int j = 1; j < drugCount; j++) {
+			int rowStart = (int) triangleSize(j);
+			for (int i = 0; i < j; i++) {
+				int count = _counts[rowStart + i];
+				if (count != 0 && count >= minOccurrence_) {
+					drugPairsWithMinOccurrence.add(new DrugPair(_drugs[i],
+							_drugs[j]));
+				}
+			}
+		}
+		LOGGER.info("Found {} drug pairs that occurred more than {} times.",
+				drugPairsWithMinOccurrence.size(), minOccurrence_);
+		return drugPairsWithMinOccurrence;
+	}
+
+	@Override
+	public Map<DrugPair, Integer> toMap() {
+		final Map<DrugPair, Integer> drugPairToOccurrenceMap = new HashMap<DrugPair, Integer>(
+				HashDrugPairCounts.capacityFor(_nonZeroCounts));
+		forEach(new DrugPairCountVisitor() {
+			@Override
+			public void visit(final String drugA_, final String drugB_,
+					final int count_) {
+				drugPairToOccurrenceMap.put(new DrugPair(drugA_, drugB_),
+						count_);
+			}
+		});
+		return drugPairToOccurrenceMap;
+	}
+
+	@Override
+	public void forEach(final DrugPairCountVisitor visitor_) {
+		int drugCount = _drugIndexes.size();
+		for (int j = 1; j < drugCount; j++) {
+			visitRow(j, visitor_);
+		}
+	}
+
+	@Override
+	public <V extends DrugPairCountVisitor> List<V> forEachParallel(
+			final Supplier<V> visitorSupplier_) {
+		final int drugCount = _drugIndexes.size();
+		final int parts = Math.max(1,
+				Math.min(drugCount - 1, HashDrugPairCounts.getParallelParts()));
+		return IntStream.range(0, parts).parallel().mapToObj(part -> {
+			V visitor = visitorSupplier_.get();
+			// Rows grow longer down the triangle, so interleave them to
+			// give every part a similar number of cells.
+			for (int j = 1 + part; j < drugCount; j += parts) {
+				visitRow(j, visitor);
+			}
+			return visitor;
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * Estimate the memory a matrix for a number of drugs needs.
+	 * 
+	 * @param drugs_
+	 *            The number of distinct drugs.
+	 * @return The approximate size of the matrix in bytes.
+	 */
+	public static long estimateMemoryBytes(final long drugs_) {
+		return 4 * drugs_ * (drugs_ - 1) / 2;
+	}
+
+	private void visitRow(final int j_, final DrugPairCountVisitor visitor_) {
+		int rowStart = (int) triangleSize(j_);
+		for (int i = 0; i < j_; i++) {
+			int count = _counts[rowStart + i];
+			if (count != 0) {
+				visitor_.visit(_drugs[i], _drugs[j_], count);
+			}
+		}
+	}
+
+	private int indexOf(final String drug_) {
+		Integer index = _drugIndexes.get(drug_);
+		if (index != null) {
+			return index;
+		}
+		int newIndex = _drugIndexes.size();
+		if (newIndex == _drugs.length) {
+			if (newIndex == MAX_DRUGS) {
+				throw new IllegalStateException("A drug pair matrix holds at most "
+						+ MAX_DRUGS
+						+ " drugs; count with the hash strategy instead.");
+			}
+			int newCapacity = (int) Math.min(2L * _drugs.length, MAX_DRUGS);
+			LOGGER.debug("Growing drug pair matrix from {} to {} drugs.",
+					_drugs.length, newCapacity);
+			_drugs = Arrays.copyOf(_drugs, newCapacity);
+			_counts = Arrays.copyOf(_counts, (int) triangleSize(newCapacity));
+		}
+		_drugs[newIndex] = drug_;
+		_drugIndexes.put(drug_, newIndex);
+		return newIndex;
+	}
+
+	private static int cellOf(final int indexA_, final int indexB_) {
+		// Below MAX_DRUGS every cell index fits in an int.
+		if (indexA_ < indexB_) {
+			return (int) (triangleSize(indexB_) + indexA_);
+		}
+		return (int) (triangleSize(indexA_) + indexB_);
+	}
+
+	private static long triangleSize(final long drugs_) {
+		return drugs_ * (drugs_ - 1) / 2;
+	}
+
+	private static int maxDrugs() {
+		int drugs = (int) Math.sqrt(2.0 * MAX_ARRAY_LENGTH) + 1;
+		while (triangleSize(drugs) > MAX_ARRAY_LENGTH) {
+			drugs--;
+		}
+		return drugs;
+	}
+}
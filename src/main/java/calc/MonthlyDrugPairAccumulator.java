@@ -0,0 +1,59 @@
+package calc;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+import api.SingleDrugAdministration;
+
+/**
+ * Accumulates drug administrations into separate drug pair counts for each
+ * month of administration date. An administration instance always falls in a
+ * single month, so each month is accumulated independently.
+ * 
+ * @author Monica
+ */
+public class MonthlyDrugPairAccumulator {
+
+	private final Map<YearMonth, DrugPairAccumulator> _monthToAccumulator = new TreeMap<YearMonth, DrugPairAccumulator>();
+	private final Map<YearMonth, SortedSet<Integer>> _monthToDays = new TreeMap<YearMonth, SortedSet<Integer>>();
+
+	/**
+	 * Add a single drug administration to the month it was administered in.
+	 * 
+	 * @param drugAdministration_
+	 *            The drug administration to add.
+	 */
+	public void add(final SingleDrugAdministration drugAdministration_) {
+		LocalDate administrationDate = drugAdministration_
+				.getAdministrationInstance().getAdministrationDate();
+		YearMonth month = new YearMonth(administrationDate.getYear(),
+				administrationDate.getMonthOfYear());
+		DrugPairAccumulator accumulator = _monthToAccumulator.get(month);
+		if (accumulator == null) {
+			accumulator = new DrugPairAccumulator();
+			_monthToAccumulator.put(month, accumulator);
+			_monthToDays.put(month, new TreeSet<Integer>());
+		}
+		accumulator.add(drugAdministration_);
+		_monthToDays.get(month).add(administrationDate.getDayOfMonth());
+	}
+
+	/**
+	 * @return A cube of the drug pair counts accumulated for each month, with
+	 *         the days of the month that were seen.
+	 */
+	public DrugPairCube toCube() {
+		DrugPairCube cube = new DrugPairCube();
+		for (Map.Entry<YearMonth, DrugPairAccumulator> entry : _monthToAccumulator
+				.entrySet()) {
+			cube.putMonth(entry.getKey(), _monthToDays.get(entry.getKey()),
+					entry.getValue().getDrugPairCounts());
+		}
+		return cube;
+	}
+}
@@ -0,0 +1,192 @@
+package calc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+
+/**
+ * Estimates, for each drug pair, the number of distinct patients who were
+ * administered the pair together, using one HyperLogLog sketch of patient
+ * identifiers per drug pair. Exact per-pair patient sets would grow with the
+ * number of patients; the sketches instead use a fixed number of bytes per
+ * pair, with the precision chosen so that sketches for the expected number of
+ * pairs fit a memory budget. The expected number is only an estimate, so the
+ * budget is also enforced as sketches are added.
+ * 
+ * @author Monica
+ */
+public class PatientDrugPairSketches {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(PatientDrugPairSketches.class);
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	static final int MIN_PRECISION = 4;
+	static final int MAX_PRECISION = 14;
+
+	/**
+	 * Approximate heap cost of each sketch beyond its registers: the map
+	 * entry, the drug pair key and the sketch object itself.
+	 */
+	static final long OVERHEAD_BYTES_PER_SKETCH = 350;
+
+	private final Map<DrugPair, HyperLogLog> _drugPairToPatients;
+	private final int _precision;
+	private final long _memoryBudgetBytes;
+
+	/**
+	 * Constructor for empty sketches, sized for an expected number of drug
+	 * pairs.
+	 * 
+	 * @param expectedDrugPairs_
+	 *            The number of distinct drug pairs expected, which decides the
+	 *            sketch precision.
+	 * @param memoryBudgetBytes_
+	 *            The memory the sketches may use.
+	 */
+	public PatientDrugPairSketches(final long expectedDrugPairs_,
+			final long memoryBudgetBytes_) {
+		_precision = choosePrecision(expectedDrugPairs_, memoryBudgetBytes_);
+		_memoryBudgetBytes = memoryBudgetBytes_;
+		LOGGER.info(
+				"Sketching distinct patients for an expected {} drug pairs at precision {} ({} bytes).",
+				expectedDrugPairs_, _precision,
+				estimateMemoryBytes(expectedDrugPairs_, _precision));
+		_drugPairToPatients = new HashMap<DrugPair, HyperLogLog>(
+				HashDrugPairCounts.capacityFor(expectedDrugPairs_));
+	}
+
+	/**
+	 * Add the patients of grouped administration instances to the sketches of
+	 * the drug pairs administered together in them. Instances may be added a
+	 * group at a time, for example one spilled partition after another, so
+	 * that only one group needs to be held in memory.
+	 * 
+	 * @param drugAdminMap_
+	 *            A map of administration instance to drugs administered during
+	 *            that instance.
+	 * @throws IllegalStateException
+	 *             If there are more drug pairs than sketches at the chosen
+	 *             precision fit in the memory budget.
+	 */
+	public void addAll(
+			final Map<AdministrationInstance, Set<String>> drugAdminMap_) {
+		for (Map.Entry<AdministrationInstance, Set<String>> entry : drugAdminMap_
+				.entrySet()) {
+			Set<String> drugSet = entry.getValue();
+			if (drugSet.size() < 2) {
+				continue;
+			}
+			// Hash the patient once for all pairs of the instance.
+			long patientHash = HASH_FUNCTION.hashString(
+					entry.getKey().getPatientIdentifier(),
+					StandardCharsets.UTF_8).asLong();
+			List<String> drugList = new ArrayList<String>(drugSet);
+			for (int a = 0; a < drugList.size(); a++) {
+				for (int b = a + 1; b < drugList.size(); b++) {
+					DrugPair drugPair = new DrugPair(drugList.get(a),
+							drugList.get(b));
+					HyperLogLog patients = _drugPairToPatients.get(drugPair);
+					if (patients == null) {
+						checkMemoryBudget(_drugPairToPatients.size() + 1);
+						patients = new HyperLogLog(_precision);
+						_drugPairToPatients.put(drugPair, patients);
+					}
+					patients.addHash(patientHash);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The estimated number of distinct patients administered each drug
+	 *         pair.
+	 */
+	public DrugPairCounts estimateCounts() {
+		DrugPairCounts drugPairCounts = new HashDrugPairCounts(
+				_drugPairToPatients.size());
+		for (Map.Entry<DrugPair, HyperLogLog> entry : _drugPairToPatients
+				.entrySet()) {
+			String[] drugs = entry.getKey().getDrugs().toArray(new String[2]);
+			drugPairCounts.add(drugs[0], drugs[1], (int) Math.max(1, entry
+					.getValue().estimate()));
+		}
+		return drugPairCounts;
+	}
+
+	/**
+	 * @return The sketch precision used.
+	 */
+	public int getPrecision() {
+		return _precision;
+	}
+
+	/**
+	 * @return The relative standard error of each estimate.
+	 */
+	public double getStandardError() {
+		return 1.04 / Math.sqrt(1 << _precision);
+	}
+
+	/**
+	 * @return The approximate memory used by the sketches in bytes.
+	 */
+	public long getMemoryBytes() {
+		return estimateMemoryBytes(_drugPairToPatients.size(), _precision);
+	}
+
+	/**
+	 * Choose the highest precision at which sketches for every drug pair fit in
+	 * the memory budget.
+	 * 
+	 * @param drugPairs_
+	 *            The number of drug pairs to sketch.
+	 * @param memoryBudgetBytes_
+	 *            The memory the sketches may use.
+	 * @return The precision.
+	 */
+	static int choosePrecision(final long drugPairs_,
+			final long memoryBudgetBytes_) {
+		int precision = MAX_PRECISION;
+		while (precision > MIN_PRECISION
+				&& estimateMemoryBytes(drugPairs_, precision) > memoryBudgetBytes_) {
+			precision--;
+		}
+		if (estimateMemoryBytes(drugPairs_, precision) > memoryBudgetBytes_) {
+			LOGGER.warn(
+					"Sketches for {} drug pairs need {} bytes even at the lowest precision, over the budget of {} bytes.",
+					drugPairs_, estimateMemoryBytes(drugPairs_, precision),
+					memoryBudgetBytes_);
+		}
+		return precision;
+	}
+
+	private void checkMemoryBudget(final long drugPairs_) {
+		if (estimateMemoryBytes(drugPairs_, _precision) > _memoryBudgetBytes) {
+			throw new IllegalStateException("Sketches for more than "
+					+ (drugPairs_ - 1) + " drug pairs at precision "
+					+ _precision + " do not fit the sketch memory budget of "
+					+ _memoryBudgetBytes
+					+ " bytes; the sample underestimated the drug pairs. "
+					+ "Raise the sketch memory.");
+		}
+	}
+
+	private static long estimateMemoryBytes(final long drugPairs_,
+			final int precision_) {
+		return drugPairs_ * ((1L << precision_) + OVERHEAD_BYTES_PER_SKETCH);
+	}
+}
@@ -0,0 +1,329 @@
+package calc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+import api.DrugPairEstimate;
+import api.SingleDrugAdministration;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Samples administration instances from a stream of drug administrations and
+ * estimates drug pair counts from the sample. Each instance is given a seeded
+ * pseudo-random priority in [0, 1) by hashing its patient and date, so all of
+ * an instance's drugs are sampled together however the rows are ordered, and
+ * the same seed always selects the same instances.
+ *
+ * With a sample rate r, the instances with priority below r are kept. With a
+ * sample size k, the k instances with the lowest priorities are kept, along
+ * with the instance of the next lowest priority, whose priority then serves as
+ * the sample rate. Either way each instance was kept with probability r, so a
+ * pair seen in x sampled instances is estimated to occur in x / r instances.
+ * Only the sampled instances are held and paired, so memory and pairing time
+ * grow with the sample rather than the input.
+ *
+ * @author Monica
+ */
+public class SampledDrugPairAccumulator {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(SampledDrugPairAccumulator.class);
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	// 2^-53, to turn the top 53 bits of a hash into a double in [0, 1).
+	private static final double PRIORITY_SCALE = 1.0 / (1L << 53);
+
+	// Standard normal quantile of a two-sided 95% confidence interval.
+	private static final double Z_95 = 1.959964;
+
+	private final long _seed;
+	private final double _sampleRate;
+	private final int _sampleSize;
+
+	private final Map<AdministrationInstance, Set<String>> _sampledInstances = new HashMap<AdministrationInstance, Set<String>>();
+	// Sampled instances by priority, highest first; only used with a size.
+	private final PriorityQueue<PrioritizedInstance> _highestPriorityFirst = new PriorityQueue<PrioritizedInstance>(
+			11, Collections.reverseOrder());
+	private long _drugAdministrationCount;
+
+	private SampledDrugPairAccumulator(final double sampleRate_,
+			final int sampleSize_, final long seed_) {
+		_sampleRate = sampleRate_;
+		_sampleSize = sampleSize_;
+		_seed = seed_;
+	}
+
+	/**
+	 * Create an accumulator that samples each administration instance with a
+	 * fixed probability.
+	 *
+	 * @param sampleRate_
+	 *            The probability of sampling an instance, in (0, 1].
+	 * @param seed_
+	 *            The seed of the instance priorities.
+	 * @return The accumulator.
+	 */
+	public static SampledDrugPairAccumulator withSampleRate(
+			final double sampleRate_, final long seed_) {
+		Preconditions.checkArgument(sampleRate_ > 0 && sampleRate_ <= 1,
+				"Sample rate must be in (0, 1] but was %s.", sampleRate_);
+		return new SampledDrugPairAccumulator(sampleRate_, 0, seed_);
+	}
+
+	/**
+	 * Create an accumulator that samples a fixed number of administration
+	 * instances.
+	 *
+	 * @param sampleSize_
+	 *            The number of instances to sample.
+	 * @param seed_
+	 *            The seed of the instance priorities.
+	 * @return The accumulator.
+	 */
+	public static SampledDrugPairAccumulator withSampleSize(
+			final int sampleSize_, final long seed_) {
+		Preconditions.checkArgument(sampleSize_ > 0,
+				"Sample size must be positive but was %s.", sampleSize_);
+		return new SampledDrugPairAccumulator(0, sampleSize_, seed_);
+	}
+
+	/**
+	 * Add a single drug administration, keeping it if its administration
+	 * instance is in the sample.
+	 *
+	 * @param drugAdministration_
+	 *            The drug administration to add.
+	 */
+	public void add(final SingleDrugAdministration drugAdministration_) {
+		_drugAdministrationCount++;
+		AdministrationInstance adminInstance = drugAdministration_
+				.getAdministrationInstance();
+		Set<String> drugs = _sampledInstances.get(adminInstance);
+		if (drugs == null) {
+			double priority = priorityOf(
+					adminInstance.getPatientIdentifier(), adminInstance
+							.getAdministrationDate().toString(), _seed);
+			if (_sampleSize == 0) {
+				if (priority >= _sampleRate) {
+					return;
+				}
+			} else if (_highestPriorityFirst.size() > _sampleSize) {
+				if (priority >= _highestPriorityFirst.peek()._priority) {
+					return;
+				}
+				_sampledInstances.remove(_highestPriorityFirst.poll()._instance);
+			}
+			if (_sampleSize > 0) {
+				_highestPriorityFirst.add(new PrioritizedInstance(priority,
+						adminInstance));
+			}
+			drugs = new HashSet<String>();
+			_sampledInstances.put(adminInstance, drugs);
+		}
+		drugs.add(drugAdministration_.getDrug());
+	}
+
+	/**
+	 * Check, before parsing a row, whether its administration instance is in
+	 * the sample or may still enter it. An instance rejected once is rejected
+	 * for good, so its rows can be skipped without being parsed.
+	 *
+	 * @param patientIdentifier_
+	 *            The patient identifier of the instance.
+	 * @param administrationDate_
+	 *            The administration date of the instance as written in the
+	 *            input.
+	 * @return False only if the instance can never be sampled.
+	 */
+	public boolean mightSample(final String patientIdentifier_,
+			final String administrationDate_) {
+		if (!isCanonicalDate(administrationDate_)) {
+			// Only the parsed date can tell which instance this is.
+			return true;
+		}
+		double priority = priorityOf(patientIdentifier_, administrationDate_,
+				_seed);
+		if (_sampleSize == 0) {
+			return priority < _sampleRate;
+		}
+		return _highestPriorityFirst.size() <= _sampleSize
+				|| priority <= _highestPriorityFirst.peek()._priority;
+	}
+
+	/**
+	 * @return The probability with which each administration instance was
+	 *         sampled. With a sample size this is 1 until more instances than
+	 *         the sample size have been seen.
+	 */
+	public double getSampleRate() {
+		if (_sampleSize == 0) {
+			return _sampleRate;
+		}
+		if (_highestPriorityFirst.size() <= _sampleSize) {
+			return 1;
+		}
+		return _highestPriorityFirst.peek()._priority;
+	}
+
+	/**
+	 * @return The number of administration instances in the sample.
+	 */
+	public int getSampledInstanceCount() {
+		if (_sampleSize > 0 && _sampledInstances.size() > _sampleSize) {
+			return _sampleSize;
+		}
+		return _sampledInstances.size();
+	}
+
+	/**
+	 * @return The estimated number of administration instances in the input.
+	 */
+	public long getEstimatedInstanceCount() {
+		return Math.round(getSampledInstanceCount() / getSampleRate());
+	}
+
+	/**
+	 * @return The number of drug administrations added, sampled or not.
+	 */
+	public long getDrugAdministrationCount() {
+		return _drugAdministrationCount;
+	}
+
+	/**
+	 * Count the drug pairs of the sampled administration instances and scale
+	 * the counts up to estimates for the whole input, each with an approximate
+	 * 95% confidence interval.
+	 *
+	 * @param minEstimate_
+	 *            The minimum estimated occurrence of the drug pair required.
+	 * @return The estimates of the drug pairs meeting the minimum.
+	 */
+	public List<DrugPairEstimate> getDrugPairEstimates(final int minEstimate_) {
+		double sampleRate = getSampleRate();
+		// With a sample size, the instance of highest priority only sets the
+		// rate and is not part of the sample.
+		AdministrationInstance rateInstance = null;
+		if (_sampleSize > 0 && _highestPriorityFirst.size() > _sampleSize) {
+			rateInstance = _highestPriorityFirst.peek()._instance;
+		}
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		for (Map.Entry<AdministrationInstance, Set<String>> entry : _sampledInstances
+				.entrySet()) {
+			if (entry.getKey().equals(rateInstance)) {
+				continue;
+			}
+			for (String drug : entry.getValue()) {
+				accumulator.add(new SingleDrugAdministration(entry.getKey(),
+						drug));
+			}
+		}
+
+		// Each of the true occurrences of a pair was sampled with probability
+		// r, so the sampled count x is binomial with variance n r (1 - r),
+		// estimated by x (1 - r).
+		List<DrugPairEstimate> estimates = new ArrayList<DrugPairEstimate>();
+		DrugPairCounts drugPairCounts = accumulator.getDrugPairCounts();
+		int minSampledCount = (int) Math.ceil(minEstimate_ * sampleRate - 1e-9);
+		for (DrugPair drugPair : drugPairCounts
+				.getDrugPairsWithMinOccurrence(Math.max(1, minSampledCount))) {
+			String[] drugs = drugPair.getDrugs().toArray(new String[2]);
+			String drugA = drugs[0];
+			String drugB = drugs[1];
+			if (drugA.compareTo(drugB) > 0) {
+				drugA = drugs[1];
+				drugB = drugs[0];
+			}
+			int sampledCount = drugPairCounts.getOccurrence(drugA, drugB);
+			double estimate = sampledCount / sampleRate;
+			if (estimate < minEstimate_) {
+				continue;
+			}
+			double margin = Z_95 * Math.sqrt(sampledCount * (1 - sampleRate))
+					/ sampleRate;
+			// The pair occurred at least in the sampled instances.
+			estimates.add(new DrugPairEstimate(drugA, drugB, sampledCount,
+					estimate, Math.max(sampledCount, estimate - margin),
+					estimate + margin));
+		}
+		LOGGER.info(
+				"Estimated {} drug pairs with minimum occurrence {} from {} sampled administration instances at rate {}.",
+				estimates.size(), minEstimate_, getSampledInstanceCount(),
+				sampleRate);
+		return estimates;
+	}
+
+	/**
+	 * Get the sampling priority of an administration instance.
+	 *
+	 * @param patientIdentifier_
+	 *            The patient identifier of the instance.
+	 * @param administrationDate_
+	 *            The administration date of the instance as yyyy-MM-dd.
+	 * @param seed_
+	 *            The seed of the priorities.
+	 * @return A pseudo-random priority in [0, 1), the same for the same
+	 *         instance and seed.
+	 */
+	static double priorityOf(final String patientIdentifier_,
+			final String administrationDate_, final long seed_) {
+		long hash = HASH_FUNCTION.newHasher().putLong(seed_)
+				.putString(patientIdentifier_, StandardCharsets.UTF_8)
+				.putChar(',')
+				.putString(administrationDate_, StandardCharsets.UTF_8).hash()
+				.asLong();
+		return (hash >>> (Long.SIZE - 53)) * PRIORITY_SCALE;
+	}
+
+	/**
+	 * Whether a date is written exactly as yyyy-MM-dd, the form its parsed
+	 * date prints as.
+	 */
+	private static boolean isCanonicalDate(final String date_) {
+		if (date_.length() != 10) {
+			return false;
+		}
+		for (int i = 0; i < date_.length(); i++) {
+			char c = date_.charAt(i);
+			if (i == 4 || i == 7 ? c != '-' : c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A sampled administration instance and its priority.
+	 */
+	private static class PrioritizedInstance implements
+			Comparable<PrioritizedInstance> {
+		private final double _priority;
+		private final AdministrationInstance _instance;
+
+		PrioritizedInstance(final double priority_,
+				final AdministrationInstance instance_) {
+			_priority = priority_;
+			_instance = instance_;
+		}
+
+		@Override
+		public int compareTo(final PrioritizedInstance other_) {
+			return Double.compare(_priority, other_._priority);
+		}
+	}
+}
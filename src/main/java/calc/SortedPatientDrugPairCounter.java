@@ -0,0 +1,116 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import api.SingleDrugAdministration;
+
+/**
+ * Counts, for each drug pair, the number of distinct patients who were
+ * administered the pair together at least once. The drug administrations must
+ * arrive sorted by patient identifier, so that only the administration
+ * instances of the current patient are held in memory: when the patient
+ * changes, the pairs of all of that patient's instances are deduplicated and
+ * each counted once.
+ * 
+ * @author Monica
+ */
+public class SortedPatientDrugPairCounter {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(SortedPatientDrugPairCounter.class);
+
+	private final DrugPairCounts _drugPairCounts = new HashDrugPairCounts(0);
+	private final Map<LocalDate, Set<String>> _currentPatientAdminMap = new HashMap<LocalDate, Set<String>>();
+	private String _currentPatient;
+	private long _patientCount;
+	private int _maxPatientDrugPairs;
+
+	/**
+	 * Add a single drug administration.
+	 * 
+	 * @param drugAdministration_
+	 *            The drug administration to add.
+	 * @throws IllegalStateException
+	 *             If the drug administrations are not sorted by patient
+	 *             identifier.
+	 */
+	public void add(final SingleDrugAdministration drugAdministration_) {
+		String patient = drugAdministration_.getAdministrationInstance()
+				.getPatientIdentifier();
+		if (!patient.equals(_currentPatient)) {
+			if (_currentPatient != null && patient.compareTo(_currentPatient) < 0) {
+				throw new IllegalStateException("Input is not sorted by patient: "
+						+ patient + " follows " + _currentPatient
+						+ ". Sort it with LC_ALL=C sort -t, -k1,1.");
+			}
+			flushCurrentPatient();
+			_currentPatient = patient;
+		}
+		LocalDate date = drugAdministration_.getAdministrationInstance()
+				.getAdministrationDate();
+		Set<String> drugsSoFar = _currentPatientAdminMap.get(date);
+		if (drugsSoFar == null) {
+			drugsSoFar = new HashSet<String>();
+			_currentPatientAdminMap.put(date, drugsSoFar);
+		}
+		drugsSoFar.add(drugAdministration_.getDrug());
+	}
+
+	/**
+	 * Count the last patient and return the distinct patient counts of every
+	 * drug pair.
+	 * 
+	 * @return The number of distinct patients administered each drug pair.
+	 */
+	public DrugPairCounts finish() {
+		flushCurrentPatient();
+		_currentPatient = null;
+		LOGGER.info(
+				"Counted distinct patients for {} drug pairs over {} patients; "
+						+ "at most {} drug pairs were held for one patient.",
+				_drugPairCounts.size(), _patientCount, _maxPatientDrugPairs);
+		return _drugPairCounts;
+	}
+
+	/**
+	 * @return The largest number of distinct drug pairs held for a single
+	 *         patient, which bounds the working memory beyond the counts.
+	 */
+	public int getMaxPatientDrugPairs() {
+		return _maxPatientDrugPairs;
+	}
+
+	private void flushCurrentPatient() {
+		if (_currentPatientAdminMap.isEmpty()) {
+			return;
+		}
+		Set<DrugPair> patientDrugPairs = new HashSet<DrugPair>();
+		for (Set<String> drugSet : _currentPatientAdminMap.values()) {
+			List<String> drugList = new ArrayList<String>(drugSet);
+			for (int a = 0; a < drugList.size(); a++) {
+				for (int b = a + 1; b < drugList.size(); b++) {
+					patientDrugPairs.add(new DrugPair(drugList.get(a), drugList
+							.get(b)));
+				}
+			}
+		}
+		for (DrugPair drugPair : patientDrugPairs) {
+			String[] drugs = drugPair.getDrugs().toArray(new String[2]);
+			_drugPairCounts.increment(drugs[0], drugs[1]);
+		}
+		_maxPatientDrugPairs = Math.max(_maxPatientDrugPairs,
+				patientDrugPairs.size());
+		_patientCount++;
+		_currentPatientAdminMap.clear();
+	}
+}
@@ -0,0 +1,173 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPartner;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the k drugs most often administered together with each drug. Each
+ * drug has a bounded min-heap of its best partners so far, so memory is
+ * bounded by the number of drugs times k however many drug pairs are offered.
+ * Partners with equal counts are ranked by name. Drug pairs can be offered one
+ * at a time or visited from {@link DrugPairCounts}.
+ *
+ * @author Monica
+ */
+public class TopDrugPartners implements DrugPairCountVisitor {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(TopDrugPartners.class);
+
+	// Worst partner first: lowest count, then latest name.
+	private static final Comparator<DrugPartner> WORST_FIRST = new Comparator<DrugPartner>() {
+		@Override
+		public int compare(final DrugPartner a_, final DrugPartner b_) {
+			int byCount = Integer.compare(a_.getCount(), b_.getCount());
+			return byCount != 0 ? byCount : b_.getPartner().compareTo(
+					a_.getPartner());
+		}
+	};
+
+	private final int _k;
+	private final int _minOccurrence;
+	private final Map<String, PriorityQueue<DrugPartner>> _partnersByDrug = new HashMap<String, PriorityQueue<DrugPartner>>();
+
+	/**
+	 * Constructor for partners of any count.
+	 *
+	 * @param k_
+	 *            The number of partners to keep per drug.
+	 */
+	public TopDrugPartners(final int k_) {
+		this(k_, 1);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param k_
+	 *            The number of partners to keep per drug.
+	 * @param minOccurrence_
+	 *            The minimum occurrence of a drug pair for its drugs to be
+	 *            partners. Drug pairs offered with a lower count are ignored.
+	 */
+	public TopDrugPartners(final int k_, final int minOccurrence_) {
+		Preconditions.checkArgument(k_ > 0,
+				"Partners per drug must be positive but was %s.", k_);
+		_k = k_;
+		_minOccurrence = minOccurrence_;
+	}
+
+	/**
+	 * Offer a drug pair, as a partner of each of its drugs.
+	 *
+	 * @param drugA_
+	 *            A drug in the pair.
+	 * @param drugB_
+	 *            Another drug in the pair.
+	 * @param count_
+	 *            Number of administration instances with both drugs.
+	 */
+	public void add(final String drugA_, final String drugB_, final int count_) {
+		if (count_ < _minOccurrence) {
+			return;
+		}
+		offer(drugA_, new DrugPartner(drugB_, count_));
+		offer(drugB_, new DrugPartner(drugA_, count_));
+	}
+
+	@Override
+	public void visit(final String drugA_, final String drugB_,
+			final int count_) {
+		add(drugA_, drugB_, count_);
+	}
+
+	/**
+	 * Merge the partners kept by another instance, which must have been offered
+	 * different drug pairs, into this one.
+	 *
+	 * @param other_
+	 *            The instance to merge in.
+	 * @return This instance.
+	 */
+	public TopDrugPartners merge(final TopDrugPartners other_) {
+		for (Map.Entry<String, PriorityQueue<DrugPartner>> entry : other_._partnersByDrug
+				.entrySet()) {
+			for (DrugPartner partner : entry.getValue()) {
+				offer(entry.getKey(), partner);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return Each drug's partners, best first, by drug name.
+	 */
+	public SortedMap<String, List<DrugPartner>> getRankedPartners() {
+		SortedMap<String, List<DrugPartner>> rankedPartners = new TreeMap<String, List<DrugPartner>>();
+		for (Map.Entry<String, PriorityQueue<DrugPartner>> entry : _partnersByDrug
+				.entrySet()) {
+			List<DrugPartner> partners = new ArrayList<DrugPartner>(
+					entry.getValue());
+			Collections.sort(partners, Collections.reverseOrder(WORST_FIRST));
+			rankedPartners.put(entry.getKey(), partners);
+		}
+		return rankedPartners;
+	}
+
+	/**
+	 * Find the top partners of each drug among drug pair counts, visiting the
+	 * counts in parallel without building a map of them.
+	 *
+	 * @param drugPairCounts_
+	 *            The drug pair counts.
+	 * @param k_
+	 *            The number of partners to keep per drug.
+	 * @param minOccurrence_
+	 *            The minimum occurrence of a drug pair for its drugs to be
+	 *            partners.
+	 * @return The top partners of each drug.
+	 */
+	public static TopDrugPartners of(final DrugPairCounts drugPairCounts_,
+			final int k_, final int minOccurrence_) {
+		List<TopDrugPartners> parts = drugPairCounts_
+				.forEachParallel(() -> new TopDrugPartners(k_, minOccurrence_));
+		TopDrugPartners topDrugPartners = new TopDrugPartners(k_,
+				minOccurrence_);
+		for (TopDrugPartners part : parts) {
+			topDrugPartners.merge(part);
+		}
+		LOGGER.info(
+				"Kept the top {} partners of {} drugs from {} drug pairs with minimum occurrence {}.",
+				k_, topDrugPartners._partnersByDrug.size(),
+				drugPairCounts_.size(), minOccurrence_);
+		return topDrugPartners;
+	}
+
+	private void offer(final String drug_, final DrugPartner partner_) {
+		PriorityQueue<DrugPartner> partners = _partnersByDrug.get(drug_);
+		if (partners == null) {
+			partners = new PriorityQueue<DrugPartner>(_k + 1, WORST_FIRST);
+			_partnersByDrug.put(drug_, partners);
+		}
+		if (partners.size() < _k) {
+			partners.add(partner_);
+		} else if (WORST_FIRST.compare(partner_, partners.peek()) > 0) {
+			partners.poll();
+			partners.add(partner_);
+		}
+	}
+}
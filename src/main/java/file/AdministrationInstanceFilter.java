@@ -0,0 +1,22 @@
+package file;
+
+/**
+ * Decides from the raw fields of a line whether its administration instance is
+ * wanted, so that lines which are not can be skipped without being parsed.
+ * 
+ * @author Monica
+ */
+public interface AdministrationInstanceFilter {
+
+	/**
+	 * Called for each line before it is parsed.
+	 * 
+	 * @param patientIdentifier_
+	 *            The patient identifier field of the line.
+	 * @param administrationDate_
+	 *            The administration date field of the line, as written.
+	 * @return Whether to parse the line and pass it to the listener.
+	 */
+	boolean accept(String patientIdentifier_, String administrationDate_);
+
+}
@@ -0,0 +1,152 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.SingleDrugAdministration;
+import calc.CardinalityEstimate;
+import calc.HyperLogLog;
+
+/**
+ * Quickly estimates the size of a drug administration file by sampling rows
+ * from evenly spaced chunks of the file and counting distinct patients,
+ * administration instances, drugs and drug pairs with HyperLogLog sketches.
+ * Counts that grow with the input (rows, patients, instances, pairs) are
+ * scaled up from the sample to the whole file; the drug vocabulary is not,
+ * because it saturates quickly.
+ *
+ * @author Monica
+ */
+public class CardinalityEstimator {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(CardinalityEstimator.class);
+
+	private static final int CHUNKS = 16;
+	private static final int PRECISION = 14;
+	private static final String PAIR_SEPARATOR = "\u0000";
+
+	private final DrugFileParser _drugFileParser = new DrugFileParser();
+
+	/**
+	 * Estimate the cardinalities of a drug administration file.
+	 *
+	 * @param filename_
+	 *            The name of the file to sample.
+	 * @param sampleRows_
+	 *            The maximum number of rows to read. If the file has fewer
+	 *            rows, the whole file is read and the estimates are not
+	 *            scaled.
+	 * @return The estimate.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	public CardinalityEstimate estimate(final String filename_,
+			final long sampleRows_) throws IOException {
+		long fileBytes = new File(filename_).length();
+		LOGGER.info("Sampling up to {} rows of {} ({} bytes) to estimate cardinalities.",
+				sampleRows_, filename_, fileBytes);
+
+		HyperLogLog patients = new HyperLogLog(PRECISION);
+		HyperLogLog instances = new HyperLogLog(PRECISION);
+		HyperLogLog drugs = new HyperLogLog(PRECISION);
+		HyperLogLog drugPairs = new HyperLogLog(PRECISION);
+		Map<AdministrationInstance, Set<String>> sampleAdminMap = new HashMap<AdministrationInstance, Set<String>>();
+
+		long rowsPerChunk = Math.max(1, sampleRows_ / CHUNKS);
+		long sampledRows = 0;
+		long sampledBytes = 0;
+		boolean exhaustive = true;
+		for (int chunk = 0; chunk < CHUNKS; chunk++) {
+			long chunkStart = fileBytes * chunk / CHUNKS;
+			long chunkEnd = fileBytes * (chunk + 1) / CHUNKS;
+			// Start one byte early so that a chunk boundary falling exactly on
+			// a line start does not skip that line.
+			OffsetLineReader r = new OffsetLineReader(filename_, Math.max(0,
+					chunkStart - 1));
+			try {
+				if (chunkStart > 0) {
+					// Skip the rest of a line the previous chunk already read.
+					r.readLine();
+				}
+				long startOffset = r.getOffset();
+				long endOffset = startOffset;
+				long chunkRows = 0;
+				String line;
+				while (r.getOffset() < chunkEnd
+						&& (line = r.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					if (chunkRows == rowsPerChunk) {
+						exhaustive = false;
+						break;
+					}
+					SingleDrugAdministration drugAdministration = _drugFileParser
+							.parseLine(line);
+					AdministrationInstance adminInstance = drugAdministration
+							.getAdministrationInstance();
+					patients.add(adminInstance.getPatientIdentifier());
+					instances.add(adminInstance.getPatientIdentifier()
+							+ PAIR_SEPARATOR
+							+ adminInstance.getAdministrationDate());
+					drugs.add(drugAdministration.getDrug());
+					Set<String> drugSet = sampleAdminMap.get(adminInstance);
+					if (drugSet == null) {
+						drugSet = new HashSet<String>();
+						sampleAdminMap.put(adminInstance, drugSet);
+					}
+					drugSet.add(drugAdministration.getDrug());
+					chunkRows++;
+					endOffset = r.getOffset();
+				}
+				sampledRows += chunkRows;
+				sampledBytes += endOffset - startOffset;
+			} finally {
+				r.close();
+			}
+		}
+
+		for (Set<String> drugSet : sampleAdminMap.values()) {
+			List<String> drugList = new ArrayList<String>(drugSet);
+			for (int a = 0; a < drugList.size(); a++) {
+				for (int b = a + 1; b < drugList.size(); b++) {
+					String drugA = drugList.get(a);
+					String drugB = drugList.get(b);
+					drugPairs.add(drugA.compareTo(drugB) < 0 ? drugA
+							+ PAIR_SEPARATOR + drugB : drugB + PAIR_SEPARATOR
+							+ drugA);
+				}
+			}
+		}
+
+		long estimatedRows = sampledRows;
+		if (!exhaustive && sampledBytes > 0) {
+			estimatedRows = Math.max(sampledRows, fileBytes * sampledRows
+					/ sampledBytes);
+		}
+		double scale = sampledRows == 0 ? 1 : (double) estimatedRows
+				/ sampledRows;
+		long drugEstimate = drugs.estimate();
+		long maxDrugPairs = drugEstimate * (drugEstimate - 1) / 2;
+		CardinalityEstimate estimate = new CardinalityEstimate(estimatedRows,
+				Math.min(estimatedRows, Math.round(patients.estimate() * scale)),
+				Math.min(estimatedRows,
+						Math.round(instances.estimate() * scale)),
+				drugEstimate, Math.min(maxDrugPairs,
+						Math.round(drugPairs.estimate() * scale)), sampledRows,
+				exhaustive);
+		LOGGER.info("Estimated cardinalities of {}: {}.", filename_, estimate);
+		return estimate;
+	}
+}
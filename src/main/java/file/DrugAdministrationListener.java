@@ -0,0 +1,30 @@
+package file;
+
+import java.io.IOException;
+
+import api.SingleDrugAdministration;
+
+/**
+ * Receives drug administrations one at a time as a file is parsed, so the
+ * caller does not have to hold every parsed row in memory.
+ * 
+ * @author Monica
+ */
+public interface DrugAdministrationListener {
+
+	/**
+	 * Called for each line parsed from the file.
+	 * 
+	 * @param drugAdministration_
+	 *            The drug administration parsed from the line.
+	 * @param endOffset_
+	 *            The byte offset in the file just past the parsed line. Parsing
+	 *            can later be resumed from this offset.
+	 * @throws IOException
+	 *             If the listener could not handle the drug administration.
+	 */
+	void drugAdministrationParsed(
+			SingleDrugAdministration drugAdministration_, long endOffset_)
+			throws IOException;
+
+}
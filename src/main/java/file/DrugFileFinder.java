@@ -0,0 +1,148 @@
+package file;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the drug administration files named by an input path, which may be a
+ * single file, a directory whose files are all inputs, or a glob such as
+ * data/2014-*.csv or data/**.csv.
+ *
+ * @author Monica
+ */
+public class DrugFileFinder {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugFileFinder.class);
+
+	private static final String GLOB_CHARACTERS = "*?[{";
+	private static final String HIDDEN_PREFIX = ".";
+
+	/**
+	 * @param input_
+	 *            An input path.
+	 * @return Whether the input names a directory or a glob rather than a
+	 *         single file.
+	 */
+	public static boolean isMultiFile(final String input_) {
+		return isGlob(input_) || Files.isDirectory(Paths.get(input_));
+	}
+
+	/**
+	 * Find the files named by an input path.
+	 *
+	 * @param input_
+	 *            A file, a directory, or a glob. The files of a directory are
+	 *            taken without descending into subdirectories, and hidden
+	 *            files are skipped. A glob is matched against paths below its
+	 *            longest directory prefix without glob characters.
+	 * @return The filenames in sorted order.
+	 * @throws IOException
+	 *             If no file was found or a directory could not be listed.
+	 */
+	public List<String> find(final String input_) throws IOException {
+		List<String> filenames = new ArrayList<String>();
+		if (isGlob(input_)) {
+			findGlob(input_, filenames);
+		} else if (Files.isDirectory(Paths.get(input_))) {
+			DirectoryStream<Path> directory = Files.newDirectoryStream(Paths
+					.get(input_));
+			try {
+				for (Path path : directory) {
+					if (isDataFile(path)) {
+						filenames.add(path.toString());
+					}
+				}
+			} finally {
+				directory.close();
+			}
+		} else if (Files.isRegularFile(Paths.get(input_))) {
+			filenames.add(input_);
+		}
+		if (filenames.isEmpty()) {
+			throw new FileNotFoundException("No drug administration files found for "
+					+ input_);
+		}
+		Collections.sort(filenames);
+		LOGGER.info("Found {} drug administration files for {}.",
+				filenames.size(), input_);
+		return filenames;
+	}
+
+	private static void findGlob(final String glob_, final List<String> filenames_)
+			throws IOException {
+		// Split into the directory to search and the pattern below it.
+		String separator = FileSystems.getDefault().getSeparator();
+		int firstGlob = firstGlobCharacter(glob_);
+		int baseEnd = Math.max(glob_.lastIndexOf('/', firstGlob),
+				glob_.lastIndexOf(separator, firstGlob));
+		Path base = Paths.get(baseEnd < 0 ? "." : baseEnd == 0 ? separator
+				: glob_.substring(0, baseEnd));
+		String pattern = glob_.substring(baseEnd + 1);
+		if (!Files.isDirectory(base)) {
+			return;
+		}
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+				"glob:" + pattern);
+		// Without ** a pattern can only match at its own depth.
+		int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern
+				.split("[/\\\\]").length;
+		for (Path path : walk(base, depth)) {
+			if (isDataFile(path) && matcher.matches(base.relativize(path))) {
+				filenames_.add(baseEnd < 0 ? base.relativize(path).toString()
+						: path.toString());
+			}
+		}
+	}
+
+	private static List<Path> walk(final Path base_, final int depth_)
+			throws IOException {
+		final List<Path> paths = new ArrayList<Path>();
+		Files.walkFileTree(base_, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+				depth_, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(
+							final Path file_,
+							final BasicFileAttributes attributes_) {
+						paths.add(file_);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+		return paths;
+	}
+
+	private static boolean isDataFile(final Path path_) {
+		return Files.isRegularFile(path_)
+				&& !path_.getFileName().toString().startsWith(HIDDEN_PREFIX);
+	}
+
+	private static boolean isGlob(final String input_) {
+		return firstGlobCharacter(input_) < input_.length();
+	}
+
+	private static int firstGlobCharacter(final String input_) {
+		for (int i = 0; i < input_.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(input_.charAt(i)) >= 0) {
+				return i;
+			}
+		}
+		return input_.length();
+	}
+}
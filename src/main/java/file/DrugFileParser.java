@@ -4,8 +4,10 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,7 +45,7 @@ public class DrugFileParser {
 	public List<SingleDrugAdministration> parseFile(final String filename_) {
 		LOGGER.info("Parsing file {} into drug administration objects.",
 				filename_);
-		List<SingleDrugAdministration> drugAdministrations = new LinkedList<SingleDrugAdministration>();
+		List<SingleDrugAdministration> drugAdministrations = new ArrayList<SingleDrugAdministration>();
 		BufferedReader r = null;
 
 		try {
@@ -78,6 +80,124 @@ public class DrugFileParser {
 		return drugAdministrations;
 	}
 
+	/**
+	 * Lazily parse a file of drug administration data as a stream, so rows can
+	 * be consumed without holding the whole file in memory. The stream holds
+	 * the file open and must be closed.
+	 *
+	 * @param filename_
+	 *            The name of the file to parse.
+	 * @return A stream of drug administrations, one per non-empty line.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	public Stream<SingleDrugAdministration> streamFile(final String filename_)
+			throws IOException {
+		LOGGER.info("Streaming file {} as drug administration objects.",
+				filename_);
+		final BufferedReader r = new BufferedReader(new FileReader(filename_));
+		return r.lines().filter(line -> !line.isEmpty()).map(this::parseLine)
+				.onClose(() -> {
+					try {
+						r.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/**
+	 * Parse a file of drug administration data starting at a given byte offset,
+	 * handing each drug administration to a listener as soon as it is parsed
+	 * rather than collecting them into a list.
+	 *
+	 * @param filename_
+	 *            The name of the file to parse.
+	 * @param startOffset_
+	 *            The byte offset to start parsing from. Must be the start of a
+	 *            line, such as an offset previously passed to the listener.
+	 * @param listener_
+	 *            Receives each parsed drug administration along with the
+	 *            offset just past its line.
+	 * @return The number of lines parsed.
+	 * @throws IOException
+	 *             If the file could not be read or the listener failed.
+	 */
+	public long parseFile(final String filename_, final long startOffset_,
+			final DrugAdministrationListener listener_) throws IOException {
+		return parseFile(filename_, startOffset_, null, listener_);
+	}
+
+	/**
+	 * Parse a file of drug administration data starting at a given byte offset,
+	 * skipping without parsing the lines of administration instances a filter
+	 * rejects and handing each other drug administration to a listener.
+	 *
+	 * @param filename_
+	 *            The name of the file to parse.
+	 * @param startOffset_
+	 *            The byte offset to start parsing from. Must be the start of a
+	 *            line, such as an offset previously passed to the listener.
+	 * @param filter_
+	 *            Decides which lines to parse, or null to parse every line.
+	 * @param listener_
+	 *            Receives each parsed drug administration along with the
+	 *            offset just past its line.
+	 * @return The number of lines parsed.
+	 * @throws IOException
+	 *             If the file could not be read or the listener failed.
+	 */
+	public long parseFile(final String filename_, final long startOffset_,
+			final AdministrationInstanceFilter filter_,
+			final DrugAdministrationListener listener_) throws IOException {
+		LOGGER.info(
+				"Parsing file {} from byte offset {} into drug administration objects.",
+				filename_, startOffset_);
+		OffsetLineReader r = new OffsetLineReader(filename_, startOffset_);
+		long lineCount = 0;
+		long skippedCount = 0;
+		try {
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				if (filter_ != null && !accept(filter_, line)) {
+					skippedCount++;
+					continue;
+				}
+				SingleDrugAdministration drugAdministration = parseLine(line);
+				listener_.drugAdministrationParsed(drugAdministration,
+						r.getOffset());
+				lineCount++;
+				if (lineCount % DEBUG_INTERVAL == 0) {
+					LOGGER.debug("Parsed {} lines.", lineCount);
+				}
+			}
+		} finally {
+			r.close();
+		}
+		LOGGER.info(
+				"Finished parsing file {} with {} lines from byte offset {}, skipped {}.",
+				filename_, lineCount, startOffset_, skippedCount);
+		return lineCount;
+	}
+
+	/**
+	 * Ask a filter about a line without splitting or parsing it.
+	 */
+	private static boolean accept(final AdministrationInstanceFilter filter_,
+			final String line_) {
+		int patientEnd = line_.indexOf(DELIMITER);
+		int dateEnd = line_.indexOf(DELIMITER, patientEnd + 1);
+		if (patientEnd < 0 || dateEnd < 0) {
+			// Leave malformed lines to the parser.
+			return true;
+		}
+		return filter_.accept(line_.substring(0, patientEnd),
+				line_.substring(patientEnd + 1, dateEnd));
+	}
+
 	/**
 	 * Parse a delimited file line into a drug administration object.
 	 * 
@@ -0,0 +1,150 @@
+package file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Spills a drug administration file into partition files such that all rows of
+ * an administration instance land in the same partition. Each partition can
+ * then be grouped and counted on its own, which bounds the memory needed for
+ * grouping by the size of the largest partition rather than the whole input.
+ * At most {@link #MAX_OPEN_PARTITIONS} partition files are open at once; more
+ * partitions than that are spilled in several passes over the input.
+ *
+ * @author Monica
+ */
+public class DrugFileSpiller {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugFileSpiller.class);
+
+	private static final char DELIMITER = ',';
+	private static final String PARTITION_PREFIX = "drug-partition-";
+
+	/**
+	 * The most partition files written in one pass, well under the usual
+	 * limit of 1024 open file descriptors per process.
+	 */
+	static final int MAX_OPEN_PARTITIONS = 256;
+
+	/**
+	 * Spill a file into partitions.
+	 *
+	 * @param filename_
+	 *            The name of the file to spill.
+	 * @param partitions_
+	 *            The number of partitions.
+	 * @param spillDirectory_
+	 *            The directory to write partition files to, or null for the
+	 *            default temporary directory.
+	 * @return The partition files. The caller is responsible for deleting
+	 *         them.
+	 * @throws IOException
+	 *             If the file could not be read or a partition written.
+	 */
+	public List<File> spill(final String filename_, final int partitions_,
+			final File spillDirectory_) throws IOException {
+		Preconditions.checkArgument(partitions_ > 0,
+				"Partitions must be positive but was %s.", partitions_);
+		int passes = (partitions_ + MAX_OPEN_PARTITIONS - 1)
+				/ MAX_OPEN_PARTITIONS;
+		LOGGER.info("Spilling {} into {} partitions in {} in {} passes.",
+				filename_, partitions_, spillDirectory_, passes);
+		List<File> partitionFiles = new ArrayList<File>(partitions_);
+		try {
+			for (int i = 0; i < partitions_; i++) {
+				File partitionFile = File.createTempFile(PARTITION_PREFIX + i
+						+ "-", ".txt", spillDirectory_);
+				partitionFile.deleteOnExit();
+				partitionFiles.add(partitionFile);
+			}
+			long lineCount = 0;
+			for (int first = 0; first < partitions_; first += MAX_OPEN_PARTITIONS) {
+				lineCount = spillPass(filename_, partitions_, partitionFiles,
+						first, Math.min(partitions_, first
+								+ MAX_OPEN_PARTITIONS));
+			}
+			LOGGER.info("Spilled {} lines of {} into {} partitions.",
+					lineCount, filename_, partitions_);
+		} catch (IOException | RuntimeException e) {
+			for (File partitionFile : partitionFiles) {
+				partitionFile.delete();
+			}
+			throw e;
+		}
+		return partitionFiles;
+	}
+
+	/**
+	 * Read a file once and write the lines of a range of partitions.
+	 *
+	 * @return The number of non-empty lines read.
+	 */
+	private static long spillPass(final String filename_,
+			final int partitions_, final List<File> partitionFiles_,
+			final int first_, final int end_) throws IOException {
+		List<BufferedWriter> writers = new ArrayList<BufferedWriter>(end_
+				- first_);
+		OffsetLineReader r = null;
+		try {
+			for (int i = first_; i < end_; i++) {
+				writers.add(new BufferedWriter(new FileWriter(partitionFiles_
+						.get(i))));
+			}
+			r = new OffsetLineReader(filename_, 0);
+			String line;
+			long lineCount = 0;
+			while ((line = r.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				lineCount++;
+				int partition = partitionOf(line, partitions_);
+				if (partition < first_ || partition >= end_) {
+					continue;
+				}
+				BufferedWriter w = writers.get(partition - first_);
+				w.write(line);
+				w.newLine();
+			}
+			return lineCount;
+		} finally {
+			if (r != null) {
+				r.close();
+			}
+			for (BufferedWriter w : writers) {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * Choose the partition of a line from its administration instance, that is
+	 * everything before the second delimiter (patient identifier and date).
+	 *
+	 * @param line_
+	 *            The file line.
+	 * @param partitions_
+	 *            The number of partitions.
+	 * @return The partition index.
+	 */
+	static int partitionOf(final String line_, final int partitions_) {
+		int firstDelimiter = line_.indexOf(DELIMITER);
+		int secondDelimiter = line_.indexOf(DELIMITER, firstDelimiter + 1);
+		String adminInstanceKey = secondDelimiter < 0 ? line_ : line_
+				.substring(0, secondDelimiter);
+		int hash = adminInstanceKey.hashCode();
+		// Spread the bits so similar keys do not cluster in one partition.
+		hash ^= (hash >>> 16);
+		return Math.floorMod(hash * 0x9E3779B9, partitions_);
+	}
+}
@@ -0,0 +1,83 @@
+package file;
+
+import calc.DrugPairAccumulator;
+
+/**
+ * Holds a consistent snapshot of a drug pair calculation over an input file:
+ * the byte offset up to which the file has been consumed together with the
+ * accumulated grouping state and pair counts for everything before it. The
+ * size and modification time of the file identify the version of it the
+ * offset refers to.
+ * 
+ * @author Monica
+ */
+public class DrugPairCheckpoint {
+
+	private final String _inputFilename;
+	private final long _inputSize;
+	private final long _inputModified;
+	private final long _inputOffset;
+	private final DrugPairAccumulator _accumulator;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param inputFilename_
+	 *            The name of the input file being calculated over.
+	 * @param inputSize_
+	 *            The size in bytes of the input file.
+	 * @param inputModified_
+	 *            The last modification time of the input file, in
+	 *            milliseconds since the epoch.
+	 * @param inputOffset_
+	 *            The byte offset just past the last line accumulated.
+	 * @param accumulator_
+	 *            The accumulated state for all lines before the offset.
+	 */
+	public DrugPairCheckpoint(final String inputFilename_,
+			final long inputSize_, final long inputModified_,
+			final long inputOffset_, final DrugPairAccumulator accumulator_) {
+		_inputFilename = inputFilename_;
+		_inputSize = inputSize_;
+		_inputModified = inputModified_;
+		_inputOffset = inputOffset_;
+		_accumulator = accumulator_;
+	}
+
+	/**
+	 * @return The name of the input file being calculated over.
+	 */
+	public String getInputFilename() {
+		return _inputFilename;
+	}
+
+	/**
+	 * @return The size in bytes of the input file.
+	 */
+	public long getInputSize() {
+		return _inputSize;
+	}
+
+	/**
+	 * @return The last modification time of the input file, in milliseconds
+	 *         since the epoch.
+	 */
+	public long getInputModified() {
+		return _inputModified;
+	}
+
+	/**
+	 * @return The byte offset just past the last line accumulated.
+	 */
+	public long getInputOffset() {
+		return _inputOffset;
+	}
+
+	/**
+	 * @return The accumulated state for all lines before the offset.
+	 */
+	public DrugPairAccumulator getAccumulator() {
+		return _accumulator;
+	}
+
+}
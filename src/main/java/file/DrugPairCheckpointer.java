@@ -0,0 +1,220 @@
+package file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+import calc.DrugPairAccumulator;
+
+/**
+ * Writes and reads drug pair calculation checkpoints in a checkpoint
+ * directory. A checkpoint is first written in full to a temporary file, synced
+ * to disk and then atomically renamed over the previous checkpoint, so the
+ * directory always holds either the previous or the new checkpoint and never a
+ * partially written one.
+ *
+ * @author Monica
+ */
+public class DrugPairCheckpointer {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairCheckpointer.class);
+
+	private static final String CHECKPOINT_FILENAME = "drug-pairs.checkpoint";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final String HEADER = "drug-data checkpoint v2";
+	private static final String FOOTER = "end";
+	private static final String DELIMITER = ",";
+	private static final String INPUT_KEY = "input=";
+	private static final String SIZE_KEY = "size=";
+	private static final String MODIFIED_KEY = "modified=";
+	private static final String OFFSET_KEY = "offset=";
+	private static final String ADMINISTRATIONS_KEY = "administrations=";
+	private static final String INSTANCE_TYPE = "I";
+	private static final String PAIR_TYPE = "P";
+
+	private final File _checkpointFile;
+	private final File _tempFile;
+
+	/**
+	 * Constructor
+	 *
+	 * @param checkpointDirectory_
+	 *            The directory to hold checkpoints. Created if missing.
+	 * @throws IOException
+	 *             If the directory could not be created.
+	 */
+	public DrugPairCheckpointer(final String checkpointDirectory_)
+			throws IOException {
+		File directory = new File(checkpointDirectory_);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create checkpoint directory "
+					+ checkpointDirectory_);
+		}
+		_checkpointFile = new File(directory, CHECKPOINT_FILENAME);
+		_tempFile = new File(directory, CHECKPOINT_FILENAME + TEMP_SUFFIX);
+	}
+
+	/**
+	 * Atomically replace the current checkpoint with the given one.
+	 *
+	 * @param checkpoint_
+	 *            The checkpoint to write.
+	 * @return The size in bytes of the written checkpoint.
+	 * @throws IOException
+	 *             If the checkpoint could not be written. The previous
+	 *             checkpoint, if any, is left intact.
+	 */
+	public long writeCheckpoint(final DrugPairCheckpoint checkpoint_)
+			throws IOException {
+		DrugPairAccumulator accumulator = checkpoint_.getAccumulator();
+		FileOutputStream out = new FileOutputStream(_tempFile);
+		try {
+			PrintWriter w = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(out)));
+			w.println(HEADER);
+			w.println(INPUT_KEY + checkpoint_.getInputFilename());
+			w.println(SIZE_KEY + checkpoint_.getInputSize());
+			w.println(MODIFIED_KEY + checkpoint_.getInputModified());
+			w.println(OFFSET_KEY + checkpoint_.getInputOffset());
+			w.println(ADMINISTRATIONS_KEY
+					+ accumulator.getDrugAdministrationCount());
+			for (Map.Entry<AdministrationInstance, Set<String>> entry : accumulator
+					.getMapOfAdminInstanceToDrugsAdministered().entrySet()) {
+				AdministrationInstance adminInstance = entry.getKey();
+				w.print(INSTANCE_TYPE + DELIMITER
+						+ adminInstance.getPatientIdentifier() + DELIMITER
+						+ adminInstance.getAdministrationDate() + DELIMITER);
+				w.println(StringUtils.join(entry.getValue(), DELIMITER));
+			}
+			for (Map.Entry<DrugPair, Integer> entry : accumulator
+					.getMapOfDrugPairToOccurrence().entrySet()) {
+				w.print(PAIR_TYPE + DELIMITER);
+				w.print(StringUtils.join(entry.getKey().getDrugs(), DELIMITER));
+				w.println(DELIMITER + entry.getValue());
+			}
+			w.println(FOOTER);
+			w.flush();
+			if (w.checkError()) {
+				throw new IOException("Could not write checkpoint file "
+						+ _tempFile);
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		long size = _tempFile.length();
+		Files.move(_tempFile.toPath(), _checkpointFile.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Wrote checkpoint at input offset {} ({} bytes) to {}.",
+				checkpoint_.getInputOffset(), size, _checkpointFile);
+		return size;
+	}
+
+	/**
+	 * Read the last consistent checkpoint.
+	 *
+	 * @return The checkpoint, or null if there is none.
+	 * @throws IOException
+	 *             If the checkpoint exists but could not be read or is
+	 *             incomplete.
+	 */
+	public DrugPairCheckpoint readCheckpoint() throws IOException {
+		if (!_checkpointFile.isFile()) {
+			LOGGER.info("No checkpoint found at {}.", _checkpointFile);
+			return null;
+		}
+		BufferedReader r = new BufferedReader(new FileReader(_checkpointFile));
+		try {
+			expectLine(r, HEADER);
+			String inputFilename = readValue(r, INPUT_KEY);
+			long inputSize = Long.parseLong(readValue(r, SIZE_KEY));
+			long inputModified = Long.parseLong(readValue(r, MODIFIED_KEY));
+			long offset = Long.parseLong(readValue(r, OFFSET_KEY));
+			long administrationCount = Long.parseLong(readValue(r,
+					ADMINISTRATIONS_KEY));
+
+			Map<AdministrationInstance, Set<String>> drugAdminMap = new HashMap<AdministrationInstance, Set<String>>();
+			Map<DrugPair, Integer> drugPairMap = new HashMap<DrugPair, Integer>();
+			String line;
+			while ((line = r.readLine()) != null && !line.equals(FOOTER)) {
+				String[] splitLine = line.split(DELIMITER);
+				if (splitLine[0].equals(INSTANCE_TYPE)) {
+					AdministrationInstance adminInstance = new AdministrationInstance(
+							splitLine[1], splitLine[2]);
+					Set<String> drugs = new HashSet<String>(Arrays.asList(
+							splitLine).subList(3, splitLine.length));
+					drugAdminMap.put(adminInstance, drugs);
+				} else if (splitLine[0].equals(PAIR_TYPE)) {
+					drugPairMap.put(new DrugPair(splitLine[1], splitLine[2]),
+							Integer.valueOf(splitLine[3]));
+				} else {
+					throw new IOException("Unexpected checkpoint line: " + line);
+				}
+			}
+			if (line == null) {
+				throw new IOException("Checkpoint " + _checkpointFile
+						+ " is incomplete.");
+			}
+			LOGGER.info(
+					"Read checkpoint at input offset {} with {} administration instances "
+							+ "and {} drug pairs from {}.", offset,
+					drugAdminMap.size(), drugPairMap.size(), _checkpointFile);
+			return new DrugPairCheckpoint(inputFilename, inputSize,
+					inputModified, offset,
+					new DrugPairAccumulator(drugAdminMap, drugPairMap,
+							administrationCount));
+		} finally {
+			r.close();
+		}
+	}
+
+	/**
+	 * Remove the current checkpoint, if any. Called once a calculation has
+	 * completed so a later run does not resume from stale state.
+	 */
+	public void deleteCheckpoint() {
+		if (_checkpointFile.isFile() && !_checkpointFile.delete()) {
+			LOGGER.warn("Could not delete checkpoint {}.", _checkpointFile);
+		}
+	}
+
+	private static void expectLine(final BufferedReader r_,
+			final String expected_) throws IOException {
+		String line = r_.readLine();
+		if (!expected_.equals(line)) {
+			throw new IOException("Expected checkpoint line '" + expected_
+					+ "' but found '" + line + "'.");
+		}
+	}
+
+	private static String readValue(final BufferedReader r_, final String key_)
+			throws IOException {
+		String line = r_.readLine();
+		if (line == null || !line.startsWith(key_)) {
+			throw new IOException("Expected checkpoint line starting with '"
+					+ key_ + "' but found '" + line + "'.");
+		}
+		return line.substring(key_.length());
+	}
+}
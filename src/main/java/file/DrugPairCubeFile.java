@@ -0,0 +1,221 @@
+package file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.joda.time.YearMonth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import calc.DrugPairCounts;
+import calc.DrugPairCube;
+import calc.HashDrugPairCounts;
+
+/**
+ * Reads and writes drug pair cubes in a compact binary file. Drug names are
+ * stored once in a dictionary and each month is stored as a block of (drug
+ * index, drug index, count) triples encoded as variable length integers. Each
+ * block is prefixed with its month, the days of the month it was loaded from
+ * (as a bit mask) and its length so that a reader interested in a date range
+ * can skip the blocks outside it without decoding them.
+ *
+ * @author Monica
+ */
+public class DrugPairCubeFile {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairCubeFile.class);
+
+	private static final int MAGIC = 0x44504332; // "DPC2"
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Write a cube to file, replacing any existing file atomically.
+	 *
+	 * @param cube_
+	 *            The cube to write.
+	 * @param filename_
+	 *            The name of the file to write.
+	 * @throws IOException
+	 *             If the file could not be written. An existing file is left
+	 *             intact.
+	 */
+	public void write(final DrugPairCube cube_, final String filename_)
+			throws IOException {
+		Map<String, Integer> drugIndexes = new LinkedHashMap<String, Integer>();
+		for (DrugPairCounts drugPairCounts : cube_.getMonths().values()) {
+			for (DrugPair drugPair : drugPairCounts.toMap().keySet()) {
+				for (String drug : drugPair.getDrugs()) {
+					if (!drugIndexes.containsKey(drug)) {
+						drugIndexes.put(drug, drugIndexes.size());
+					}
+				}
+			}
+		}
+
+		File file = new File(filename_);
+		File tempFile = new File(filename_ + TEMP_SUFFIX);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(drugIndexes.size());
+			for (String drug : drugIndexes.keySet()) {
+				out.writeUTF(drug);
+			}
+			out.writeInt(cube_.getMonths().size());
+			ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+			DataOutputStream block = new DataOutputStream(blockBytes);
+			for (Map.Entry<YearMonth, DrugPairCounts> entry : cube_.getMonths()
+					.entrySet()) {
+				blockBytes.reset();
+				Map<DrugPair, Integer> drugPairMap = entry.getValue().toMap();
+				writeVarInt(block, drugPairMap.size());
+				for (Map.Entry<DrugPair, Integer> pairEntry : drugPairMap
+						.entrySet()) {
+					for (String drug : pairEntry.getKey().getDrugs()) {
+						writeVarInt(block, drugIndexes.get(drug));
+					}
+					writeVarInt(block, pairEntry.getValue());
+				}
+				block.flush();
+				out.writeShort(entry.getKey().getYear());
+				out.writeByte(entry.getKey().getMonthOfYear());
+				out.writeInt(toDayMask(cube_.getDays(entry.getKey())));
+				out.writeInt(blockBytes.size());
+				blockBytes.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tempFile.toPath(), file.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Wrote drug pair cube of {} months and {} drugs ({} bytes) to {}.",
+				cube_.getMonths().size(), drugIndexes.size(), file.length(),
+				filename_);
+	}
+
+	/**
+	 * Read the months of a cube file that fall in a range.
+	 *
+	 * @param filename_
+	 *            The name of the file to read.
+	 * @param from_
+	 *            The first month to read, or null for no lower bound.
+	 * @param to_
+	 *            The last month to read (inclusive), or null for no upper
+	 *            bound.
+	 * @return A cube holding only the months in the range.
+	 * @throws IOException
+	 *             If the file could not be read or is not a cube file.
+	 */
+	public DrugPairCube read(final String filename_, final YearMonth from_,
+			final YearMonth to_) throws IOException {
+		DrugPairCube cube = new DrugPairCube();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(filename_)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(filename_ + " is not a drug pair cube.");
+			}
+			String[] drugs = new String[in.readInt()];
+			for (int i = 0; i < drugs.length; i++) {
+				drugs[i] = in.readUTF();
+			}
+			int months = in.readInt();
+			int skipped = 0;
+			for (int m = 0; m < months; m++) {
+				YearMonth month = new YearMonth(in.readShort(), in.readByte());
+				Set<Integer> days = fromDayMask(in.readInt());
+				int blockLength = in.readInt();
+				if (!DrugPairCube.isInRange(month, from_, to_)) {
+					skipFully(in, blockLength);
+					skipped++;
+					continue;
+				}
+				int pairs = readVarInt(in);
+				DrugPairCounts drugPairCounts = new HashDrugPairCounts(pairs);
+				for (int p = 0; p < pairs; p++) {
+					String drugA = drugs[readVarInt(in)];
+					String drugB = drugs[readVarInt(in)];
+					drugPairCounts.add(drugA, drugB, readVarInt(in));
+				}
+				cube.putMonth(month, days, drugPairCounts);
+			}
+			LOGGER.info("Read {} months of drug pair cube {}, skipped {}.",
+					months - skipped, filename_, skipped);
+		} finally {
+			in.close();
+		}
+		return cube;
+	}
+
+	private static int toDayMask(final Set<Integer> days_) {
+		int mask = 0;
+		for (int day : days_) {
+			mask |= 1 << (day - 1);
+		}
+		return mask;
+	}
+
+	private static Set<Integer> fromDayMask(final int mask_) {
+		Set<Integer> days = new TreeSet<Integer>();
+		for (int day = 1; day <= 31; day++) {
+			if ((mask_ & (1 << (day - 1))) != 0) {
+				days.add(day);
+			}
+		}
+		return days;
+	}
+
+	private static void skipFully(final DataInputStream in_, final int bytes_)
+			throws IOException {
+		int remaining = bytes_;
+		while (remaining > 0) {
+			int skipped = in_.skipBytes(remaining);
+			if (skipped <= 0) {
+				throw new EOFException("Drug pair cube ended inside a month.");
+			}
+			remaining -= skipped;
+		}
+	}
+
+	private static void writeVarInt(final DataOutputStream out_,
+			final int value_) throws IOException {
+		int value = value_;
+		while ((value & ~0x7F) != 0) {
+			out_.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out_.writeByte(value);
+	}
+
+	private static int readVarInt(final DataInputStream in_)
+			throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in_.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -3,13 +3,19 @@ package file;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import api.DrugPair;
+import api.DrugPairEstimate;
+import api.DrugPartner;
+import api.DrugPairStatistics;
 
 /**
  * Utility to write drug pairs to file
@@ -38,9 +44,11 @@ public class DrugPairFileWriter {
 	 *            The drug pairs.
 	 * @param filename_
 	 *            The filename to write to.
+	 * @throws IOException
+	 *             If the file could not be written.
 	 */
 	public void writePairs(final Set<DrugPair> drugPairs_,
-			final String filename_) {
+			final String filename_) throws IOException {
 		LOGGER.info("Writing {} drug pairs to file {}.", drugPairs_, filename_);
 		PrintWriter w = null;
 		try {
@@ -54,11 +62,150 @@ public class DrugPairFileWriter {
 					LOGGER.info("Wrote {} drug pairs so far.", count);
 				}
 			}
+			if (w.checkError()) {
+				throw new IOException("Could not write drug pairs to file "
+						+ filename_ + ".");
+			}
 			LOGGER.info("Finished writing {} drug pairs to file {}.",
 					drugPairs_, filename_);
-		} catch (IOException e) {
-			System.out.println("Could not write drug pairs to file "
-					+ filename_ + " due to exception: " + e);
+		} finally {
+			if (w != null) {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * Write the given drug pair statistics to file, one pair per line after a
+	 * header line naming the columns.
+	 * 
+	 * @param statistics_
+	 *            The drug pair statistics.
+	 * @param includeScores_
+	 *            Whether to also write the chi-square and pointwise mutual
+	 *            information scores.
+	 * @param filename_
+	 *            The filename to write to.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void writePairStatistics(final List<DrugPairStatistics> statistics_,
+			final boolean includeScores_, final String filename_)
+			throws IOException {
+		LOGGER.info("Writing statistics of {} drug pairs to file {}.",
+				statistics_.size(), filename_);
+		PrintWriter w = null;
+		try {
+			w = new PrintWriter(new FileWriter(filename_));
+			w.print(StringUtils.join(new String[] { "drugA", "drugB", "count",
+					"support", "confidenceAToB", "confidenceBToA", "lift" },
+					DELIMITER));
+			w.println(includeScores_ ? DELIMITER + "chiSquare" + DELIMITER
+					+ "pmi" : "");
+			for (DrugPairStatistics pair : statistics_) {
+				w.print(pair.getDrugA() + DELIMITER + pair.getDrugB()
+						+ DELIMITER + pair.getPairCount() + DELIMITER
+						+ pair.getSupport() + DELIMITER
+						+ pair.getConfidenceAToB() + DELIMITER
+						+ pair.getConfidenceBToA() + DELIMITER + pair.getLift());
+				if (includeScores_) {
+					w.print(DELIMITER + pair.getChiSquare() + DELIMITER
+							+ pair.getPointwiseMutualInformation());
+				}
+				w.println();
+			}
+			if (w.checkError()) {
+				throw new IOException("Could not write drug pair statistics to file "
+						+ filename_ + ".");
+			}
+			LOGGER.info("Finished writing statistics of {} drug pairs to file {}.",
+					statistics_.size(), filename_);
+		} finally {
+			if (w != null) {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * Write the given drug pair estimates to file, one pair per line after a
+	 * header line naming the columns. The estimate is rounded to the nearest
+	 * whole occurrence and the confidence interval widened to whole
+	 * occurrences.
+	 * 
+	 * @param estimates_
+	 *            The drug pair estimates.
+	 * @param filename_
+	 *            The filename to write to.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void writePairEstimates(final List<DrugPairEstimate> estimates_,
+			final String filename_) throws IOException {
+		LOGGER.info("Writing estimates of {} drug pairs to file {}.",
+				estimates_.size(), filename_);
+		PrintWriter w = null;
+		try {
+			w = new PrintWriter(new FileWriter(filename_));
+			w.println(StringUtils.join(new String[] { "drugA", "drugB",
+					"sampled", "estimate", "low", "high" }, DELIMITER));
+			for (DrugPairEstimate pair : estimates_) {
+				w.println(pair.getDrugA() + DELIMITER + pair.getDrugB()
+						+ DELIMITER + pair.getSampledCount() + DELIMITER
+						+ Math.round(pair.getEstimate()) + DELIMITER
+						+ (long) Math.floor(pair.getLow()) + DELIMITER
+						+ (long) Math.ceil(pair.getHigh()));
+			}
+			if (w.checkError()) {
+				throw new IOException("Could not write drug pair estimates to file "
+						+ filename_ + ".");
+			}
+			LOGGER.info("Finished writing estimates of {} drug pairs to file {}.",
+					estimates_.size(), filename_);
+		} finally {
+			if (w != null) {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * Write the ranked partners of each drug to file, one partner per line
+	 * after a header line naming the columns.
+	 * 
+	 * @param rankedPartners_
+	 *            Each drug's partners, best first.
+	 * @param filename_
+	 *            The filename to write to.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void writeRankedPartners(
+			final SortedMap<String, List<DrugPartner>> rankedPartners_,
+			final String filename_) throws IOException {
+		LOGGER.info("Writing ranked partners of {} drugs to file {}.",
+				rankedPartners_.size(), filename_);
+		PrintWriter w = null;
+		try {
+			w = new PrintWriter(new FileWriter(filename_));
+			w.println(StringUtils.join(new String[] { "drug", "rank",
+					"partner", "count" }, DELIMITER));
+			for (Map.Entry<String, List<DrugPartner>> entry : rankedPartners_
+					.entrySet()) {
+				int rank = 1;
+				for (DrugPartner partner : entry.getValue()) {
+					w.println(entry.getKey() + DELIMITER + rank + DELIMITER
+							+ partner.getPartner() + DELIMITER
+							+ partner.getCount());
+					rank++;
+				}
+			}
+			if (w.checkError()) {
+				throw new IOException("Could not write ranked partners to file "
+						+ filename_ + ".");
+			}
+			LOGGER.info("Finished writing ranked partners of {} drugs to file {}.",
+					rankedPartners_.size(), filename_);
 		} finally {
 			if (w != null) {
 				w.close();
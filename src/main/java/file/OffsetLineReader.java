@@ -0,0 +1,119 @@
+package file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads lines from a file while keeping track of the byte offset just past the
+ * last line read. Unlike a {@link java.io.BufferedReader}, the offset is exact,
+ * so a reader can be reopened at a previously reported offset.
+ * 
+ * @author Monica
+ */
+public class OffsetLineReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream _in;
+	private final Charset _charset;
+	private final byte[] _buffer = new byte[BUFFER_SIZE];
+	private final ByteArrayOutputStream _lineBytes = new ByteArrayOutputStream();
+	private int _position;
+	private int _limit;
+	private long _offset;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param filename_
+	 *            The name of the file to read.
+	 * @param startOffset_
+	 *            The byte offset to start reading from. This should be the
+	 *            start of a line.
+	 * @throws IOException
+	 *             If the file could not be opened or positioned.
+	 */
+	public OffsetLineReader(final String filename_, final long startOffset_)
+			throws IOException {
+		FileInputStream fileIn = new FileInputStream(filename_);
+		try {
+			fileIn.getChannel().position(startOffset_);
+		} catch (IOException e) {
+			fileIn.close();
+			throw e;
+		}
+		_in = fileIn;
+		_charset = Charset.defaultCharset();
+		_offset = startOffset_;
+	}
+
+	/**
+	 * Read the next line, without its line terminator.
+	 * 
+	 * @return The line, or null at the end of the file.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	public String readLine() throws IOException {
+		// Lines that span two chunks of the buffer are collected here.
+		_lineBytes.reset();
+		boolean readAny = false;
+		while (true) {
+			if (_position == _limit) {
+				_limit = _in.read(_buffer);
+				_position = 0;
+				if (_limit <= 0) {
+					_limit = 0;
+					break;
+				}
+			}
+			readAny = true;
+			int start = _position;
+			while (_position < _limit && _buffer[_position] != '\n') {
+				_position++;
+			}
+			int length = _position - start;
+			if (_position < _limit) {
+				// Step over the terminator.
+				_position++;
+				_offset += length + 1;
+				if (_lineBytes.size() == 0) {
+					return toLine(_buffer, start, length);
+				}
+				_lineBytes.write(_buffer, start, length);
+				break;
+			}
+			_offset += length;
+			_lineBytes.write(_buffer, start, length);
+		}
+		if (!readAny) {
+			return null;
+		}
+		return toLine(_lineBytes.toByteArray(), 0, _lineBytes.size());
+	}
+
+	private String toLine(final byte[] bytes_, final int start_,
+			final int length_) {
+		int length = length_;
+		if (length > 0 && bytes_[start_ + length - 1] == '\r') {
+			length--;
+		}
+		return new String(bytes_, start_, length, _charset);
+	}
+
+	/**
+	 * @return The byte offset just past the last line read.
+	 */
+	public long getOffset() {
+		return _offset;
+	}
+
+	@Override
+	public void close() throws IOException {
+		_in.close();
+	}
+}
@@ -0,0 +1,191 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import api.SingleDrugAdministration;
+import calc.DrugPairAccumulator;
+
+import com.google.common.base.Preconditions;
+
+import file.DrugAdministrationListener;
+import file.DrugFileParser;
+import file.DrugPairCheckpoint;
+import file.DrugPairCheckpointer;
+
+/**
+ * Runs a drug pair calculation over an input file while periodically writing
+ * checkpoints, so that a run which dies part way through can be resumed from
+ * the last checkpoint instead of from the start of the file. The time spent
+ * checkpointing is tracked and reported against the overall throughput.
+ *
+ * @author Monica
+ */
+public class CheckpointedDrugPairRun implements DrugAdministrationListener {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(CheckpointedDrugPairRun.class);
+
+	private final String _inputFilename;
+	private final DrugPairCheckpointer _checkpointer;
+	private final long _checkpointInterval;
+	private final DrugFileParser _drugFileParser = new DrugFileParser();
+
+	private DrugPairAccumulator _accumulator;
+	private long _inputSize;
+	private long _inputModified;
+	private long _rowsSinceCheckpoint;
+	private long _checkpointCount;
+	private long _checkpointNanos;
+	private long _checkpointBytes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param checkpointer_
+	 *            Writes and reads checkpoints for this run.
+	 * @param checkpointInterval_
+	 *            The number of input rows between checkpoints. Must be
+	 *            positive.
+	 */
+	public CheckpointedDrugPairRun(final String inputFilename_,
+			final DrugPairCheckpointer checkpointer_,
+			final long checkpointInterval_) {
+		Preconditions.checkArgument(checkpointInterval_ > 0,
+				"Checkpoint interval must be positive but was %s.",
+				checkpointInterval_);
+		_inputFilename = inputFilename_;
+		_checkpointer = checkpointer_;
+		_checkpointInterval = checkpointInterval_;
+	}
+
+	/**
+	 * Calculate all drug pairs administered together with a given minimum
+	 * occurrence, checkpointing along the way.
+	 *
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param resume_
+	 *            Whether to continue from the last checkpoint, if there is
+	 *            one, rather than starting from the beginning of the file.
+	 *            The checkpoint must have been written for the same input
+	 *            file, unchanged since.
+	 * @return A set of all drug pairs administered together with a given
+	 *         minimum occurrence. The last checkpoint is kept, so that the
+	 *         caller can delete it with
+	 *         {@link DrugPairCheckpointer#deleteCheckpoint()} once the drug
+	 *         pairs are safely written.
+	 * @throws IOException
+	 *             If the input could not be read or a checkpoint could not be
+	 *             read or written. Any checkpoint already written is kept so
+	 *             the run can be resumed.
+	 */
+	public Set<DrugPair> run(final int minOccurrence_, final boolean resume_)
+			throws IOException {
+		long startOffset = 0;
+		_accumulator = new DrugPairAccumulator();
+		File inputFile = new File(_inputFilename);
+		_inputSize = inputFile.length();
+		_inputModified = inputFile.lastModified();
+		if (resume_) {
+			DrugPairCheckpoint checkpoint = _checkpointer.readCheckpoint();
+			if (checkpoint != null) {
+				if (!sameFile(checkpoint.getInputFilename(), _inputFilename)) {
+					throw new IOException("Checkpoint is for input file "
+							+ checkpoint.getInputFilename() + ", not "
+							+ _inputFilename + ".");
+				}
+				// The offset only means anything in the same version of the
+				// file.
+				if (checkpoint.getInputSize() != _inputSize
+						|| checkpoint.getInputModified() != _inputModified) {
+					throw new IOException("Input file " + _inputFilename
+							+ " has changed since the checkpoint was written ("
+							+ checkpoint.getInputSize() + " bytes modified at "
+							+ checkpoint.getInputModified() + ", now "
+							+ _inputSize + " bytes modified at "
+							+ _inputModified + "); could not resume.");
+				}
+				startOffset = checkpoint.getInputOffset();
+				_accumulator = checkpoint.getAccumulator();
+				LOGGER.info(
+						"Resuming from byte offset {} after {} drug administrations.",
+						startOffset, _accumulator.getDrugAdministrationCount());
+			}
+		}
+
+		long startNanos = System.nanoTime();
+		long rows = _drugFileParser.parseFile(_inputFilename, startOffset,
+				this);
+		long elapsedNanos = System.nanoTime() - startNanos;
+		reportCheckpointCost(rows, elapsedNanos);
+
+		return _accumulator.getDrugPairsWithMinOccurrence(minOccurrence_);
+	}
+
+	@Override
+	public void drugAdministrationParsed(
+			final SingleDrugAdministration drugAdministration_,
+			final long endOffset_) throws IOException {
+		_accumulator.add(drugAdministration_);
+		_rowsSinceCheckpoint++;
+		if (_rowsSinceCheckpoint >= _checkpointInterval) {
+			long startNanos = System.nanoTime();
+			_checkpointBytes += _checkpointer
+					.writeCheckpoint(new DrugPairCheckpoint(new File(
+							_inputFilename).getAbsolutePath(), _inputSize,
+							_inputModified, endOffset_, _accumulator));
+			_checkpointNanos += System.nanoTime() - startNanos;
+			_checkpointCount++;
+			_rowsSinceCheckpoint = 0;
+		}
+	}
+
+	/**
+	 * @return The number of checkpoints written by the last run.
+	 */
+	public long getCheckpointCount() {
+		return _checkpointCount;
+	}
+
+	/**
+	 * @return The total time in nanoseconds spent writing checkpoints during
+	 *         the last run.
+	 */
+	public long getCheckpointNanos() {
+		return _checkpointNanos;
+	}
+
+	private void reportCheckpointCost(final long rows_, final long elapsedNanos_) {
+		double elapsedSeconds = elapsedNanos_ / 1e9;
+		double checkpointSeconds = _checkpointNanos / 1e9;
+		double rowsPerSecond = elapsedSeconds > 0 ? rows_ / elapsedSeconds : 0;
+		double rowsPerSecondWithout = elapsedSeconds > checkpointSeconds ? rows_
+				/ (elapsedSeconds - checkpointSeconds)
+				: 0;
+		double overheadPercent = elapsedSeconds > 0 ? 100 * checkpointSeconds
+				/ elapsedSeconds : 0;
+		String report = String.format(
+				"Processed %d rows in %.2f s (%.0f rows/s). Wrote %d checkpoints "
+						+ "(%d bytes) in %.2f s, %.1f%% of elapsed time; "
+						+ "throughput without checkpointing would be %.0f rows/s.",
+				rows_, elapsedSeconds, rowsPerSecond, _checkpointCount,
+				_checkpointBytes, checkpointSeconds, overheadPercent,
+				rowsPerSecondWithout);
+		LOGGER.info(report);
+	}
+
+	private static boolean sameFile(final String filenameA_,
+			final String filenameB_) {
+		return new File(filenameA_).getAbsoluteFile().equals(
+				new File(filenameB_).getAbsoluteFile());
+	}
+}
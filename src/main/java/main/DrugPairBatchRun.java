@@ -0,0 +1,376 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import calc.DrugPairCounts;
+import calc.ExecutionPlan;
+import calc.ExecutionPlanner;
+import com.google.common.base.Preconditions;
+import file.CardinalityEstimator;
+import file.DrugPairFileWriter;
+
+/**
+ * Runs a batch of drug pair jobs in one JVM. Each distinct input is parsed,
+ * grouped and counted once, and every job on that input then only filters the
+ * shared counts by its own minimum occurrence and writes its output. Inputs are
+ * processed on a bounded pool of workers which share the memory budget.
+ *
+ * @author Monica
+ */
+public class DrugPairBatchRun {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairBatchRun.class);
+
+	private static final String COMMENT = "#";
+	private static final String WHITESPACE = "\\s+";
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final CardinalityEstimator _cardinalityEstimator = new CardinalityEstimator();
+	private final ExecutionPlanner _executionPlanner = new ExecutionPlanner();
+	private final DrugPairFileWriter _drugPairFileWriter = new DrugPairFileWriter();
+
+	private final List<DrugPairJob> _jobs;
+	private final int _threads;
+	private final long _memoryBudgetBytes;
+	private final long _sampleRows;
+
+	/**
+	 * Constructor
+	 *
+	 * @param jobs_
+	 *            The jobs to run.
+	 * @param threads_
+	 *            The maximum number of inputs to process at once. Must be
+	 *            positive.
+	 * @param memoryBudgetBytes_
+	 *            The memory all workers together are allowed to use.
+	 * @param sampleRows_
+	 *            The maximum number of rows to sample when planning each
+	 *            input.
+	 */
+	public DrugPairBatchRun(final List<DrugPairJob> jobs_, final int threads_,
+			final long memoryBudgetBytes_, final long sampleRows_) {
+		Preconditions.checkArgument(threads_ > 0,
+				"Threads must be positive but was %s.", threads_);
+		_jobs = jobs_;
+		_threads = threads_;
+		_memoryBudgetBytes = memoryBudgetBytes_;
+		_sampleRows = sampleRows_;
+	}
+
+	/**
+	 * Read a manifest of jobs. Each line holds the options of one job as they
+	 * would be given to {@link DrugPairCalculationMain}: --in, and optionally
+	 * --out and --min, separated by whitespace. Blank lines and lines starting
+	 * with # are ignored.
+	 *
+	 * @param manifestFilename_
+	 *            The name of the manifest file.
+	 * @param defaultMinOccurrence_
+	 *            The minimum occurrence of jobs without --min.
+	 * @return The jobs in manifest order.
+	 * @throws IOException
+	 *             If the manifest could not be read.
+	 * @throws ParseException
+	 *             If a line is not a valid job, or two jobs write the same
+	 *             output.
+	 */
+	public static List<DrugPairJob> readManifest(
+			final String manifestFilename_, final int defaultMinOccurrence_)
+			throws IOException, ParseException {
+		List<DrugPairJob> jobs = new ArrayList<DrugPairJob>();
+		Set<Path> outputFilenames = new HashSet<Path>();
+		BasicParser parser = new BasicParser();
+		BufferedReader r = new BufferedReader(new FileReader(manifestFilename_));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = r.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith(COMMENT)) {
+					continue;
+				}
+				CommandLine jobLine;
+				try {
+					jobLine = parser.parse(getJobOptions(),
+							line.split(WHITESPACE));
+				} catch (ParseException e) {
+					throw new ParseException(manifestFilename_ + " line "
+							+ lineNumber + ": " + e.getMessage());
+				}
+				if (!jobLine.getArgList().isEmpty()) {
+					throw new ParseException(manifestFilename_ + " line "
+							+ lineNumber + ": unexpected arguments "
+							+ jobLine.getArgList());
+				}
+				int minOccurrence = defaultMinOccurrence_;
+				if (jobLine.hasOption("min")) {
+					try {
+						minOccurrence = Integer.parseInt(jobLine
+								.getOptionValue("min"));
+					} catch (NumberFormatException e) {
+						throw new ParseException(manifestFilename_ + " line "
+								+ lineNumber + ": --min is not a number");
+					}
+				}
+				String inputFilename = jobLine.getOptionValue("in");
+				String outputFilename;
+				if (jobLine.hasOption("out")) {
+					outputFilename = jobLine.getOptionValue("out");
+				} else {
+					outputFilename = DrugPairCalculationMain.createOutputFilename(
+							inputFilename, minOccurrence);
+				}
+				if (!outputFilenames.add(normalize(outputFilename))) {
+					throw new ParseException(manifestFilename_ + " line "
+							+ lineNumber + ": output " + outputFilename
+							+ " is already written by another job");
+				}
+				jobs.add(new DrugPairJob(lineNumber, inputFilename,
+						outputFilename, minOccurrence));
+			}
+		} finally {
+			r.close();
+		}
+		LOGGER.info("Read {} jobs from manifest {}.", jobs.size(),
+				manifestFilename_);
+		return jobs;
+	}
+
+	/**
+	 * Run every job and print a summary of the time each took.
+	 *
+	 * @return Whether every job succeeded. A job that fails does not stop the
+	 *         jobs on other inputs.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the workers.
+	 */
+	public boolean run() throws InterruptedException {
+		long startNanos = System.nanoTime();
+		Map<Path, List<DrugPairJob>> jobsByInput = groupJobsByInput(_jobs);
+		int threads = Math.max(1, Math.min(_threads, jobsByInput.size()));
+		// Every worker may hold one input's counts at once.
+		final long memoryBudgetPerWorker = _memoryBudgetBytes / threads;
+		LOGGER.info(
+				"Running {} jobs over {} distinct inputs on {} workers with {} bytes each.",
+				_jobs.size(), jobsByInput.size(), threads,
+				memoryBudgetPerWorker);
+
+		List<JobTiming> timings = new ArrayList<JobTiming>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<JobTiming>>> futures = new ArrayList<Future<List<JobTiming>>>();
+			for (final List<DrugPairJob> inputJobs : jobsByInput.values()) {
+				futures.add(executor.submit(new Callable<List<JobTiming>>() {
+					@Override
+					public List<JobTiming> call() {
+						return runInput(inputJobs.get(0).getInputFilename(),
+								inputJobs, memoryBudgetPerWorker);
+					}
+				}));
+			}
+			int i = 0;
+			for (List<DrugPairJob> inputJobs : jobsByInput.values()) {
+				try {
+					timings.addAll(futures.get(i).get());
+				} catch (ExecutionException e) {
+					LOGGER.error("Worker failed on {}.", inputJobs.get(0)
+							.getInputFilename(), e.getCause());
+					for (DrugPairJob job : inputJobs) {
+						timings.add(new JobTiming(job, 0, 0, 0, 0, e.getCause()
+								.toString()));
+					}
+				}
+				i++;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Collections.sort(timings, new Comparator<JobTiming>() {
+			@Override
+			public int compare(final JobTiming a_, final JobTiming b_) {
+				return Integer.compare(a_._job.getLineNumber(),
+						b_._job.getLineNumber());
+			}
+		});
+		String summary = summarize(timings, jobsByInput.size(), threads,
+				System.nanoTime() - startNanos);
+		LOGGER.info(summary);
+		for (JobTiming timing : timings) {
+			if (timing._error != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Group jobs by the file they read, in manifest order. Different spellings
+	 * of the same path, such as a relative and an absolute one, are one input.
+	 *
+	 * @param jobs_
+	 *            The jobs.
+	 * @return The jobs of each input, keyed by its normalized absolute path.
+	 */
+	static Map<Path, List<DrugPairJob>> groupJobsByInput(
+			final List<DrugPairJob> jobs_) {
+		Map<Path, List<DrugPairJob>> jobsByInput = new LinkedHashMap<Path, List<DrugPairJob>>();
+		for (DrugPairJob job : jobs_) {
+			Path input = normalize(job.getInputFilename());
+			List<DrugPairJob> inputJobs = jobsByInput.get(input);
+			if (inputJobs == null) {
+				inputJobs = new ArrayList<DrugPairJob>();
+				jobsByInput.put(input, inputJobs);
+			}
+			inputJobs.add(job);
+		}
+		return jobsByInput;
+	}
+
+	private static Path normalize(final String filename_) {
+		return Paths.get(filename_).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Count the drug pairs of one input once and run each of its jobs on the
+	 * counts.
+	 */
+	private List<JobTiming> runInput(final String inputFilename_,
+			final List<DrugPairJob> jobs_, final long memoryBudgetBytes_) {
+		List<JobTiming> timings = new ArrayList<JobTiming>();
+		long startNanos = System.nanoTime();
+		DrugPairCounts drugPairCounts;
+		try {
+			ExecutionPlan plan = _executionPlanner.plan(
+					_cardinalityEstimator.estimate(inputFilename_, _sampleRows),
+					memoryBudgetBytes_, null, null);
+			drugPairCounts = new PlannedDrugPairRun(inputFilename_, plan)
+					.countDrugPairs();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("Could not count drug pairs in {}.", inputFilename_, e);
+			for (DrugPairJob job : jobs_) {
+				timings.add(new JobTiming(job, System.nanoTime() - startNanos,
+						jobs_.size(), 0, 0, e.toString()));
+			}
+			return timings;
+		}
+		long countNanos = System.nanoTime() - startNanos;
+
+		for (DrugPairJob job : jobs_) {
+			long jobStartNanos = System.nanoTime();
+			try {
+				Set<DrugPair> drugPairs = drugPairCounts
+						.getDrugPairsWithMinOccurrence(job.getMinOccurrence());
+				_drugPairFileWriter
+						.writePairs(drugPairs, job.getOutputFilename());
+				timings.add(new JobTiming(job, countNanos, jobs_.size(), System
+						.nanoTime() - jobStartNanos, drugPairs.size(), null));
+			} catch (IOException | RuntimeException e) {
+				LOGGER.error("Could not run job {}.", job, e);
+				timings.add(new JobTiming(job, countNanos, jobs_.size(), System
+						.nanoTime() - jobStartNanos, 0, e.toString()));
+			}
+		}
+		return timings;
+	}
+
+	private static String summarize(final List<JobTiming> timings_,
+			final int inputs_, final int threads_, final long elapsedNanos_) {
+		StringBuilder summary = new StringBuilder();
+		int failed = 0;
+		for (JobTiming timing : timings_) {
+			DrugPairJob job = timing._job;
+			summary.append(String.format(
+					"line %d: %s -> %s (min %d): ", job.getLineNumber(),
+					job.getInputFilename(), job.getOutputFilename(),
+					job.getMinOccurrence()));
+			if (timing._error == null) {
+				summary.append(String.format(
+						"%d pairs; counting %.2f s shared by %d jobs, "
+								+ "filtering and writing %.2f s%n",
+						timing._drugPairs, timing._countNanos
+								/ NANOS_PER_SECOND, timing._sharedBy,
+						timing._writeNanos / NANOS_PER_SECOND));
+			} else {
+				summary.append("FAILED: ").append(timing._error)
+						.append(String.format("%n"));
+				failed++;
+			}
+		}
+		summary.append(String.format(
+				"%d jobs (%d failed) over %d inputs on %d workers in %.2f s.%n",
+				timings_.size(), failed, inputs_, threads_, elapsedNanos_
+						/ NANOS_PER_SECOND));
+		return summary.toString();
+	}
+
+	private static Options getJobOptions() {
+		Options options = new Options();
+		Option inputFilename = OptionBuilder.withLongOpt("in")
+				.withArgName("in").hasArg().isRequired(true)
+				.withDescription("input filename").create();
+		options.addOption(inputFilename);
+		Option outputFilename = OptionBuilder.withLongOpt("out")
+				.withArgName("out").hasArg().isRequired(false)
+				.withDescription("output filename").create();
+		options.addOption(outputFilename);
+		Option minimumOccurrences = OptionBuilder.withLongOpt("min")
+				.withArgName("min").hasArg().isRequired(false)
+				.withDescription("minimum occurrences").create();
+		options.addOption(minimumOccurrences);
+		return options;
+	}
+
+	/**
+	 * The outcome of one job.
+	 */
+	private static class JobTiming {
+		private final DrugPairJob _job;
+		private final long _countNanos;
+		private final int _sharedBy;
+		private final long _writeNanos;
+		private final int _drugPairs;
+		private final String _error;
+
+		JobTiming(final DrugPairJob job_, final long countNanos_,
+				final int sharedBy_, final long writeNanos_,
+				final int drugPairs_, final String error_) {
+			_job = job_;
+			_countNanos = countNanos_;
+			_sharedBy = sharedBy_;
+			_writeNanos = writeNanos_;
+			_drugPairs = drugPairs_;
+			_error = error_;
+		}
+	}
+}
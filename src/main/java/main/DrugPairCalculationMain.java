@@ -1,5 +1,7 @@
 package main;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -10,14 +12,35 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.joda.time.YearMonth;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import api.DrugPair;
+import api.DrugPairEstimate;
+import api.DrugPairStatistics;
 import api.SingleDrugAdministration;
 
+import calc.CardinalityEstimate;
+import calc.DrugPairAccumulator;
 import calc.DrugPairCalculator;
+import calc.DrugPairCounts;
+import calc.DrugPairCube;
+import calc.ExecutionPlan;
+import calc.ExecutionPlan.CountingStructure;
+import calc.ExecutionPlanner;
+import calc.MonthlyDrugPairAccumulator;
+import calc.PatientDrugPairSketches;
+import calc.SampledDrugPairAccumulator;
+import calc.SortedPatientDrugPairCounter;
+import calc.TopDrugPartners;
+import file.AdministrationInstanceFilter;
+import file.CardinalityEstimator;
+import file.DrugAdministrationListener;
+import file.DrugFileFinder;
 import file.DrugFileParser;
+import file.DrugPairCheckpointer;
+import file.DrugPairCubeFile;
 import file.DrugPairFileWriter;
 
 /**
@@ -32,9 +55,17 @@ public class DrugPairCalculationMain {
 			.getLogger(DrugPairCalculationMain.class);
 
 	private static final int DEFAULT_MINIMUM_OCCURRENCES = 25;
+	private static final long DEFAULT_CHECKPOINT_INTERVAL = 1000000;
+	static final long DEFAULT_PLAN_SAMPLE_ROWS = 100000;
+	private static final long DEFAULT_SAMPLE_SEED = 1;
+	private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
 
 	private static final DrugFileParser _drugFileParser = new DrugFileParser();
 	private static final DrugPairFileWriter _drugPairFileWriter = new DrugPairFileWriter();
+	private static final CardinalityEstimator _cardinalityEstimator = new CardinalityEstimator();
+	private static final ExecutionPlanner _executionPlanner = new ExecutionPlanner();
+	private static final DrugPairCubeFile _drugPairCubeFile = new DrugPairCubeFile();
+	private static final DrugFileFinder _drugFileFinder = new DrugFileFinder();
 
 	/**
 	 * Get all drug pairs administered together with a given minimum occurrence
@@ -49,9 +80,12 @@ public class DrugPairCalculationMain {
 	 *            administered together in order to be returned.
 	 * @return A set of all drug pairs administered together with a given
 	 *         minimum occurrence.
+	 * @throws IOException
+	 *             If the drug pairs could not be written.
 	 */
 	public static void writeAllDrugPairs(final String inFilename_,
-			final String outFilename_, final int minOccurrence_) {
+			final String outFilename_, final int minOccurrence_)
+			throws IOException {
 		LOGGER.info(
 				"Going to get all drug pairs from {} with minimum occurrence {} and write to file {}.",
 				inFilename_, minOccurrence_, outFilename_);
@@ -62,6 +96,541 @@ public class DrugPairCalculationMain {
 		_drugPairFileWriter.writePairs(drugPairs, outFilename_);
 	}
 
+	/**
+	 * Plan a drug pair calculation over a file by estimating its cardinalities
+	 * from a sample and choosing a counting structure and spill strategy that
+	 * fit the memory budget.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param sampleRows_
+	 *            The maximum number of rows to sample.
+	 * @param memoryBudgetBytes_
+	 *            The memory the calculation is allowed to use.
+	 * @param countingStructureOverride_
+	 *            The counting structure to use, or null to let the planner
+	 *            choose.
+	 * @param partitionsOverride_
+	 *            The number of partitions to spill to, or null to let the
+	 *            planner choose.
+	 * @return The execution plan.
+	 * @throws IOException
+	 *             If the input could not be sampled.
+	 */
+	public static ExecutionPlan planDrugPairCalculation(
+			final String inFilename_, final long sampleRows_,
+			final long memoryBudgetBytes_,
+			final CountingStructure countingStructureOverride_,
+			final Integer partitionsOverride_) throws IOException {
+		return _executionPlanner.plan(
+				_cardinalityEstimator.estimate(inFilename_, sampleRows_),
+				memoryBudgetBytes_, countingStructureOverride_,
+				partitionsOverride_);
+	}
+
+	/**
+	 * Get all drug pairs administered together with a given minimum occurrence
+	 * from a file according to an execution plan.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pairs to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param plan_
+	 *            The execution plan to follow.
+	 * @throws IOException
+	 *             If the input could not be read or spilled.
+	 */
+	public static void writeAllDrugPairsWithPlan(final String inFilename_,
+			final String outFilename_, final int minOccurrence_,
+			final ExecutionPlan plan_) throws IOException {
+		LOGGER.info(
+				"Going to get all drug pairs from {} with minimum occurrence {} and write to file {} using {}.",
+				inFilename_, minOccurrence_, outFilename_, plan_);
+		Set<DrugPair> drugPairs = new PlannedDrugPairRun(inFilename_, plan_)
+				.run(minOccurrence_);
+		_drugPairFileWriter.writePairs(drugPairs, outFilename_);
+	}
+
+	/**
+	 * Get all drug pairs administered together to at least a given number of
+	 * distinct patients. If the input is sorted by patient the counts are exact
+	 * and only one patient is held in memory at a time. Otherwise the distinct
+	 * patients of each pair are estimated with HyperLogLog sketches sized from
+	 * a sample of the input to fit a memory budget, and the administration
+	 * instances are grouped within what remains of the overall budget, spilling
+	 * the input into partitions by administration instance if needed.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pairs to.
+	 * @param minPatients_
+	 *            The minimum number of distinct patients a pair of drugs must
+	 *            be administered together to in order to be returned.
+	 * @param sortedByPatient_
+	 *            Whether the input is sorted by patient identifier.
+	 * @param sampleRows_
+	 *            The maximum number of rows to sample when sizing the sketches
+	 *            of an input that is not sorted.
+	 * @param memoryBudgetBytes_
+	 *            The memory the calculation is allowed to use when the input
+	 *            is not sorted, including the sketches.
+	 * @param sketchMemoryBytes_
+	 *            The part of the memory budget the sketches may use when the
+	 *            input is not sorted.
+	 * @throws IOException
+	 *             If the input could not be read or spilled.
+	 */
+	public static void writeAllDrugPairsByPatient(final String inFilename_,
+			final String outFilename_, final int minPatients_,
+			final boolean sortedByPatient_, final long sampleRows_,
+			final long memoryBudgetBytes_, final long sketchMemoryBytes_)
+			throws IOException {
+		LOGGER.info(
+				"Going to get all drug pairs from {} given to at least {} distinct patients and write to file {}.",
+				inFilename_, minPatients_, outFilename_);
+		DrugPairCounts patientCounts;
+		String report;
+		if (sortedByPatient_) {
+			final SortedPatientDrugPairCounter counter = new SortedPatientDrugPairCounter();
+			_drugFileParser.parseFile(inFilename_, 0,
+					new DrugAdministrationListener() {
+						@Override
+						public void drugAdministrationParsed(
+								final SingleDrugAdministration drugAdministration_,
+								final long endOffset_) {
+							counter.add(drugAdministration_);
+						}
+					});
+			patientCounts = counter.finish();
+			report = String.format(
+					"Exact distinct patient counts for %d drug pairs; at most %d "
+							+ "drug pairs held for a single patient.",
+					patientCounts.size(), counter.getMaxPatientDrugPairs());
+		} else {
+			CardinalityEstimate estimate = _cardinalityEstimator.estimate(
+					inFilename_, sampleRows_);
+			final PatientDrugPairSketches sketches = new PatientDrugPairSketches(
+					estimate.getDrugPairs(), sketchMemoryBytes_);
+			long groupingBudgetBytes = memoryBudgetBytes_ - sketchMemoryBytes_;
+			int partitions = _executionPlanner.choosePartitions(estimate,
+					groupingBudgetBytes);
+			final long expectedInstancesPerPartition = estimate
+					.getAdministrationInstances() / partitions;
+			PlannedDrugPairRun.visitPartitions(inFilename_, partitions,
+					new PlannedDrugPairRun.PartitionVisitor() {
+						@Override
+						public void visit(final String filename_)
+								throws IOException {
+							sketches.addAll(PlannedDrugPairRun
+									.groupAdministrationInstances(filename_,
+											expectedInstancesPerPartition));
+						}
+					});
+			patientCounts = sketches.estimateCounts();
+			report = String.format(
+					"Approximate distinct patient counts for %d drug pairs using "
+							+ "HyperLogLog precision %d (standard error %.1f%%); "
+							+ "sketches use %.1f MB of a %.1f MB budget; "
+							+ "administration instances grouped in %d "
+							+ "partition(s) within the remaining %.1f MB.",
+					patientCounts.size(), sketches.getPrecision(),
+					100 * sketches.getStandardError(),
+					sketches.getMemoryBytes() / (double) BYTES_PER_MEGABYTE,
+					sketchMemoryBytes_ / (double) BYTES_PER_MEGABYTE,
+					partitions,
+					groupingBudgetBytes / (double) BYTES_PER_MEGABYTE);
+		}
+		LOGGER.info(report);
+		Set<DrugPair> drugPairs = patientCounts
+				.getDrugPairsWithMinOccurrence(minPatients_);
+		_drugPairFileWriter.writePairs(drugPairs, outFilename_);
+	}
+
+	/**
+	 * Get association statistics (support, confidence and lift, and optionally
+	 * chi-square and pointwise mutual information) for all drug pairs
+	 * administered together with a given minimum occurrence and lift, in a
+	 * single pass over the file.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pair statistics to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param minLift_
+	 *            The minimum lift a pair of drugs must have in order to be
+	 *            returned.
+	 * @param includeScores_
+	 *            Whether to also write chi-square and pointwise mutual
+	 *            information scores.
+	 * @throws IOException
+	 *             If the input could not be read.
+	 */
+	public static void writeAllDrugPairStatistics(final String inFilename_,
+			final String outFilename_, final int minOccurrence_,
+			final double minLift_, final boolean includeScores_)
+			throws IOException {
+		LOGGER.info(
+				"Going to get statistics of all drug pairs from {} with minimum occurrence {} and lift {} and write to file {}.",
+				inFilename_, minOccurrence_, minLift_, outFilename_);
+		final DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		_drugFileParser.parseFile(inFilename_, 0,
+				new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						accumulator.add(drugAdministration_);
+					}
+				});
+		List<DrugPairStatistics> statistics = accumulator
+				.getDrugPairStatistics(minOccurrence_, minLift_);
+		_drugPairFileWriter.writePairStatistics(statistics, includeScores_,
+				outFilename_);
+	}
+
+	/**
+	 * Accumulate every file named by a directory or glob. The files are parsed
+	 * in parallel and merged, counting drug pairs into a structure planned
+	 * from a sample of the first file.
+	 * 
+	 * @param input_
+	 *            A directory or glob naming files containing drug
+	 *            administration information.
+	 * @param threads_
+	 *            The maximum number of files to parse at once. Must be
+	 *            positive.
+	 * @param memoryBudgetBytes_
+	 *            The memory the partial counts of the files being parsed at
+	 *            once are planned to fit. It does not bound the merged
+	 *            accumulator, which holds every administration instance.
+	 * @param sampleRows_
+	 *            The maximum number of rows of the first file to sample when
+	 *            planning.
+	 * @param countingStructureOverride_
+	 *            The counting structure to use, or null to let the planner
+	 *            choose.
+	 * @return An accumulator holding all of the files.
+	 * @throws IOException
+	 *             If no file was found or a file could not be read.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the files to be parsed.
+	 */
+	public static DrugPairAccumulator accumulateDrugFiles(final String input_,
+			final int threads_, final long memoryBudgetBytes_,
+			final long sampleRows_,
+			final CountingStructure countingStructureOverride_)
+			throws IOException, InterruptedException {
+		List<String> inputFilenames = _drugFileFinder.find(input_);
+		// Every worker holds one file's partial counts at once.
+		ExecutionPlan plan = planDrugPairCalculation(inputFilenames.get(0),
+				sampleRows_, memoryBudgetBytes_ / threads_,
+				countingStructureOverride_, 1);
+		return new MultiFileDrugPairRun(inputFilenames, threads_, plan)
+				.accumulate();
+	}
+
+	/**
+	 * Write the drugs most often administered together with each drug, ranked
+	 * by how often they were, from drug pair counts.
+	 * 
+	 * @param drugPairCounts_
+	 *            The drug pair counts.
+	 * @param outFilename_
+	 *            Name of a file to write the ranked partners to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together for them to be partners.
+	 * @param partnersPerDrug_
+	 *            The number of partners to write per drug.
+	 * @throws IOException
+	 *             If the ranked partners could not be written.
+	 */
+	public static void writeTopDrugPartners(
+			final DrugPairCounts drugPairCounts_, final String outFilename_,
+			final int minOccurrence_, final int partnersPerDrug_)
+			throws IOException {
+		LOGGER.info(
+				"Going to write the top {} partners of each drug with minimum occurrence {} to file {}.",
+				partnersPerDrug_, minOccurrence_, outFilename_);
+		TopDrugPartners topDrugPartners = TopDrugPartners.of(drugPairCounts_,
+				partnersPerDrug_, minOccurrence_);
+		_drugPairFileWriter.writeRankedPartners(
+				topDrugPartners.getRankedPartners(), outFilename_);
+	}
+
+	/**
+	 * Get all drug pairs administered together with a given minimum occurrence,
+	 * or their association statistics, from every file named by a directory or
+	 * glob. The files are parsed in parallel and merged, counting drug pairs
+	 * into a structure planned from a sample of the first file.
+	 * 
+	 * @param input_
+	 *            A directory or glob naming files containing drug
+	 *            administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pairs or statistics to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param threads_
+	 *            The maximum number of files to parse at once. Must be
+	 *            positive.
+	 * @param memoryBudgetBytes_
+	 *            The memory the partial counts of the files being parsed at
+	 *            once are planned to fit. It does not bound the merged
+	 *            accumulator, which holds every administration instance.
+	 * @param sampleRows_
+	 *            The maximum number of rows of the first file to sample when
+	 *            planning.
+	 * @param countingStructureOverride_
+	 *            The counting structure to use, or null to let the planner
+	 *            choose.
+	 * @param minLift_
+	 *            The minimum lift of a pair of drugs in order to be returned,
+	 *            or null to write drug pairs rather than statistics.
+	 * @param includeScores_
+	 *            Whether to also write chi-square and pointwise mutual
+	 *            information scores with the statistics.
+	 * @throws IOException
+	 *             If no file was found or a file could not be read.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the files to be parsed.
+	 */
+	public static void writeAllDrugPairsFromFiles(final String input_,
+			final String outFilename_, final int minOccurrence_,
+			final int threads_, final long memoryBudgetBytes_,
+			final long sampleRows_,
+			final CountingStructure countingStructureOverride_,
+			final Double minLift_, final boolean includeScores_)
+			throws IOException, InterruptedException {
+		LOGGER.info(
+				"Going to get all drug pairs from the files of {} with minimum occurrence {} and write to file {}.",
+				input_, minOccurrence_, outFilename_);
+		DrugPairAccumulator accumulator = accumulateDrugFiles(input_,
+				threads_, memoryBudgetBytes_, sampleRows_,
+				countingStructureOverride_);
+		if (minLift_ == null) {
+			_drugPairFileWriter.writePairs(
+					accumulator.getDrugPairsWithMinOccurrence(minOccurrence_),
+					outFilename_);
+		} else {
+			_drugPairFileWriter.writePairStatistics(
+					accumulator.getDrugPairStatistics(minOccurrence_, minLift_),
+					includeScores_, outFilename_);
+		}
+	}
+
+	/**
+	 * Estimate how often drug pairs are administered together from a sample of
+	 * the administration instances in a file, writing each pair whose
+	 * estimate meets a given minimum occurrence with a confidence interval.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pair estimates to.
+	 * @param minOccurrence_
+	 *            The minimum estimated number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param accumulator_
+	 *            An empty accumulator that samples administration instances.
+	 * @throws IOException
+	 *             If the input could not be read.
+	 */
+	public static void writeDrugPairEstimates(final String inFilename_,
+			final String outFilename_, final int minOccurrence_,
+			final SampledDrugPairAccumulator accumulator_) throws IOException {
+		LOGGER.info(
+				"Going to estimate all drug pairs from a sample of {} with minimum occurrence {} and write to file {}.",
+				inFilename_, minOccurrence_, outFilename_);
+		// Rows of instances outside the sample are skipped unparsed.
+		_drugFileParser.parseFile(inFilename_, 0,
+				new AdministrationInstanceFilter() {
+					@Override
+					public boolean accept(final String patientIdentifier_,
+							final String administrationDate_) {
+						return accumulator_.mightSample(patientIdentifier_,
+								administrationDate_);
+					}
+				}, new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						accumulator_.add(drugAdministration_);
+					}
+				});
+		List<DrugPairEstimate> estimates = accumulator_
+				.getDrugPairEstimates(minOccurrence_);
+		String report = String.format(
+				"Sampled %d administration instances at rate %.4f of an estimated %d; "
+						+ "%d drug pairs have an estimated occurrence of at least %d.",
+				accumulator_.getSampledInstanceCount(),
+				accumulator_.getSampleRate(),
+				accumulator_.getEstimatedInstanceCount(), estimates.size(),
+				minOccurrence_);
+		LOGGER.info(report);
+		_drugPairFileWriter.writePairEstimates(estimates, outFilename_);
+	}
+
+	/**
+	 * Count the drug pairs in a file per month of administration and add them
+	 * to a cube file, creating it if needed. A month present in the file
+	 * replaces the same month already in the cube if the file covers every day
+	 * loaded for it so far, and is added to it if the file covers none of those
+	 * days.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param cubeFilename_
+	 *            Name of the cube file to create or update.
+	 * @throws IOException
+	 *             If the input or the cube could not be read or written.
+	 * @throws IllegalArgumentException
+	 *             If the file covers some but not all of the days already
+	 *             loaded for a month. The cube file is left unchanged.
+	 */
+	public static void updateDrugPairCube(final String inFilename_,
+			final String cubeFilename_) throws IOException {
+		LOGGER.info("Going to add monthly drug pair counts from {} to cube {}.",
+				inFilename_, cubeFilename_);
+		final MonthlyDrugPairAccumulator accumulator = new MonthlyDrugPairAccumulator();
+		_drugFileParser.parseFile(inFilename_, 0,
+				new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						accumulator.add(drugAdministration_);
+					}
+				});
+		DrugPairCube cube;
+		if (new File(cubeFilename_).isFile()) {
+			cube = _drugPairCubeFile.read(cubeFilename_, null, null);
+			cube.update(accumulator.toCube());
+		} else {
+			cube = accumulator.toCube();
+		}
+		_drugPairCubeFile.write(cube, cubeFilename_);
+	}
+
+	/**
+	 * Get all drug pairs administered together with a given minimum occurrence
+	 * within a range of months from a cube file, without reading the raw drug
+	 * administrations.
+	 * 
+	 * @param cubeFilename_
+	 *            Name of the cube file to query.
+	 * @param from_
+	 *            The first month of the range, or null for no lower bound.
+	 * @param to_
+	 *            The last month of the range (inclusive), or null for no upper
+	 *            bound.
+	 * @param outFilename_
+	 *            Name of a file to write drug pairs to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together within the range in order to be
+	 *            returned.
+	 * @throws IOException
+	 *             If the cube could not be read.
+	 */
+	public static void writeAllDrugPairsFromCube(final String cubeFilename_,
+			final YearMonth from_, final YearMonth to_,
+			final String outFilename_, final int minOccurrence_)
+			throws IOException {
+		LOGGER.info(
+				"Going to get all drug pairs from cube {} between {} and {} with minimum occurrence {} and write to file {}.",
+				cubeFilename_, from_, to_, minOccurrence_, outFilename_);
+		DrugPairCube cube = _drugPairCubeFile.read(cubeFilename_, from_, to_);
+		Set<DrugPair> drugPairs = cube.sumMonths(from_, to_)
+				.getDrugPairsWithMinOccurrence(minOccurrence_);
+		_drugPairFileWriter.writePairs(drugPairs, outFilename_);
+	}
+
+	/**
+	 * Get all drug pairs administered together with a given minimum occurrence
+	 * from a file, writing checkpoints to a directory as the file is read.
+	 * 
+	 * @param inFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outFilename_
+	 *            Name of a file to write drug pairs to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @param checkpointDirectory_
+	 *            Directory to write checkpoints to.
+	 * @param checkpointInterval_
+	 *            The number of input rows between checkpoints.
+	 * @param resume_
+	 *            Whether to continue from the last checkpoint in the
+	 *            directory.
+	 * @throws IOException
+	 *             If the input or a checkpoint could not be read or written.
+	 */
+	public static void writeAllDrugPairsWithCheckpoints(
+			final String inFilename_, final String outFilename_,
+			final int minOccurrence_, final String checkpointDirectory_,
+			final long checkpointInterval_, final boolean resume_)
+			throws IOException {
+		LOGGER.info(
+				"Going to get all drug pairs from {} with minimum occurrence {} and write to file {}, "
+						+ "checkpointing every {} rows to {}.", inFilename_,
+				minOccurrence_, outFilename_, checkpointInterval_,
+				checkpointDirectory_);
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(
+				checkpointDirectory_);
+		CheckpointedDrugPairRun run = new CheckpointedDrugPairRun(inFilename_,
+				checkpointer, checkpointInterval_);
+		Set<DrugPair> drugPairs = run.run(minOccurrence_, resume_);
+		_drugPairFileWriter.writePairs(drugPairs, outFilename_);
+		// Only now is the calculation safe from having to be redone.
+		checkpointer.deleteCheckpoint();
+	}
+
+	/**
+	 * Run every job in a manifest in this JVM, counting the drug pairs of each
+	 * distinct input once and sharing the counts between the jobs on that
+	 * input. A summary of the time each job took is printed at the end.
+	 * 
+	 * @param manifestFilename_
+	 *            Name of a manifest file with the options of one job per line.
+	 * @param threads_
+	 *            The maximum number of inputs to process at once.
+	 * @param memoryBudgetBytes_
+	 *            The memory all jobs together are allowed to use.
+	 * @param sampleRows_
+	 *            The maximum number of rows to sample when planning each
+	 *            input.
+	 * @return Whether every job succeeded.
+	 * @throws IOException
+	 *             If the manifest could not be read.
+	 * @throws ParseException
+	 *             If a line of the manifest is not a valid job.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the jobs.
+	 */
+	public static boolean runManifest(final String manifestFilename_,
+			final int threads_, final long memoryBudgetBytes_,
+			final long sampleRows_) throws IOException, ParseException,
+			InterruptedException {
+		LOGGER.info("Going to run the jobs in manifest {} on up to {} workers.",
+				manifestFilename_, threads_);
+		List<DrugPairJob> jobs = DrugPairBatchRun.readManifest(
+				manifestFilename_, DEFAULT_MINIMUM_OCCURRENCES);
+		return new DrugPairBatchRun(jobs, threads_, memoryBudgetBytes_,
+				sampleRows_).run();
+	}
+
 	/**
 	 * Create an output filename given an input filename and a minimum number of
 	 * occurrences.
@@ -72,16 +641,18 @@ public class DrugPairCalculationMain {
 	 *            The minimum number of occurrences of a drug pair.
 	 * @return The output filename.
 	 */
-	private static String createOutputFilename(final String inputFilename_,
+	static String createOutputFilename(final String inputFilename_,
 			final Integer minOccurrences_) {
-		return inputFilename_ + ".min" + minOccurrences_ + ".pairs";
+		// A directory given with a trailing separator names its own output.
+		String inputFilename = inputFilename_.replaceAll("[/\\\\]+$", "");
+		return inputFilename + ".min" + minOccurrences_ + ".pairs";
 	}
 
 	private static Options getOptions() {
 		Options options = new Options();
 		// Input file option
 		Option inputFilename = OptionBuilder.withLongOpt("in")
-				.withArgName("in").hasArg().isRequired(true)
+				.withArgName("in").hasArg().isRequired(false)
 				.withDescription("input filename").create();
 		options.addOption(inputFilename);
 		Option outputFilename = OptionBuilder.withLongOpt("out")
@@ -92,6 +663,108 @@ public class DrugPairCalculationMain {
 				.withArgName("min").hasArg().isRequired(false)
 				.withDescription("minimum occurrences").create();
 		options.addOption(minimumOccurrences);
+		Option checkpointDirectory = OptionBuilder.withLongOpt("checkpoint-dir")
+				.withArgName("dir").hasArg().isRequired(false)
+				.withDescription("directory to write checkpoints to").create();
+		options.addOption(checkpointDirectory);
+		Option checkpointInterval = OptionBuilder
+				.withLongOpt("checkpoint-interval").withArgName("rows")
+				.hasArg().isRequired(false)
+				.withDescription("input rows between checkpoints").create();
+		options.addOption(checkpointInterval);
+		Option resume = OptionBuilder.withLongOpt("resume").isRequired(false)
+				.withDescription("resume from the last checkpoint").create();
+		options.addOption(resume);
+		Option explain = OptionBuilder.withLongOpt("explain")
+				.isRequired(false)
+				.withDescription("print the execution plan and exit").create();
+		options.addOption(explain);
+		Option strategy = OptionBuilder.withLongOpt("strategy")
+				.withArgName("hash|matrix").hasArg().isRequired(false)
+				.withDescription("override the drug pair counting structure")
+				.create();
+		options.addOption(strategy);
+		Option partitions = OptionBuilder.withLongOpt("partitions")
+				.withArgName("n").hasArg().isRequired(false)
+				.withDescription("override the number of spill partitions")
+				.create();
+		options.addOption(partitions);
+		Option memoryBudget = OptionBuilder.withLongOpt("memory-budget")
+				.withArgName("MB").hasArg().isRequired(false)
+				.withDescription("memory the calculation may use").create();
+		options.addOption(memoryBudget);
+		Option planSampleRows = OptionBuilder.withLongOpt("plan-sample-rows")
+				.withArgName("rows").hasArg().isRequired(false)
+				.withDescription("rows to sample when planning").create();
+		options.addOption(planSampleRows);
+		Option cube = OptionBuilder.withLongOpt("cube").withArgName("cube")
+				.hasArg().isRequired(false)
+				.withDescription("monthly drug pair cube to update or query")
+				.create();
+		options.addOption(cube);
+		Option from = OptionBuilder.withLongOpt("from").withArgName("yyyy-MM")
+				.hasArg().isRequired(false)
+				.withDescription("first month of a cube query").create();
+		options.addOption(from);
+		Option to = OptionBuilder.withLongOpt("to").withArgName("yyyy-MM")
+				.hasArg().isRequired(false)
+				.withDescription("last month of a cube query").create();
+		options.addOption(to);
+		Option countBy = OptionBuilder.withLongOpt("count-by")
+				.withArgName("instance|patient").hasArg().isRequired(false)
+				.withDescription("count administration instances or distinct patients")
+				.create();
+		options.addOption(countBy);
+		Option sorted = OptionBuilder.withLongOpt("sorted").isRequired(false)
+				.withDescription("input is sorted by patient identifier")
+				.create();
+		options.addOption(sorted);
+		Option sketchMemory = OptionBuilder.withLongOpt("sketch-memory")
+				.withArgName("MB").hasArg().isRequired(false)
+				.withDescription("memory for distinct patient sketches")
+				.create();
+		options.addOption(sketchMemory);
+		Option stats = OptionBuilder.withLongOpt("stats").isRequired(false)
+				.withDescription("write support, confidence and lift per pair")
+				.create();
+		options.addOption(stats);
+		Option minLift = OptionBuilder.withLongOpt("min-lift")
+				.withArgName("lift").hasArg().isRequired(false)
+				.withDescription("minimum lift of a pair").create();
+		options.addOption(minLift);
+		Option scores = OptionBuilder.withLongOpt("scores").isRequired(false)
+				.withDescription("also write chi-square and PMI per pair")
+				.create();
+		options.addOption(scores);
+		Option manifest = OptionBuilder.withLongOpt("manifest")
+				.withArgName("manifest").hasArg().isRequired(false)
+				.withDescription("file of jobs to run, one per line").create();
+		options.addOption(manifest);
+		Option sampleRate = OptionBuilder.withLongOpt("sample-rate")
+				.withArgName("rate").hasArg().isRequired(false)
+				.withDescription("fraction of administration instances to sample")
+				.create();
+		options.addOption(sampleRate);
+		Option sampleSize = OptionBuilder.withLongOpt("sample-size")
+				.withArgName("instances").hasArg().isRequired(false)
+				.withDescription("number of administration instances to sample")
+				.create();
+		options.addOption(sampleSize);
+		Option seed = OptionBuilder.withLongOpt("seed").withArgName("seed")
+				.hasArg().isRequired(false)
+				.withDescription("seed of the administration instance sample")
+				.create();
+		options.addOption(seed);
+		Option topKPerDrug = OptionBuilder.withLongOpt("top-k-per-drug")
+				.withArgName("k").hasArg().isRequired(false)
+				.withDescription("write the k most frequent partners of each drug")
+				.create();
+		options.addOption(topKPerDrug);
+		Option threads = OptionBuilder.withLongOpt("threads").withArgName("n")
+				.hasArg().isRequired(false)
+				.withDescription("inputs or files to process at once")
+				.create();
+		options.addOption(threads);
 		return options;
 	}
 
@@ -99,20 +772,94 @@ public class DrugPairCalculationMain {
 	 * Runs a drug pair calculation.
 	 * 
 	 * @param args_
-	 *            Required: --in <input filename>
+	 *            Required: --in <input filename, directory or glob>, unless
+	 *            querying a cube or running a manifest
 	 *            Optional: --min <minimum occurrence>
 	 *            Optional: --out <output filename>
+	 *            Optional: --checkpoint-dir <checkpoint directory>
+	 *            Optional: --checkpoint-interval <rows between checkpoints>
+	 *            Optional: --resume
+	 *            Optional: --explain
+	 *            Optional: --strategy <hash|matrix>
+	 *            Optional: --partitions <number of spill partitions>
+	 *            Optional: --memory-budget <megabytes>
+	 *            Optional: --plan-sample-rows <rows to sample when planning>
+	 *            Optional: --cube <cube filename>; with --in, adds the input
+	 *            to the cube, otherwise queries the cube
+	 *            Optional: --from <first month yyyy-MM of a cube query>
+	 *            Optional: --to <last month yyyy-MM of a cube query>
+	 *            Optional: --count-by <instance|patient>
+	 *            Optional: --sorted (input is sorted by patient)
+	 *            Optional: --sketch-memory <megabytes for patient sketches>
+	 *            Optional: --stats
+	 *            Optional: --min-lift <minimum lift, with --stats>
+	 *            Optional: --scores (chi-square and PMI, with --stats)
+	 *            Optional: --top-k-per-drug <partners to write per drug>
+	 *            Optional: --sample-rate <fraction of instances to sample>
+	 *            Optional: --sample-size <number of instances to sample>
+	 *            Optional: --seed <seed of the sample>
+	 *            Optional: --manifest <manifest filename>; runs the jobs in the
+	 *            manifest instead of a single calculation
+	 *            Optional: --threads <inputs to process at once, with
+	 *            --manifest, or files to parse at once, with a directory or
+	 *            glob --in>
 	 */
 	public static void main(final String[] args_) {
 		CommandLineParser parser = new BasicParser();
 		Options options = getOptions();
 		try {
 
-			// Input file is NOT optional
 			CommandLine line = parser.parse(options, args_);
+
+			// Plan settings apply to single runs and to each manifest input
+			long sampleRows = DEFAULT_PLAN_SAMPLE_ROWS;
+			if (line.hasOption("plan-sample-rows")) {
+				sampleRows = Long.parseLong(line
+						.getOptionValue("plan-sample-rows"));
+			}
+			long memoryBudgetBytes = ExecutionPlanner
+					.getDefaultMemoryBudgetBytes();
+			if (line.hasOption("memory-budget")) {
+				memoryBudgetBytes = Long.parseLong(line
+						.getOptionValue("memory-budget"))
+						* BYTES_PER_MEGABYTE;
+			}
+
+			// Threads apply to manifests and to multiple input files
+			int threads = Runtime.getRuntime().availableProcessors();
+			if (line.hasOption("threads")) {
+				threads = Integer.parseInt(line.getOptionValue("threads"));
+				if (threads <= 0) {
+					LOGGER.error(
+							"Could not calculate drug pairs: --threads must be positive but was {}.",
+							threads);
+					System.exit(1);
+				}
+			}
+
+			String countBy = line.getOptionValue("count-by", "instance");
+			if (!"instance".equalsIgnoreCase(countBy)
+					&& !"patient".equalsIgnoreCase(countBy)) {
+				LOGGER.error("Could not calculate drug pairs: unknown --count-by {}, expected instance or patient.",
+						countBy);
+				System.exit(1);
+			}
+
+			// Running a manifest of jobs is optional
+			if (line.hasOption("manifest")) {
+				if (!runManifest(line.getOptionValue("manifest"), threads,
+						memoryBudgetBytes, sampleRows)) {
+					System.exit(1);
+				}
+				return;
+			}
+
+			// Input file is NOT optional, unless querying a cube
 			String inputFilename = null;
 			if (line.hasOption("in")) {
 				inputFilename = line.getOptionValue("in");
+			} else if (line.hasOption("cube")) {
+				inputFilename = line.getOptionValue("cube");
 			} else {
 				LOGGER.error("Could not calculate drug pairs due to missing input filename.");
 				System.exit(1);
@@ -135,11 +882,272 @@ public class DrugPairCalculationMain {
 						minOccurrences);
 			}
 
-			writeAllDrugPairs(inputFilename, outputFilename, minOccurrences);
+			// Ranked partners per drug are optional, from instance pair counts
+			Integer partnersPerDrug = null;
+			if (line.hasOption("top-k-per-drug")) {
+				partnersPerDrug = Integer.valueOf(line
+						.getOptionValue("top-k-per-drug"));
+				for (String otherOutputOption : new String[] { "cube",
+						"count-by", "stats", "checkpoint-dir", "sample-rate",
+						"sample-size" }) {
+					if (line.hasOption(otherOutputOption)) {
+						LOGGER.error(
+								"Could not calculate drug pairs: --top-k-per-drug cannot be combined with --{}.",
+								otherOutputOption);
+						System.exit(1);
+					}
+				}
+			}
+
+			// Some options only refine another
+			for (String[] refinement : new String[][] {
+					{ "min-lift", "stats" }, { "scores", "stats" },
+					{ "checkpoint-interval", "checkpoint-dir" },
+					{ "resume", "checkpoint-dir" } }) {
+				if (line.hasOption(refinement[0])
+						&& !line.hasOption(refinement[1])) {
+					LOGGER.error(
+							"Could not calculate drug pairs: --{} only applies with --{}.",
+							refinement[0], refinement[1]);
+					System.exit(1);
+				}
+			}
+			for (String patientOption : new String[] { "sorted",
+					"sketch-memory" }) {
+				if (line.hasOption(patientOption)
+						&& !"patient".equalsIgnoreCase(countBy)) {
+					LOGGER.error(
+							"Could not calculate drug pairs: --{} only applies with --count-by patient.",
+							patientOption);
+					System.exit(1);
+				}
+			}
+			if (line.hasOption("seed") && !line.hasOption("sample-rate")
+					&& !line.hasOption("sample-size")) {
+				LOGGER.error("Could not calculate drug pairs: --seed only applies with --sample-rate or --sample-size.");
+				System.exit(1);
+			}
+
+			// Many input files, from a directory or glob, are optional
+			if (line.hasOption("in") && DrugFileFinder.isMultiFile(inputFilename)) {
+				for (String singleFileOption : new String[] { "cube",
+						"count-by", "checkpoint-dir", "resume", "sample-rate",
+						"sample-size", "explain", "partitions" }) {
+					if (line.hasOption(singleFileOption)) {
+						LOGGER.error(
+								"Could not calculate drug pairs: --{} needs a single input file.",
+								singleFileOption);
+						System.exit(1);
+					}
+				}
+				if (!line.hasOption("out") && !new File(inputFilename).isDirectory()) {
+					LOGGER.error("Could not calculate drug pairs: --out is needed with a glob --in.");
+					System.exit(1);
+				}
+				Double minLift = null;
+				if (line.hasOption("stats")) {
+					minLift = 0.0;
+					if (line.hasOption("min-lift")) {
+						minLift = Double.parseDouble(line.getOptionValue("min-lift"));
+					}
+				}
+				CountingStructure countingStructure = null;
+				if (line.hasOption("strategy")) {
+					countingStructure = CountingStructure.valueOf(line
+							.getOptionValue("strategy").toUpperCase());
+				}
+				if (partnersPerDrug != null) {
+					writeTopDrugPartners(
+							accumulateDrugFiles(inputFilename, threads,
+									memoryBudgetBytes, sampleRows,
+									countingStructure).getDrugPairCounts(),
+							outputFilename, minOccurrences, partnersPerDrug);
+					return;
+				}
+				writeAllDrugPairsFromFiles(inputFilename, outputFilename,
+						minOccurrences, threads, memoryBudgetBytes, sampleRows,
+						countingStructure, minLift, line.hasOption("scores"));
+				return;
+			}
+
+			// Each of these replaces the planned calculation of a single input
+			// file, so at most one of them applies, and the plan options do not
+			String countingOption = null;
+			for (String option : new String[] { "cube", "count-by", "stats",
+					"sample-rate", "sample-size", "checkpoint-dir" }) {
+				if (!line.hasOption(option)
+						|| ("count-by".equals(option) && !"patient"
+								.equalsIgnoreCase(countBy))) {
+					continue;
+				}
+				// Both sampling options are reported when sampling below
+				if (countingOption != null
+						&& !(countingOption.startsWith("sample-") && option
+								.startsWith("sample-"))) {
+					LOGGER.error(
+							"Could not calculate drug pairs: --{} cannot be combined with --{}.",
+							countingOption, option);
+					System.exit(1);
+				}
+				countingOption = option;
+			}
+			if (countingOption != null) {
+				for (String planOption : new String[] { "explain", "strategy",
+						"partitions" }) {
+					if (line.hasOption(planOption)) {
+						LOGGER.error(
+								"Could not calculate drug pairs: --{} cannot be combined with --{}.",
+								planOption, countingOption);
+						System.exit(1);
+					}
+				}
+			}
+
+			// Cube building and querying is optional
+			if (line.hasOption("cube")) {
+				String cubeFilename = line.getOptionValue("cube");
+				if (line.hasOption("in")) {
+					if (line.hasOption("from") || line.hasOption("to")) {
+						LOGGER.error("Could not update drug pair cube: --from and --to only apply to querying a cube, not to loading --in.");
+						System.exit(1);
+					}
+					updateDrugPairCube(line.getOptionValue("in"), cubeFilename);
+				} else {
+					YearMonth from = null;
+					if (line.hasOption("from")) {
+						from = YearMonth.parse(line.getOptionValue("from"));
+					}
+					YearMonth to = null;
+					if (line.hasOption("to")) {
+						to = YearMonth.parse(line.getOptionValue("to"));
+					}
+					writeAllDrugPairsFromCube(cubeFilename, from, to,
+							outputFilename, minOccurrences);
+				}
+				return;
+			}
+
+			// Counting distinct patients is optional
+			if ("patient".equalsIgnoreCase(countBy)) {
+				long sketchMemoryBytes = memoryBudgetBytes / 2;
+				if (line.hasOption("sketch-memory")) {
+					sketchMemoryBytes = Long.parseLong(line
+							.getOptionValue("sketch-memory"))
+							* BYTES_PER_MEGABYTE;
+				}
+				if (!line.hasOption("sorted")
+						&& (sketchMemoryBytes <= 0 || sketchMemoryBytes >= memoryBudgetBytes)) {
+					LOGGER.error("Could not count drug pairs by patient: --sketch-memory must be more than 0 and less than the memory budget of {} MB.",
+							memoryBudgetBytes / BYTES_PER_MEGABYTE);
+					System.exit(1);
+				}
+				writeAllDrugPairsByPatient(inputFilename, outputFilename,
+						minOccurrences, line.hasOption("sorted"), sampleRows,
+						memoryBudgetBytes, sketchMemoryBytes);
+				return;
+			}
+
+			// Association statistics are optional
+			if (line.hasOption("stats")) {
+				double minLift = 0;
+				if (line.hasOption("min-lift")) {
+					minLift = Double.parseDouble(line.getOptionValue("min-lift"));
+				}
+				writeAllDrugPairStatistics(inputFilename, outputFilename,
+						minOccurrences, minLift, line.hasOption("scores"));
+				return;
+			}
+
+			// Sampling is optional
+			if (line.hasOption("sample-rate") && line.hasOption("sample-size")) {
+				LOGGER.error("Could not sample drug administrations by both rate and size.");
+				System.exit(1);
+			} else if (line.hasOption("sample-rate")
+					|| line.hasOption("sample-size")) {
+				long seed = DEFAULT_SAMPLE_SEED;
+				if (line.hasOption("seed")) {
+					seed = Long.parseLong(line.getOptionValue("seed"));
+				}
+				SampledDrugPairAccumulator accumulator;
+				if (line.hasOption("sample-size")) {
+					accumulator = SampledDrugPairAccumulator.withSampleSize(
+							Integer.parseInt(line.getOptionValue("sample-size")),
+							seed);
+				} else {
+					accumulator = SampledDrugPairAccumulator.withSampleRate(
+							Double.parseDouble(line
+									.getOptionValue("sample-rate")), seed);
+				}
+				writeDrugPairEstimates(inputFilename, outputFilename,
+						minOccurrences, accumulator);
+				return;
+			}
+
+			// Checkpointing is optional
+			if (line.hasOption("checkpoint-dir")) {
+				long checkpointInterval;
+				if (line.hasOption("checkpoint-interval")) {
+					checkpointInterval = Long.parseLong(line
+							.getOptionValue("checkpoint-interval"));
+				} else {
+					checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+				}
+				if (checkpointInterval <= 0) {
+					LOGGER.error(
+							"Could not calculate drug pairs: --checkpoint-interval must be positive but was {}.",
+							checkpointInterval);
+					System.exit(1);
+				}
+				writeAllDrugPairsWithCheckpoints(inputFilename,
+						outputFilename, minOccurrences,
+						line.getOptionValue("checkpoint-dir"),
+						checkpointInterval, line.hasOption("resume"));
+			} else {
+				// Plan overrides are optional
+				CountingStructure countingStructure = null;
+				if (line.hasOption("strategy")) {
+					countingStructure = CountingStructure.valueOf(line
+							.getOptionValue("strategy").toUpperCase());
+				}
+				Integer partitions = null;
+				if (line.hasOption("partitions")) {
+					partitions = Integer.valueOf(line
+							.getOptionValue("partitions"));
+					if (partitions <= 0) {
+						LOGGER.error(
+								"Could not calculate drug pairs: --partitions must be positive but was {}.",
+								partitions);
+						System.exit(1);
+					}
+				}
+				ExecutionPlan plan = planDrugPairCalculation(inputFilename,
+						sampleRows, memoryBudgetBytes, countingStructure,
+						partitions);
+				if (line.hasOption("explain")) {
+					System.out.print(plan.explain());
+				} else if (partnersPerDrug != null) {
+					writeTopDrugPartners(new PlannedDrugPairRun(inputFilename,
+							plan).countDrugPairs(), outputFilename,
+							minOccurrences, partnersPerDrug);
+				} else {
+					writeAllDrugPairsWithPlan(inputFilename, outputFilename,
+							minOccurrences, plan);
+				}
+			}
 
 		} catch (ParseException e) {
 			LOGGER.error(
 					"Could not calculate drug pairs due to parse exception.", e);
+		} catch (IOException e) {
+			LOGGER.error(
+					"Could not calculate drug pairs due to I/O exception.", e);
+			System.exit(1);
+		} catch (IllegalStateException | IllegalArgumentException e) {
+			LOGGER.error("Could not calculate drug pairs: {}", e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted while calculating drug pairs.", e);
+			System.exit(1);
 		}
 	}
 }
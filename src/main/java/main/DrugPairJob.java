@@ -0,0 +1,74 @@
+package main;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * One drug pair calculation listed in a manifest: an input file, an output file
+ * and a minimum occurrence.
+ *
+ * @author Monica
+ */
+public class DrugPairJob {
+
+	private final int _lineNumber;
+	private final String _inputFilename;
+	private final String _outputFilename;
+	private final int _minOccurrence;
+
+	/**
+	 * Constructor
+	 *
+	 * @param lineNumber_
+	 *            The line of the manifest the job was read from.
+	 * @param inputFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param outputFilename_
+	 *            Name of a file to write drug pairs to.
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be written.
+	 */
+	public DrugPairJob(final int lineNumber_, final String inputFilename_,
+			final String outputFilename_, final int minOccurrence_) {
+		_lineNumber = lineNumber_;
+		_inputFilename = inputFilename_;
+		_outputFilename = outputFilename_;
+		_minOccurrence = minOccurrence_;
+	}
+
+	/**
+	 * @return The line of the manifest the job was read from.
+	 */
+	public int getLineNumber() {
+		return _lineNumber;
+	}
+
+	/**
+	 * @return Name of a file containing drug administration information.
+	 */
+	public String getInputFilename() {
+		return _inputFilename;
+	}
+
+	/**
+	 * @return Name of a file to write drug pairs to.
+	 */
+	public String getOutputFilename() {
+		return _outputFilename;
+	}
+
+	/**
+	 * @return The minimum number of times a pair of drugs must be administered
+	 *         together in order to be written.
+	 */
+	public int getMinOccurrence() {
+		return _minOccurrence;
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this,
+				ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+}
@@ -0,0 +1,189 @@
+package main;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.SingleDrugAdministration;
+import calc.DrugPairAccumulator;
+import calc.ExecutionPlan;
+
+import com.google.common.base.Preconditions;
+
+import file.DrugAdministrationListener;
+import file.DrugFileParser;
+
+/**
+ * Accumulates the drug administrations of many files, such as daily shards, in
+ * parallel. Each file is parsed into its own partial accumulator on a bounded
+ * pool of workers, and the partial accumulators are merged as they finish,
+ * which counts every pair correctly even when an administration instance is
+ * spread across files. Each partial accumulator counts into the structure an
+ * execution plan chooses. Progress is logged as each file finishes.
+ *
+ * The plan only sizes the partial accumulators. The merged accumulator holds
+ * every administration instance of every file, since an instance may continue
+ * in a later file, so its memory grows with the whole input and is not bounded
+ * by the memory budget the plan was made for.
+ *
+ * @author Monica
+ */
+public class MultiFileDrugPairRun {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(MultiFileDrugPairRun.class);
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final DrugFileParser _drugFileParser = new DrugFileParser();
+
+	private final List<String> _inputFilenames;
+	private final int _threads;
+	private final ExecutionPlan _plan;
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputFilenames_
+	 *            Names of files containing drug administration information.
+	 * @param threads_
+	 *            The maximum number of files to parse at once. Must be
+	 *            positive.
+	 * @param plan_
+	 *            The plan whose counting structure each file is counted into.
+	 *            Files are not spilled, whatever its partitions.
+	 */
+	public MultiFileDrugPairRun(final List<String> inputFilenames_,
+			final int threads_, final ExecutionPlan plan_) {
+		Preconditions.checkArgument(threads_ > 0,
+				"Threads must be positive but was %s.", threads_);
+		_inputFilenames = inputFilenames_;
+		_threads = threads_;
+		_plan = plan_;
+	}
+
+	/**
+	 * Accumulate the drug administrations of every file.
+	 *
+	 * @return An accumulator holding all of the files.
+	 * @throws IOException
+	 *             If a file could not be read. The remaining files are
+	 *             abandoned.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the workers.
+	 */
+	public DrugPairAccumulator accumulate() throws IOException,
+			InterruptedException {
+		long startNanos = System.nanoTime();
+		int threads = Math.min(_threads, _inputFilenames.size());
+		LOGGER.info("Accumulating {} files on {} workers.",
+				_inputFilenames.size(), threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<PartialResult> completionService = new ExecutorCompletionService<PartialResult>(
+				executor);
+		try {
+			for (final String inputFilename : _inputFilenames) {
+				completionService.submit(new Callable<PartialResult>() {
+					@Override
+					public PartialResult call() throws IOException {
+						return accumulateFile(inputFilename);
+					}
+				});
+			}
+			DrugPairAccumulator merged = null;
+			long rows = 0;
+			for (int finished = 1; finished <= _inputFilenames.size(); finished++) {
+				PartialResult partial;
+				try {
+					partial = completionService.take().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new IOException("Could not accumulate a file.",
+							e.getCause());
+				}
+				long mergeStartNanos = System.nanoTime();
+				if (merged == null) {
+					merged = partial._accumulator;
+				} else if (partial._accumulator
+						.getMapOfAdminInstanceToDrugsAdministered().size() > merged
+						.getMapOfAdminInstanceToDrugsAdministered().size()) {
+					// Merging costs the size of the part merged in.
+					merged = partial._accumulator.merge(merged);
+				} else {
+					merged = merged.merge(partial._accumulator);
+				}
+				rows += partial._rows;
+				String progress = String.format(
+						"[%d/%d] %s: %d rows in %.2f s, merged in %.2f s; "
+								+ "%d rows and %d administration instances so far.",
+						finished, _inputFilenames.size(), partial._filename,
+						partial._rows, partial._nanos / NANOS_PER_SECOND,
+						(System.nanoTime() - mergeStartNanos)
+								/ NANOS_PER_SECOND, rows, merged
+								.getMapOfAdminInstanceToDrugsAdministered()
+								.size());
+				LOGGER.info(progress);
+			}
+			LOGGER.info("Accumulated {} rows from {} files in {} s.", rows,
+					_inputFilenames.size(), (System.nanoTime() - startNanos)
+							/ NANOS_PER_SECOND);
+			return merged;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private PartialResult accumulateFile(final String inputFilename_)
+			throws IOException {
+		long startNanos = System.nanoTime();
+		final DrugPairAccumulator accumulator = new DrugPairAccumulator(
+				new HashMap<AdministrationInstance, Set<String>>(),
+				_plan.createDrugPairCounts(), 0);
+		long rows = _drugFileParser.parseFile(inputFilename_, 0,
+				new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						accumulator.add(drugAdministration_);
+					}
+				});
+		return new PartialResult(inputFilename_, accumulator, rows,
+				System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * The accumulated drug administrations of one file.
+	 */
+	private static class PartialResult {
+		private final String _filename;
+		private final DrugPairAccumulator _accumulator;
+		private final long _rows;
+		private final long _nanos;
+
+		PartialResult(final String filename_,
+				final DrugPairAccumulator accumulator_, final long rows_,
+				final long nanos_) {
+			_filename = filename_;
+			_accumulator = accumulator_;
+			_rows = rows_;
+			_nanos = nanos_;
+		}
+	}
+}
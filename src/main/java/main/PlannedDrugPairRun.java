@@ -0,0 +1,209 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+import api.SingleDrugAdministration;
+import calc.DrugPairAccumulator;
+import calc.DrugPairCounts;
+import calc.ExecutionPlan;
+import calc.HashDrugPairCounts;
+import file.DrugAdministrationListener;
+import file.DrugFileParser;
+import file.DrugFileSpiller;
+
+/**
+ * Runs a drug pair calculation over an input file according to an execution
+ * plan: drug pairs are counted into the planned structure, and the input is
+ * either grouped in memory in a single pass or first spilled into partitions
+ * by administration instance which are then grouped one at a time.
+ *
+ * @author Monica
+ */
+public class PlannedDrugPairRun {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(PlannedDrugPairRun.class);
+
+	private static final DrugFileParser _drugFileParser = new DrugFileParser();
+	private static final DrugFileSpiller _drugFileSpiller = new DrugFileSpiller();
+
+	/**
+	 * Receives the input of a run one partition at a time.
+	 */
+	interface PartitionVisitor {
+
+		/**
+		 * Visit one partition of the input.
+		 *
+		 * @param filename_
+		 *            Name of a file holding every row of the administration
+		 *            instances of the partition.
+		 * @throws IOException
+		 *             If the partition could not be read.
+		 */
+		void visit(String filename_) throws IOException;
+	}
+
+	private final String _inputFilename;
+	private final ExecutionPlan _plan;
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param plan_
+	 *            The plan to carry out.
+	 */
+	public PlannedDrugPairRun(final String inputFilename_,
+			final ExecutionPlan plan_) {
+		_inputFilename = inputFilename_;
+		_plan = plan_;
+	}
+
+	/**
+	 * Count all drug pairs in the input according to the plan.
+	 *
+	 * @return The drug pair counts.
+	 * @throws IOException
+	 *             If the input could not be read or spilled.
+	 */
+	public DrugPairCounts countDrugPairs() throws IOException {
+		LOGGER.info("Counting drug pairs in {} with {}.", _inputFilename, _plan);
+		final DrugPairCounts drugPairCounts = _plan.createDrugPairCounts();
+		visitPartitions(_inputFilename, _plan.getPartitions(),
+				new PartitionVisitor() {
+					@Override
+					public void visit(final String filename_)
+							throws IOException {
+						accumulate(filename_, drugPairCounts);
+					}
+				});
+		LOGGER.info("Counted {} distinct drug pairs in {}.",
+				drugPairCounts.size(), _inputFilename);
+		return drugPairCounts;
+	}
+
+	/**
+	 * Calculate all drug pairs administered together with a given minimum
+	 * occurrence according to the plan.
+	 *
+	 * @param minOccurrence_
+	 *            The minimum number of times a pair of drugs must be
+	 *            administered together in order to be returned.
+	 * @return A set of all drug pairs administered together with a given
+	 *         minimum occurrence.
+	 * @throws IOException
+	 *             If the input could not be read or spilled.
+	 */
+	public Set<DrugPair> run(final int minOccurrence_) throws IOException {
+		return countDrugPairs().getDrugPairsWithMinOccurrence(minOccurrence_);
+	}
+
+	/**
+	 * Visit an input one partition at a time. With more than one partition the
+	 * input is first spilled into partition files by administration instance,
+	 * which are deleted once they have all been visited.
+	 *
+	 * @param inputFilename_
+	 *            Name of a file containing drug administration information.
+	 * @param partitions_
+	 *            The number of partitions; with one the input itself is
+	 *            visited.
+	 * @param visitor_
+	 *            The visitor of each partition.
+	 * @throws IOException
+	 *             If the input could not be spilled or a partition visited.
+	 */
+	static void visitPartitions(final String inputFilename_,
+			final int partitions_, final PartitionVisitor visitor_)
+			throws IOException {
+		if (partitions_ <= 1) {
+			visitor_.visit(inputFilename_);
+			return;
+		}
+		List<File> partitionFiles = _drugFileSpiller.spill(inputFilename_,
+				partitions_, null);
+		try {
+			for (File partitionFile : partitionFiles) {
+				visitor_.visit(partitionFile.getPath());
+			}
+		} finally {
+			for (File partitionFile : partitionFiles) {
+				if (!partitionFile.delete()) {
+					LOGGER.warn("Could not delete partition file {}.",
+							partitionFile);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Group the rows of a file by administration instance, without counting
+	 * drug pairs.
+	 *
+	 * @param filename_
+	 *            Name of a file containing drug administration information.
+	 * @param expectedInstances_
+	 *            The number of administration instances expected, to size the
+	 *            map up front.
+	 * @return A map of administration instance to drugs administered during
+	 *         that instance.
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	static Map<AdministrationInstance, Set<String>> groupAdministrationInstances(
+			final String filename_, final long expectedInstances_)
+			throws IOException {
+		final Map<AdministrationInstance, Set<String>> drugAdminMap = new HashMap<AdministrationInstance, Set<String>>(
+				HashDrugPairCounts.capacityFor(expectedInstances_));
+		_drugFileParser.parseFile(filename_, 0,
+				new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						AdministrationInstance instance = drugAdministration_
+								.getAdministrationInstance();
+						Set<String> drugs = drugAdminMap.get(instance);
+						if (drugs == null) {
+							drugs = new HashSet<String>();
+							drugAdminMap.put(instance, drugs);
+						}
+						drugs.add(drugAdministration_.getDrug());
+					}
+				});
+		return drugAdminMap;
+	}
+
+	private void accumulate(final String filename_,
+			final DrugPairCounts drugPairCounts_) throws IOException {
+		// A fresh grouping map per file; the counts are shared because
+		// partitions never share an administration instance.
+		final DrugPairAccumulator accumulator = new DrugPairAccumulator(
+				new HashMap<AdministrationInstance, Set<String>>(
+						HashDrugPairCounts.capacityFor(_plan
+								.getExpectedInstancesPerPartition())),
+				drugPairCounts_, 0);
+		_drugFileParser.parseFile(filename_, 0,
+				new DrugAdministrationListener() {
+					@Override
+					public void drugAdministrationParsed(
+							final SingleDrugAdministration drugAdministration_,
+							final long endOffset_) {
+						accumulator.add(drugAdministration_);
+					}
+				});
+	}
+}
@@ -0,0 +1,157 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPair;
+import api.DrugPairStatistics;
+import api.SingleDrugAdministration;
+
+public class DrugPairAccumulatorTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairAccumulatorTest.class);
+
+	private static final LocalDate DATE_1 = new LocalDate(2012, 12, 31);
+	private static final LocalDate DATE_2 = new LocalDate(2013, 1, 1);
+
+	private static List<SingleDrugAdministration> createDrugAdministrations() {
+		List<SingleDrugAdministration> drugAdministrations = new LinkedList<SingleDrugAdministration>();
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "A"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("456", DATE_2), "A"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "B"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "B"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("456", DATE_2), "C"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "C"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("456", DATE_2), "B"));
+		drugAdministrations.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_2), "A"));
+		return drugAdministrations;
+	}
+
+	@Test
+	public void testAddMatchesBatchCalculation() {
+		LOGGER.info("================ testAddMatchesBatchCalculation ================");
+		List<SingleDrugAdministration> drugAdministrations = createDrugAdministrations();
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		for (SingleDrugAdministration drugAdministration : drugAdministrations) {
+			accumulator.add(drugAdministration);
+		}
+		Map<DrugPair, Integer> expected = DrugPairCalculator
+				.getMapOfDrugPairToOccurrence(DrugPairCalculator
+						.getMapOfAdminInstanceToDrugsAdministered(drugAdministrations));
+		Assert.assertEquals(expected,
+				accumulator.getMapOfDrugPairToOccurrence());
+		Assert.assertEquals(drugAdministrations.size(),
+				accumulator.getDrugAdministrationCount());
+	}
+
+	@Test
+	public void testGetDrugPairsWithMinOccurrence() {
+		LOGGER.info("================ testGetDrugPairsWithMinOccurrence ================");
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			accumulator.add(drugAdministration);
+		}
+		Assert.assertEquals(3, accumulator.getDrugPairsWithMinOccurrence(2)
+				.size());
+		Assert.assertTrue(accumulator.getDrugPairsWithMinOccurrence(3)
+				.isEmpty());
+	}
+
+	@Test
+	public void testMergeInstanceSplitAcrossParts() {
+		LOGGER.info("================ testMergeInstanceSplitAcrossParts ================");
+		List<SingleDrugAdministration> drugAdministrations = createDrugAdministrations();
+		DrugPairAccumulator first = new DrugPairAccumulator();
+		DrugPairAccumulator second = new DrugPairAccumulator();
+		for (int i = 0; i < drugAdministrations.size(); i++) {
+			// Alternate rows so that instances are split between the parts.
+			(i % 2 == 0 ? first : second).add(drugAdministrations.get(i));
+		}
+		DrugPairAccumulator whole = new DrugPairAccumulator();
+		whole.addBatch(drugAdministrations);
+		first.merge(second);
+		Assert.assertEquals(whole.getMapOfDrugPairToOccurrence(),
+				first.getMapOfDrugPairToOccurrence());
+		Assert.assertEquals(whole.getMapOfAdminInstanceToDrugsAdministered(),
+				first.getMapOfAdminInstanceToDrugsAdministered());
+		Assert.assertEquals(whole.getDrugAdministrationCount(),
+				first.getDrugAdministrationCount());
+		for (String drug : new String[] { "A", "B", "C" }) {
+			Assert.assertEquals(whole.getInstanceCount(drug),
+					first.getInstanceCount(drug));
+		}
+	}
+
+	@Test
+	public void testGetDrugPairStatistics() {
+		LOGGER.info("================ testGetDrugPairStatistics ================");
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		accumulator.addBatch(createDrugAdministrations());
+		// Instances: 123/DATE_1 {A,B,C}, 456/DATE_2 {A,B,C}, 123/DATE_2 {A}
+		Assert.assertEquals(3, accumulator.getInstanceCount("A"));
+		Assert.assertEquals(2, accumulator.getInstanceCount("B"));
+		List<DrugPairStatistics> statistics = accumulator
+				.getDrugPairStatistics(2, 0);
+		Assert.assertEquals(3, statistics.size());
+		for (DrugPairStatistics pair : statistics) {
+			if (pair.getDrugA().equals("A") && pair.getDrugB().equals("B")) {
+				Assert.assertEquals(2.0 / 3, pair.getSupport(), 1e-9);
+				Assert.assertEquals(2.0 / 3, pair.getConfidenceAToB(), 1e-9);
+				Assert.assertEquals(1.0, pair.getConfidenceBToA(), 1e-9);
+				Assert.assertEquals(1.0, pair.getLift(), 1e-9);
+				Assert.assertEquals(0.0, pair.getPointwiseMutualInformation(),
+						1e-9);
+			}
+		}
+		// B and C always appear together, so only they are above lift 1.
+		List<DrugPairStatistics> highLift = accumulator.getDrugPairStatistics(
+				2, 1.2);
+		Assert.assertEquals(1, highLift.size());
+		Assert.assertEquals("B", highLift.get(0).getDrugA());
+		Assert.assertEquals("C", highLift.get(0).getDrugB());
+		Assert.assertEquals(1.5, highLift.get(0).getLift(), 1e-9);
+		Assert.assertEquals(3.0, highLift.get(0).getChiSquare(), 1e-9);
+	}
+
+	@Test
+	public void testParallelStreamMatchesSequential() {
+		LOGGER.info("================ testParallelStreamMatchesSequential ================");
+		Random random = new Random(42);
+		List<SingleDrugAdministration> drugAdministrations = new ArrayList<SingleDrugAdministration>();
+		for (int i = 0; i < 20000; i++) {
+			drugAdministrations.add(new SingleDrugAdministration(
+					new AdministrationInstance("P" + random.nextInt(200),
+							random.nextBoolean() ? DATE_1 : DATE_2), "D"
+							+ random.nextInt(15)));
+		}
+		DrugPairAccumulator sequential = new DrugPairAccumulator();
+		sequential.addBatch(drugAdministrations);
+		DrugPairAccumulator parallel = DrugPairCalculator
+				.accumulate(drugAdministrations.parallelStream());
+		Assert.assertEquals(sequential.getMapOfDrugPairToOccurrence(),
+				parallel.getMapOfDrugPairToOccurrence());
+		Assert.assertEquals(sequential.result(50), DrugPairCalculator
+				.getDrugPairsWithMinOccurence(drugAdministrations.stream()
+						.parallel(), 50));
+	}
+}
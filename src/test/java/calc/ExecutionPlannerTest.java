@@ -0,0 +1,102 @@
+package calc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import calc.ExecutionPlan.CountingStructure;
+
+public class ExecutionPlannerTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ExecutionPlannerTest.class);
+
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private final ExecutionPlanner _planner = new ExecutionPlanner();
+
+	@Test
+	public void testSmallVocabularyUsesMatrix() {
+		LOGGER.info("================ testSmallVocabularyUsesMatrix ================");
+		CardinalityEstimate estimate = new CardinalityEstimate(1000000, 10000,
+				200000, 500, 50000, 100000, false);
+		ExecutionPlan plan = _planner.plan(estimate, 1024 * MEGABYTE, null,
+				null);
+		Assert.assertEquals(CountingStructure.MATRIX,
+				plan.getCountingStructure());
+		Assert.assertEquals(1, plan.getPartitions());
+	}
+
+	@Test
+	public void testMatrixVocabularyLimit() {
+		LOGGER.info("================ testMatrixVocabularyLimit ================");
+		int maxDrugs = MatrixDrugPairCounts.MAX_DRUGS;
+		Assert.assertTrue((long) maxDrugs * (maxDrugs - 1) / 2 < Integer.MAX_VALUE);
+		Assert.assertTrue((long) (maxDrugs + 1) * maxDrugs / 2 > Integer.MAX_VALUE - 8);
+		// So many pairs that a matrix would otherwise be smaller.
+		long drugPairs = 10000000000L;
+		CardinalityEstimate atLimit = new CardinalityEstimate(1000000000L,
+				10000, 200000, maxDrugs, drugPairs, 100000, false);
+		Assert.assertEquals(CountingStructure.MATRIX,
+				_planner.plan(atLimit, 1024 * MEGABYTE, null, null)
+						.getCountingStructure());
+		CardinalityEstimate overLimit = new CardinalityEstimate(1000000000L,
+				10000, 200000, maxDrugs + 1, drugPairs, 100000, false);
+		Assert.assertEquals(CountingStructure.HASH,
+				_planner.plan(overLimit, 1024 * MEGABYTE, null, null)
+						.getCountingStructure());
+		try {
+			_planner.plan(overLimit, 1024 * MEGABYTE, CountingStructure.MATRIX,
+					null);
+			Assert.fail("Planned a matrix over the vocabulary limit.");
+		} catch (IllegalArgumentException e) {
+			LOGGER.info("Refused: {}", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSparsePairsUseHash() {
+		LOGGER.info("================ testSparsePairsUseHash ================");
+		CardinalityEstimate estimate = new CardinalityEstimate(1000000, 10000,
+				200000, 100000, 50000, 100000, false);
+		ExecutionPlan plan = _planner.plan(estimate, 1024 * MEGABYTE, null,
+				null);
+		Assert.assertEquals(CountingStructure.HASH,
+				plan.getCountingStructure());
+	}
+
+	@Test
+	public void testLargeGroupingSpills() {
+		LOGGER.info("================ testLargeGroupingSpills ================");
+		CardinalityEstimate estimate = new CardinalityEstimate(100000000,
+				1000000, 20000000, 500, 50000, 100000, false);
+		ExecutionPlan plan = _planner.plan(estimate, 1024 * MEGABYTE, null,
+				null);
+		Assert.assertTrue(plan.getPartitions() > 1);
+		long groupingPerPartition = plan.getExpectedInstancesPerPartition()
+				* ExecutionPlanner.BYTES_PER_ADMINISTRATION_INSTANCE;
+		Assert.assertTrue(groupingPerPartition < 1024 * MEGABYTE);
+	}
+
+	@Test
+	public void testOverrides() {
+		LOGGER.info("================ testOverrides ================");
+		CardinalityEstimate estimate = new CardinalityEstimate(1000000, 10000,
+				200000, 500, 50000, 100000, false);
+		ExecutionPlan plan = _planner.plan(estimate, 1024 * MEGABYTE,
+				CountingStructure.HASH, 7);
+		Assert.assertEquals(CountingStructure.HASH,
+				plan.getCountingStructure());
+		Assert.assertEquals(7, plan.getPartitions());
+		Assert.assertTrue(plan.explain().contains("overridden"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNonPositivePartitions() {
+		LOGGER.info("================ testRejectsNonPositivePartitions ================");
+		_planner.plan(new CardinalityEstimate(1000000, 10000, 200000, 500,
+				50000, 100000, false), 1024 * MEGABYTE, null, 0);
+	}
+}
@@ -0,0 +1,68 @@
+package calc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HyperLogLogTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(HyperLogLogTest.class);
+
+	@Test
+	public void testEstimateEmpty() {
+		LOGGER.info("================ testEstimateEmpty ================");
+		Assert.assertEquals(0, new HyperLogLog(10).estimate());
+	}
+
+	@Test
+	public void testEstimateSmallIsExact() {
+		LOGGER.info("================ testEstimateSmallIsExact ================");
+		HyperLogLog hyperLogLog = new HyperLogLog(14);
+		for (int i = 0; i < 20; i++) {
+			// Duplicates must not be counted twice.
+			hyperLogLog.add("drug" + i);
+			hyperLogLog.add("drug" + i);
+		}
+		Assert.assertEquals(20, hyperLogLog.estimate());
+	}
+
+	@Test
+	public void testEstimateLargeWithinError() {
+		LOGGER.info("================ testEstimateLargeWithinError ================");
+		HyperLogLog hyperLogLog = new HyperLogLog(12);
+		int distinct = 200000;
+		for (int i = 0; i < distinct; i++) {
+			hyperLogLog.add("patient" + i);
+		}
+		// Standard error at precision 12 is about 1.6%; allow 5%.
+		Assert.assertEquals(distinct, hyperLogLog.estimate(), distinct * 0.05);
+	}
+
+	@Test
+	public void testMerge() {
+		LOGGER.info("================ testMerge ================");
+		HyperLogLog a = new HyperLogLog(12);
+		HyperLogLog b = new HyperLogLog(12);
+		HyperLogLog both = new HyperLogLog(12);
+		for (int i = 0; i < 10000; i++) {
+			String value = "instance" + i;
+			if (i % 2 == 0) {
+				a.add(value);
+			} else {
+				b.add(value);
+			}
+			both.add(value);
+		}
+		a.merge(b);
+		Assert.assertEquals(both, a);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeDifferentPrecisionFails() {
+		LOGGER.info("================ testMergeDifferentPrecisionFails ================");
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+}
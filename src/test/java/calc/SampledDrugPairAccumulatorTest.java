@@ -0,0 +1,182 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.DrugPairEstimate;
+import api.SingleDrugAdministration;
+
+public class SampledDrugPairAccumulatorTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(SampledDrugPairAccumulatorTest.class);
+
+	private static final LocalDate DATE_1 = new LocalDate(2012, 12, 31);
+	private static final int INSTANCES = 2000;
+	private static final long SEED = 42;
+
+	/**
+	 * Every instance is given drugs A, B and C, in shuffled row order, and every
+	 * other instance also drug D.
+	 */
+	private static List<SingleDrugAdministration> createDrugAdministrations() {
+		List<SingleDrugAdministration> drugAdministrations = new ArrayList<SingleDrugAdministration>();
+		for (int i = 0; i < INSTANCES; i++) {
+			AdministrationInstance adminInstance = new AdministrationInstance(
+					"P" + i, DATE_1.plusDays(i % 7));
+			for (String drug : new String[] { "A", "B", "C" }) {
+				drugAdministrations.add(new SingleDrugAdministration(
+						adminInstance, drug));
+			}
+			if (i % 2 == 0) {
+				drugAdministrations.add(new SingleDrugAdministration(
+						adminInstance, "D"));
+			}
+		}
+		Collections.shuffle(drugAdministrations, new Random(SEED));
+		return drugAdministrations;
+	}
+
+	private static DrugPairEstimate findEstimate(
+			final List<DrugPairEstimate> estimates_, final String drugA_,
+			final String drugB_) {
+		for (DrugPairEstimate estimate : estimates_) {
+			if (estimate.getDrugA().equals(drugA_)
+					&& estimate.getDrugB().equals(drugB_)) {
+				return estimate;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testFullSampleIsExact() {
+		LOGGER.info("================ testFullSampleIsExact ================");
+		SampledDrugPairAccumulator accumulator = SampledDrugPairAccumulator
+				.withSampleRate(1, SEED);
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			accumulator.add(drugAdministration);
+		}
+		List<DrugPairEstimate> estimates = accumulator.getDrugPairEstimates(1);
+		Assert.assertEquals(6, estimates.size());
+		DrugPairEstimate ab = findEstimate(estimates, "A", "B");
+		Assert.assertEquals(INSTANCES, ab.getSampledCount());
+		Assert.assertEquals((double) INSTANCES, ab.getEstimate());
+		Assert.assertEquals((double) INSTANCES, ab.getLow());
+		Assert.assertEquals((double) INSTANCES, ab.getHigh());
+		Assert.assertEquals(INSTANCES / 2, findEstimate(estimates, "A", "D")
+				.getSampledCount());
+		Assert.assertEquals(INSTANCES, accumulator.getEstimatedInstanceCount());
+	}
+
+	@Test
+	public void testSampleRateKeepsInstancesTogether() {
+		LOGGER.info("================ testSampleRateKeepsInstancesTogether ================");
+		SampledDrugPairAccumulator accumulator = SampledDrugPairAccumulator
+				.withSampleRate(0.2, SEED);
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			accumulator.add(drugAdministration);
+		}
+		List<DrugPairEstimate> estimates = accumulator.getDrugPairEstimates(1);
+		DrugPairEstimate ab = findEstimate(estimates, "A", "B");
+		// A sampled instance has all of its drugs, so every pair of A, B and C
+		// was seen in exactly the sampled instances.
+		Assert.assertEquals(accumulator.getSampledInstanceCount(),
+				ab.getSampledCount());
+		Assert.assertEquals(ab.getSampledCount(),
+				findEstimate(estimates, "A", "C").getSampledCount());
+		Assert.assertEquals(ab.getSampledCount(),
+				findEstimate(estimates, "B", "C").getSampledCount());
+		Assert.assertEquals(ab.getSampledCount() / 0.2, ab.getEstimate(), 1e-9);
+		Assert.assertTrue(ab.getLow() <= INSTANCES
+				&& INSTANCES <= ab.getHigh());
+		Assert.assertTrue(ab.getLow() < ab.getEstimate()
+				&& ab.getEstimate() < ab.getHigh());
+	}
+
+	@Test
+	public void testThresholdAppliesToEstimate() {
+		LOGGER.info("================ testThresholdAppliesToEstimate ================");
+		SampledDrugPairAccumulator accumulator = SampledDrugPairAccumulator
+				.withSampleRate(0.2, SEED);
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			accumulator.add(drugAdministration);
+		}
+		// Pairs with D are estimated near 1000 and the others near 2000, while
+		// every sampled count is far below 1500.
+		List<DrugPairEstimate> estimates = accumulator
+				.getDrugPairEstimates(INSTANCES * 3 / 4);
+		Assert.assertEquals(3, estimates.size());
+		Assert.assertNull(findEstimate(estimates, "A", "D"));
+	}
+
+	@Test
+	public void testSampleSize() {
+		LOGGER.info("================ testSampleSize ================");
+		SampledDrugPairAccumulator accumulator = SampledDrugPairAccumulator
+				.withSampleSize(200, SEED);
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			accumulator.add(drugAdministration);
+		}
+		Assert.assertEquals(200, accumulator.getSampledInstanceCount());
+		Assert.assertTrue(accumulator.getSampleRate() < 1);
+		List<DrugPairEstimate> estimates = accumulator.getDrugPairEstimates(1);
+		DrugPairEstimate ab = findEstimate(estimates, "A", "B");
+		Assert.assertEquals(200, ab.getSampledCount());
+		Assert.assertTrue(ab.getLow() <= INSTANCES
+				&& INSTANCES <= ab.getHigh());
+
+		SampledDrugPairAccumulator all = SampledDrugPairAccumulator
+				.withSampleSize(INSTANCES, SEED);
+		for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+			all.add(drugAdministration);
+		}
+		Assert.assertEquals(1.0, all.getSampleRate());
+		Assert.assertEquals((double) INSTANCES,
+				findEstimate(all.getDrugPairEstimates(1), "A", "B")
+						.getEstimate());
+	}
+
+	@Test
+	public void testSkippingRowsMatchesAddingAll() {
+		LOGGER.info("================ testSkippingRowsMatchesAddingAll ================");
+		for (SampledDrugPairAccumulator[] accumulators : new SampledDrugPairAccumulator[][] {
+				{ SampledDrugPairAccumulator.withSampleRate(0.1, SEED),
+						SampledDrugPairAccumulator.withSampleRate(0.1, SEED) },
+				{ SampledDrugPairAccumulator.withSampleSize(100, SEED),
+						SampledDrugPairAccumulator.withSampleSize(100, SEED) } }) {
+			int skipped = 0;
+			for (SingleDrugAdministration drugAdministration : createDrugAdministrations()) {
+				accumulators[0].add(drugAdministration);
+				AdministrationInstance adminInstance = drugAdministration
+						.getAdministrationInstance();
+				if (accumulators[1].mightSample(adminInstance
+						.getPatientIdentifier(), adminInstance
+						.getAdministrationDate().toString())) {
+					accumulators[1].add(drugAdministration);
+				} else {
+					skipped++;
+				}
+			}
+			Assert.assertTrue(skipped > 0);
+			Assert.assertEquals(accumulators[0].getSampleRate(),
+					accumulators[1].getSampleRate());
+			Assert.assertEquals(
+					new HashSet<DrugPairEstimate>(accumulators[0]
+							.getDrugPairEstimates(1)),
+					new HashSet<DrugPairEstimate>(accumulators[1]
+							.getDrugPairEstimates(1)));
+		}
+	}
+}
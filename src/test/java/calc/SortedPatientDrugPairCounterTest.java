@@ -0,0 +1,106 @@
+package calc;
+
+import junit.framework.Assert;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.SingleDrugAdministration;
+
+public class SortedPatientDrugPairCounterTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(SortedPatientDrugPairCounterTest.class);
+
+	private static final LocalDate DATE_1 = new LocalDate(2012, 12, 31);
+	private static final LocalDate DATE_2 = new LocalDate(2013, 1, 1);
+
+	private static SingleDrugAdministration administration(
+			final String patient_, final LocalDate date_, final String drug_) {
+		return new SingleDrugAdministration(new AdministrationInstance(
+				patient_, date_), drug_);
+	}
+
+	@Test
+	public void testPatientOnRegimenCountsOnce() {
+		LOGGER.info("================ testPatientOnRegimenCountsOnce ================");
+		SortedPatientDrugPairCounter counter = new SortedPatientDrugPairCounter();
+		counter.add(administration("123", DATE_1, "A"));
+		counter.add(administration("123", DATE_1, "B"));
+		counter.add(administration("123", DATE_2, "B"));
+		counter.add(administration("123", DATE_2, "A"));
+		counter.add(administration("123", DATE_2, "C"));
+		counter.add(administration("456", DATE_1, "A"));
+		counter.add(administration("456", DATE_1, "B"));
+		DrugPairCounts actual = counter.finish();
+		Assert.assertEquals(2, actual.getOccurrence("A", "B"));
+		Assert.assertEquals(1, actual.getOccurrence("A", "C"));
+		Assert.assertEquals(1, actual.getOccurrence("B", "C"));
+		Assert.assertEquals(3, actual.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnsortedInputFails() {
+		LOGGER.info("================ testUnsortedInputFails ================");
+		SortedPatientDrugPairCounter counter = new SortedPatientDrugPairCounter();
+		counter.add(administration("456", DATE_1, "A"));
+		counter.add(administration("123", DATE_1, "B"));
+	}
+
+	@Test
+	public void testSketchesApproximateSortedCounts() {
+		LOGGER.info("================ testSketchesApproximateSortedCounts ================");
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		for (int patient = 0; patient < 100; patient++) {
+			accumulator.add(administration("P" + patient, DATE_1, "A"));
+			accumulator.add(administration("P" + patient, DATE_1, "B"));
+			accumulator.add(administration("P" + patient, DATE_2, "A"));
+			accumulator.add(administration("P" + patient, DATE_2, "B"));
+		}
+		PatientDrugPairSketches sketches = new PatientDrugPairSketches(1,
+				1024 * 1024);
+		sketches.addAll(accumulator.getMapOfAdminInstanceToDrugsAdministered());
+		Assert.assertEquals(200, accumulator.getDrugPairCounts()
+				.getOccurrence("A", "B"));
+		Assert.assertEquals(100, sketches.estimateCounts().getOccurrence("A",
+				"B"), 10);
+	}
+
+	@Test
+	public void testSketchesAddedByPartition() {
+		LOGGER.info("================ testSketchesAddedByPartition ================");
+		// The same patients on two dates, grouped as two separate partitions.
+		DrugPairAccumulator firstPartition = new DrugPairAccumulator();
+		DrugPairAccumulator secondPartition = new DrugPairAccumulator();
+		for (int patient = 0; patient < 100; patient++) {
+			firstPartition.add(administration("P" + patient, DATE_1, "A"));
+			firstPartition.add(administration("P" + patient, DATE_1, "B"));
+			secondPartition.add(administration("P" + patient, DATE_2, "A"));
+			secondPartition.add(administration("P" + patient, DATE_2, "B"));
+		}
+		PatientDrugPairSketches sketches = new PatientDrugPairSketches(1,
+				1024 * 1024);
+		sketches.addAll(firstPartition
+				.getMapOfAdminInstanceToDrugsAdministered());
+		sketches.addAll(secondPartition
+				.getMapOfAdminInstanceToDrugsAdministered());
+		Assert.assertEquals(100, sketches.estimateCounts().getOccurrence("A",
+				"B"), 10);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSketchesOverMemoryBudgetFail() {
+		LOGGER.info("================ testSketchesOverMemoryBudgetFail ================");
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		for (int drug = 0; drug < 10; drug++) {
+			accumulator.add(administration("123", DATE_1, "D" + drug));
+		}
+		// Room for one sketch at the highest precision, but given 45 pairs.
+		PatientDrugPairSketches sketches = new PatientDrugPairSketches(1,
+				20000);
+		sketches.addAll(accumulator.getMapOfAdminInstanceToDrugsAdministered());
+	}
+}
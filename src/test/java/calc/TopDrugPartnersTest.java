@@ -0,0 +1,172 @@
+package calc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import api.DrugPartner;
+
+public class TopDrugPartnersTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(TopDrugPartnersTest.class);
+
+	private static final long SEED = 42;
+
+	/**
+	 * Drug A is paired with B 5 times, C 3 times, D 3 times and E once, and B
+	 * with C twice.
+	 */
+	private static DrugPairCounts createDrugPairCounts() {
+		DrugPairCounts drugPairCounts = new HashDrugPairCounts(16);
+		drugPairCounts.add("A", "B", 5);
+		drugPairCounts.add("A", "C", 3);
+		drugPairCounts.add("D", "A", 3);
+		drugPairCounts.add("A", "E", 1);
+		drugPairCounts.add("B", "C", 2);
+		return drugPairCounts;
+	}
+
+	@Test
+	public void testRanksPartnersByCountThenName() {
+		LOGGER.info("================ testRanksPartnersByCountThenName ================");
+		SortedMap<String, List<DrugPartner>> rankedPartners = TopDrugPartners
+				.of(createDrugPairCounts(), 10, 1).getRankedPartners();
+		Assert.assertEquals(Arrays.asList("A", "B", "C", "D", "E"),
+				new ArrayList<String>(rankedPartners.keySet()));
+		Assert.assertEquals(Arrays.asList(new DrugPartner("B", 5),
+				new DrugPartner("C", 3), new DrugPartner("D", 3),
+				new DrugPartner("E", 1)), rankedPartners.get("A"));
+		Assert.assertEquals(
+				Arrays.asList(new DrugPartner("A", 5), new DrugPartner("C", 2)),
+				rankedPartners.get("B"));
+		Assert.assertEquals(Arrays.asList(new DrugPartner("A", 1)),
+				rankedPartners.get("E"));
+	}
+
+	@Test
+	public void testKeepsOnlyKPartners() {
+		LOGGER.info("================ testKeepsOnlyKPartners ================");
+		SortedMap<String, List<DrugPartner>> rankedPartners = TopDrugPartners
+				.of(createDrugPairCounts(), 2, 1).getRankedPartners();
+		// C and D tie for second, and C comes first by name.
+		Assert.assertEquals(
+				Arrays.asList(new DrugPartner("B", 5), new DrugPartner("C", 3)),
+				rankedPartners.get("A"));
+		Assert.assertEquals(
+				Arrays.asList(new DrugPartner("A", 5), new DrugPartner("C", 2)),
+				rankedPartners.get("B"));
+	}
+
+	@Test
+	public void testMinOccurrence() {
+		LOGGER.info("================ testMinOccurrence ================");
+		SortedMap<String, List<DrugPartner>> rankedPartners = TopDrugPartners
+				.of(createDrugPairCounts(), 10, 3).getRankedPartners();
+		Assert.assertEquals(Arrays.asList("A", "B", "C", "D"),
+				new ArrayList<String>(rankedPartners.keySet()));
+		Assert.assertEquals(Arrays.asList(new DrugPartner("A", 5)),
+				rankedPartners.get("B"));
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		LOGGER.info("================ testParallelMatchesSequential ================");
+		Random random = new Random(SEED);
+		DrugPairCounts drugPairCounts = new HashDrugPairCounts(1 << 14);
+		for (int i = 0; i < 100; i++) {
+			for (int j = i + 1; j < 100; j++) {
+				// Few distinct counts, so many partners tie.
+				drugPairCounts.add("D" + i, "D" + j, 1 + random.nextInt(5));
+			}
+		}
+		TopDrugPartners sequential = new TopDrugPartners(7);
+		for (Map.Entry<DrugPair, Integer> entry : drugPairCounts.toMap()
+				.entrySet()) {
+			String[] drugs = entry.getKey().getDrugs().toArray(new String[2]);
+			sequential.add(drugs[0], drugs[1], entry.getValue());
+		}
+		SortedMap<String, List<DrugPartner>> parallel = TopDrugPartners.of(
+				drugPairCounts, 7, 1).getRankedPartners();
+		Assert.assertEquals(sequential.getRankedPartners(), parallel);
+		Assert.assertEquals(100, parallel.size());
+		for (List<DrugPartner> partners : parallel.values()) {
+			Assert.assertEquals(7, partners.size());
+		}
+	}
+
+	@Test
+	public void testMatrixMatchesHash() {
+		LOGGER.info("================ testMatrixMatchesHash ================");
+		Random random = new Random(SEED);
+		DrugPairCounts hashCounts = new HashDrugPairCounts(1 << 14);
+		DrugPairCounts matrixCounts = new MatrixDrugPairCounts(2);
+		for (int i = 0; i < 100; i++) {
+			for (int j = i + 1; j < 100; j++) {
+				if (random.nextInt(3) == 0) {
+					continue;
+				}
+				int count = 1 + random.nextInt(5);
+				hashCounts.add("D" + i, "D" + j, count);
+				matrixCounts.add("D" + j, "D" + i, count);
+			}
+		}
+		TopDrugPartners sequential = new TopDrugPartners(5, 2);
+		matrixCounts.forEach(sequential);
+		SortedMap<String, List<DrugPartner>> fromHash = TopDrugPartners.of(
+				hashCounts, 5, 2).getRankedPartners();
+		Assert.assertEquals(fromHash, TopDrugPartners.of(matrixCounts, 5, 2)
+				.getRankedPartners());
+		Assert.assertEquals(fromHash, sequential.getRankedPartners());
+	}
+
+	@Test
+	public void testParallelVisitsEachPairOnce() {
+		LOGGER.info("================ testParallelVisitsEachPairOnce ================");
+		DrugPairCounts hashCounts = new HashDrugPairCounts(1 << 14);
+		DrugPairCounts matrixCounts = new MatrixDrugPairCounts(2);
+		for (int i = 0; i < 100; i++) {
+			for (int j = i + 1; j < 100; j++) {
+				hashCounts.add("D" + i, "D" + j, i + j);
+				matrixCounts.add("D" + i, "D" + j, i + j);
+			}
+		}
+		for (DrugPairCounts drugPairCounts : Arrays.asList(hashCounts,
+				matrixCounts)) {
+			final Map<DrugPair, Integer> visited = new HashMap<DrugPair, Integer>();
+			for (Map<DrugPair, Integer> part : drugPairCounts
+					.forEachParallel(() -> new CollectingVisitor())) {
+				for (Map.Entry<DrugPair, Integer> entry : part.entrySet()) {
+					Assert.assertNull(visited.put(entry.getKey(),
+							entry.getValue()));
+				}
+			}
+			Assert.assertEquals(hashCounts.toMap(), visited);
+		}
+	}
+
+	/**
+	 * Collects the drug pairs it visits into a map.
+	 */
+	private static class CollectingVisitor extends HashMap<DrugPair, Integer>
+			implements DrugPairCountVisitor {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void visit(final String drugA_, final String drugB_,
+				final int count_) {
+			put(new DrugPair(drugA_, drugB_), count_);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Generates drug administration files of a fixed size and shape for
+ * performance tests. Rows are written visit by visit: each visit picks a
+ * patient, a date and a number of distinct drugs, so the number of drugs per
+ * administration instance can be controlled. The same seed always produces the
+ * same file.
+ */
+public class DrugAdministrationFileGenerator {
+
+	private static final LocalDate FIRST_DATE = new LocalDate(2010, 1, 1);
+	private static final int DAYS = 5 * 365;
+
+	private final int _patients;
+	private final int _drugs;
+	private final int _minDrugsPerVisit;
+	private final int _maxDrugsPerVisit;
+	private final long _seed;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param patients_
+	 *            Number of distinct patients to draw from.
+	 * @param drugs_
+	 *            Number of distinct drugs to draw from.
+	 * @param minDrugsPerVisit_
+	 *            Smallest number of drugs in a visit.
+	 * @param maxDrugsPerVisit_
+	 *            Largest number of drugs in a visit; the number is uniform
+	 *            between the smallest and largest.
+	 * @param seed_
+	 *            Random seed.
+	 */
+	public DrugAdministrationFileGenerator(final int patients_,
+			final int drugs_, final int minDrugsPerVisit_,
+			final int maxDrugsPerVisit_, final long seed_) {
+		_patients = patients_;
+		_drugs = drugs_;
+		_minDrugsPerVisit = minDrugsPerVisit_;
+		_maxDrugsPerVisit = Math.min(maxDrugsPerVisit_, drugs_);
+		_seed = seed_;
+	}
+
+	/**
+	 * Write a file of at least the given number of rows.
+	 * 
+	 * @param file_
+	 *            The file to write.
+	 * @param rows_
+	 *            The number of rows to write. The last visit is cut short so
+	 *            that exactly this many rows are written.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void generate(final File file_, final long rows_)
+			throws IOException {
+		Random random = new Random(_seed);
+		BufferedWriter w = new BufferedWriter(new FileWriter(file_));
+		try {
+			long written = 0;
+			int[] visitDrugs = new int[_maxDrugsPerVisit];
+			while (written < rows_) {
+				String patient = "P" + random.nextInt(_patients);
+				String date = FIRST_DATE.plusDays(random.nextInt(DAYS))
+						.toString();
+				int drugsInVisit = _minDrugsPerVisit
+						+ random.nextInt(_maxDrugsPerVisit - _minDrugsPerVisit
+								+ 1);
+				// Pick distinct drugs by rejection; visits are small relative
+				// to the vocabulary.
+				for (int d = 0; d < drugsInVisit; d++) {
+					int drug;
+					boolean repeated;
+					do {
+						drug = random.nextInt(_drugs);
+						repeated = false;
+						for (int e = 0; e < d; e++) {
+							repeated |= visitDrugs[e] == drug;
+						}
+					} while (repeated);
+					visitDrugs[d] = drug;
+				}
+				for (int d = 0; d < drugsInVisit && written < rows_; d++) {
+					w.write(patient);
+					w.write(',');
+					w.write(date);
+					w.write(",D");
+					w.write(Integer.toString(visitDrugs[d]));
+					w.newLine();
+					written++;
+				}
+			}
+		} finally {
+			w.close();
+		}
+	}
+}
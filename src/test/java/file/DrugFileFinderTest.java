@@ -0,0 +1,78 @@
+package file;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DrugFileFinderTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugFileFinderTest.class);
+
+	private final DrugFileFinder _drugFileFinder = new DrugFileFinder();
+
+	private static File createShards() throws IOException {
+		File directory = Files.createTempDirectory("shards").toFile();
+		for (String name : new String[] { "2014-01-02.csv", "2014-01-01.csv",
+				"2014-02-01.csv", ".hidden.csv", "notes.txt" }) {
+			Files.createFile(new File(directory, name).toPath());
+		}
+		File subdirectory = new File(directory, "old");
+		Files.createDirectory(subdirectory.toPath());
+		Files.createFile(new File(subdirectory, "2013-12-31.csv").toPath());
+		return directory;
+	}
+
+	@Test
+	public void testFindFile() throws IOException {
+		LOGGER.info("================ testFindFile ================");
+		File directory = createShards();
+		String filename = new File(directory, "notes.txt").getPath();
+		Assert.assertFalse(DrugFileFinder.isMultiFile(filename));
+		Assert.assertEquals(Arrays.asList(filename),
+				_drugFileFinder.find(filename));
+	}
+
+	@Test
+	public void testFindDirectory() throws IOException {
+		LOGGER.info("================ testFindDirectory ================");
+		File directory = createShards();
+		Assert.assertTrue(DrugFileFinder.isMultiFile(directory.getPath()));
+		List<String> filenames = _drugFileFinder.find(directory.getPath());
+		Assert.assertEquals(Arrays.asList(
+				new File(directory, "2014-01-01.csv").getPath(),
+				new File(directory, "2014-01-02.csv").getPath(),
+				new File(directory, "2014-02-01.csv").getPath(),
+				new File(directory, "notes.txt").getPath()), filenames);
+	}
+
+	@Test
+	public void testFindGlob() throws IOException {
+		LOGGER.info("================ testFindGlob ================");
+		File directory = createShards();
+		String glob = directory.getPath() + File.separator + "2014-01-*.csv";
+		Assert.assertTrue(DrugFileFinder.isMultiFile(glob));
+		Assert.assertEquals(Arrays.asList(
+				new File(directory, "2014-01-01.csv").getPath(),
+				new File(directory, "2014-01-02.csv").getPath()),
+				_drugFileFinder.find(glob));
+		Assert.assertEquals(4, _drugFileFinder.find(
+				directory.getPath() + File.separator + "**.csv").size());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testFindNothing() throws IOException {
+		LOGGER.info("================ testFindNothing ================");
+		File directory = createShards();
+		_drugFileFinder.find(directory.getPath() + File.separator + "*.json");
+	}
+}
@@ -0,0 +1,54 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DrugFileSpillerTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugFileSpillerTest.class);
+
+	@Test
+	public void testSpillsMorePartitionsThanOpenAtOnce() throws IOException {
+		LOGGER.info("================ testSpillsMorePartitionsThanOpenAtOnce ================");
+		File input = File.createTempFile("spill", ".txt");
+		input.deleteOnExit();
+		new DrugAdministrationFileGenerator(500, 30, 1, 4, 11).generate(input,
+				5000);
+		int partitions = DrugFileSpiller.MAX_OPEN_PARTITIONS * 2 + 1;
+		List<File> partitionFiles = new DrugFileSpiller().spill(
+				input.getPath(), partitions, null);
+		try {
+			Assert.assertEquals(partitions, partitionFiles.size());
+			long lines = 0;
+			for (int i = 0; i < partitions; i++) {
+				for (String line : Files.readAllLines(partitionFiles.get(i)
+						.toPath(), Charset.defaultCharset())) {
+					Assert.assertEquals(i,
+							DrugFileSpiller.partitionOf(line, partitions));
+					lines++;
+				}
+			}
+			Assert.assertEquals(5000, lines);
+		} finally {
+			for (File partitionFile : partitionFiles) {
+				partitionFile.delete();
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNonPositivePartitions() throws IOException {
+		LOGGER.info("================ testRejectsNonPositivePartitions ================");
+		new DrugFileSpiller().spill("input.txt", 0, null);
+	}
+}
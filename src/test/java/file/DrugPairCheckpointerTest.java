@@ -0,0 +1,67 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.Assert;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.SingleDrugAdministration;
+import calc.DrugPairAccumulator;
+
+public class DrugPairCheckpointerTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairCheckpointerTest.class);
+
+	private static final LocalDate DATE_1 = new LocalDate(2012, 12, 31);
+
+	@Test
+	public void testNoCheckpoint() throws IOException {
+		LOGGER.info("================ testNoCheckpoint ================");
+		File directory = Files.createTempDirectory("checkpoint").toFile();
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(
+				directory.getPath());
+		Assert.assertNull(checkpointer.readCheckpoint());
+	}
+
+	@Test
+	public void testWriteAndReadCheckpoint() throws IOException {
+		LOGGER.info("================ testWriteAndReadCheckpoint ================");
+		File directory = Files.createTempDirectory("checkpoint").toFile();
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(
+				directory.getPath());
+		DrugPairAccumulator accumulator = new DrugPairAccumulator();
+		accumulator.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "A"));
+		accumulator.add(new SingleDrugAdministration(
+				new AdministrationInstance("123", DATE_1), "B"));
+		accumulator.add(new SingleDrugAdministration(
+				new AdministrationInstance("456", DATE_1), "C"));
+		checkpointer.writeCheckpoint(new DrugPairCheckpoint("input.txt", 100,
+				1400000000000L, 42, accumulator));
+
+		DrugPairCheckpoint actual = checkpointer.readCheckpoint();
+		Assert.assertEquals("input.txt", actual.getInputFilename());
+		Assert.assertEquals(100, actual.getInputSize());
+		Assert.assertEquals(1400000000000L, actual.getInputModified());
+		Assert.assertEquals(42, actual.getInputOffset());
+		Assert.assertEquals(3, actual.getAccumulator()
+				.getDrugAdministrationCount());
+		Assert.assertEquals(
+				accumulator.getMapOfAdminInstanceToDrugsAdministered(),
+				actual.getAccumulator()
+						.getMapOfAdminInstanceToDrugsAdministered());
+		Assert.assertEquals(accumulator.getMapOfDrugPairToOccurrence(), actual
+				.getAccumulator().getMapOfDrugPairToOccurrence());
+
+		checkpointer.deleteCheckpoint();
+		Assert.assertNull(checkpointer.readCheckpoint());
+	}
+}
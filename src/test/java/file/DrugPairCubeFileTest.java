@@ -0,0 +1,131 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.AdministrationInstance;
+import api.SingleDrugAdministration;
+import calc.DrugPairCounts;
+import calc.DrugPairCube;
+import calc.MonthlyDrugPairAccumulator;
+
+public class DrugPairCubeFileTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairCubeFileTest.class);
+
+	private static final LocalDate JANUARY = new LocalDate(2019, 1, 15);
+	private static final LocalDate FEBRUARY = new LocalDate(2019, 2, 3);
+	private static final LocalDate MARCH = new LocalDate(2019, 3, 20);
+
+	private final DrugPairCubeFile _drugPairCubeFile = new DrugPairCubeFile();
+
+	private static void addPair(final MonthlyDrugPairAccumulator accumulator_,
+			final String patient_, final LocalDate date_, final String drugA_,
+			final String drugB_) {
+		accumulator_.add(new SingleDrugAdministration(
+				new AdministrationInstance(patient_, date_), drugA_));
+		accumulator_.add(new SingleDrugAdministration(
+				new AdministrationInstance(patient_, date_), drugB_));
+	}
+
+	@Test
+	public void testWriteAndQueryRange() throws IOException {
+		LOGGER.info("================ testWriteAndQueryRange ================");
+		MonthlyDrugPairAccumulator accumulator = new MonthlyDrugPairAccumulator();
+		addPair(accumulator, "123", JANUARY, "A", "B");
+		addPair(accumulator, "456", JANUARY, "A", "B");
+		addPair(accumulator, "123", FEBRUARY, "A", "B");
+		addPair(accumulator, "123", MARCH, "A", "C");
+		File file = File.createTempFile("cube", ".bin");
+		_drugPairCubeFile.write(accumulator.toCube(), file.getPath());
+
+		YearMonth february = new YearMonth(2019, 2);
+		DrugPairCube fromFebruary = _drugPairCubeFile.read(file.getPath(),
+				february, null);
+		Assert.assertEquals(2, fromFebruary.getMonths().size());
+		DrugPairCounts counts = fromFebruary.sumMonths(february, null);
+		Assert.assertEquals(1, counts.getOccurrence("A", "B"));
+		Assert.assertEquals(1, counts.getOccurrence("C", "A"));
+
+		DrugPairCube all = _drugPairCubeFile.read(file.getPath(), null, null);
+		Assert.assertEquals(3, all.sumMonths(null, null).getOccurrence("B", "A"));
+		Assert.assertEquals(2,
+				all.sumMonths(null, new YearMonth(2019, 1)).getOccurrence("A",
+						"B"));
+	}
+
+	@Test
+	public void testUpdateReplacesMonths() throws IOException {
+		LOGGER.info("================ testUpdateReplacesMonths ================");
+		MonthlyDrugPairAccumulator accumulator = new MonthlyDrugPairAccumulator();
+		addPair(accumulator, "123", JANUARY, "A", "B");
+		addPair(accumulator, "123", FEBRUARY, "A", "B");
+		DrugPairCube cube = accumulator.toCube();
+
+		MonthlyDrugPairAccumulator restated = new MonthlyDrugPairAccumulator();
+		addPair(restated, "123", FEBRUARY, "A", "B");
+		addPair(restated, "456", FEBRUARY, "A", "B");
+		addPair(restated, "123", MARCH, "A", "B");
+		cube.update(restated.toCube());
+
+		Assert.assertEquals(3, cube.getMonths().size());
+		Assert.assertEquals(4, cube.sumMonths(null, null).getOccurrence("A", "B"));
+	}
+
+	@Test
+	public void testUpdateAddsDisjointDays() throws IOException {
+		LOGGER.info("================ testUpdateAddsDisjointDays ================");
+		MonthlyDrugPairAccumulator firstDay = new MonthlyDrugPairAccumulator();
+		addPair(firstDay, "123", new LocalDate(2019, 1, 1), "A", "B");
+		File file = File.createTempFile("cube", ".bin");
+		_drugPairCubeFile.write(firstDay.toCube(), file.getPath());
+
+		MonthlyDrugPairAccumulator secondDay = new MonthlyDrugPairAccumulator();
+		addPair(secondDay, "123", new LocalDate(2019, 1, 2), "A", "B");
+		addPair(secondDay, "456", new LocalDate(2019, 1, 2), "A", "C");
+		DrugPairCube cube = _drugPairCubeFile.read(file.getPath(), null, null);
+		cube.update(secondDay.toCube());
+		_drugPairCubeFile.write(cube, file.getPath());
+
+		DrugPairCube all = _drugPairCubeFile.read(file.getPath(), null, null);
+		YearMonth january = new YearMonth(2019, 1);
+		Assert.assertEquals(2, all.getDays(january).size());
+		Assert.assertTrue(all.getDays(january).contains(1));
+		Assert.assertTrue(all.getDays(january).contains(2));
+		DrugPairCounts counts = all.sumMonths(null, null);
+		Assert.assertEquals(2, counts.getOccurrence("A", "B"));
+		Assert.assertEquals(1, counts.getOccurrence("A", "C"));
+	}
+
+	@Test
+	public void testUpdateRejectsPartialOverlap() {
+		LOGGER.info("================ testUpdateRejectsPartialOverlap ================");
+		MonthlyDrugPairAccumulator twoDays = new MonthlyDrugPairAccumulator();
+		addPair(twoDays, "123", new LocalDate(2019, 1, 1), "A", "B");
+		addPair(twoDays, "123", new LocalDate(2019, 1, 2), "A", "B");
+		DrugPairCube cube = twoDays.toCube();
+
+		MonthlyDrugPairAccumulator overlapping = new MonthlyDrugPairAccumulator();
+		addPair(overlapping, "123", new LocalDate(2019, 1, 2), "A", "B");
+		addPair(overlapping, "123", new LocalDate(2019, 1, 3), "A", "B");
+		addPair(overlapping, "123", FEBRUARY, "A", "B");
+		try {
+			cube.update(overlapping.toCube());
+			Assert.fail("Expected a partial overlap of days to be rejected.");
+		} catch (IllegalArgumentException e) {
+			LOGGER.info("Rejected as expected: {}", e.getMessage());
+		}
+		// Nothing was changed, not even the months without an overlap.
+		Assert.assertEquals(1, cube.getMonths().size());
+		Assert.assertEquals(2, cube.sumMonths(null, null).getOccurrence("A", "B"));
+	}
+}
@@ -0,0 +1,76 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class OffsetLineReaderTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(OffsetLineReaderTest.class);
+
+	@Test
+	public void testReadsLinesAcrossBufferBoundaries() throws IOException {
+		LOGGER.info("================ testReadsLinesAcrossBufferBoundaries ================");
+		List<String> lines = new ArrayList<String>();
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			longLine.append((char) ('a' + i % 26));
+		}
+		for (int i = 0; i < 20000; i++) {
+			lines.add(i + ",2012-12-31,D" + i);
+			if (i % 5000 == 0) {
+				lines.add("");
+				lines.add(longLine.toString());
+			}
+		}
+		File file = File.createTempFile("offset", ".txt");
+		file.deleteOnExit();
+		PrintWriter w = new PrintWriter(file);
+		try {
+			for (int i = 0; i < lines.size(); i++) {
+				w.print(lines.get(i));
+				// Mix line terminators, and leave the last line unterminated.
+				if (i < lines.size() - 1) {
+					w.print(i % 2 == 0 ? "\n" : "\r\n");
+				}
+			}
+		} finally {
+			w.close();
+		}
+
+		List<Long> offsets = new ArrayList<Long>();
+		OffsetLineReader reader = new OffsetLineReader(file.getPath(), 0);
+		try {
+			String line;
+			int i = 0;
+			while ((line = reader.readLine()) != null) {
+				Assert.assertEquals(lines.get(i++), line);
+				offsets.add(reader.getOffset());
+			}
+			Assert.assertEquals(lines.size(), i);
+			Assert.assertEquals(file.length(), reader.getOffset());
+		} finally {
+			reader.close();
+		}
+
+		// Reopening at a reported offset continues with the next line.
+		int index = lines.size() / 2;
+		reader = new OffsetLineReader(file.getPath(), offsets.get(index));
+		try {
+			Assert.assertEquals(lines.get(index + 1), reader.readLine());
+			Assert.assertEquals(offsets.get(index + 1).longValue(),
+					reader.getOffset());
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import calc.DrugPairAccumulator;
+import file.DrugAdministrationFileGenerator;
+import file.DrugPairCheckpoint;
+import file.DrugPairCheckpointer;
+
+public class CheckpointedDrugPairRunTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(CheckpointedDrugPairRunTest.class);
+
+	private static File createInput() throws IOException {
+		File input = File.createTempFile("checkpointed", ".txt");
+		input.deleteOnExit();
+		PrintWriter w = new PrintWriter(input);
+		try {
+			w.println("123,2012-12-31,A");
+			w.println("123,2012-12-31,B");
+			w.println("456,2012-12-31,A");
+			w.println("456,2012-12-31,B");
+		} finally {
+			w.close();
+		}
+		return input;
+	}
+
+	@Test
+	public void testResumesFromCheckpointOfSameInput() throws IOException {
+		LOGGER.info("================ testResumesFromCheckpointOfSameInput ================");
+		File input = createInput();
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(Files
+				.createTempDirectory("checkpoint").toString());
+		checkpointer.writeCheckpoint(new DrugPairCheckpoint(input
+				.getAbsolutePath(), input.length(), input.lastModified(), 0,
+				new DrugPairAccumulator()));
+		Assert.assertEquals(1, new CheckpointedDrugPairRun(input.getPath(),
+				checkpointer, 1).run(2, true).size());
+	}
+
+	@Test
+	public void testResumesPartWayThroughInput() throws IOException {
+		LOGGER.info("================ testResumesPartWayThroughInput ================");
+		File input = File.createTempFile("checkpointed", ".txt");
+		input.deleteOnExit();
+		new DrugAdministrationFileGenerator(50, 20, 2, 6, 7).generate(input,
+				1000);
+		Set<DrugPair> expected = new CheckpointedDrugPairRun(input.getPath(),
+				new DrugPairCheckpointer(Files.createTempDirectory(
+						"checkpoint").toString()), Integer.MAX_VALUE).run(1,
+				false);
+
+		// Fail on the second checkpoint, as if the run had been killed after
+		// the first.
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(Files
+				.createTempDirectory("checkpoint").toString()) {
+			private int _checkpoints;
+
+			@Override
+			public long writeCheckpoint(final DrugPairCheckpoint checkpoint_)
+					throws IOException {
+				if (++_checkpoints > 1) {
+					throw new IOException("Simulated crash.");
+				}
+				return super.writeCheckpoint(checkpoint_);
+			}
+		};
+		try {
+			new CheckpointedDrugPairRun(input.getPath(), checkpointer, 377)
+					.run(1, false);
+			Assert.fail("Did not stop at the second checkpoint.");
+		} catch (IOException e) {
+			Assert.assertEquals("Simulated crash.", e.getMessage());
+		}
+		DrugPairCheckpoint checkpoint = checkpointer.readCheckpoint();
+		Assert.assertTrue(checkpoint.getInputOffset() > 0);
+		Assert.assertTrue(checkpoint.getInputOffset() < input.length());
+		Assert.assertEquals(377, checkpoint.getAccumulator()
+				.getDrugAdministrationCount());
+
+		Assert.assertEquals(expected, new CheckpointedDrugPairRun(
+				input.getPath(), checkpointer, Integer.MAX_VALUE).run(1, true));
+		// The caller deletes the checkpoint once the output is written.
+		Assert.assertNotNull(checkpointer.readCheckpoint());
+	}
+
+	@Test
+	public void testRefusesToResumeChangedInput() throws IOException {
+		LOGGER.info("================ testRefusesToResumeChangedInput ================");
+		File input = createInput();
+		DrugPairCheckpointer checkpointer = new DrugPairCheckpointer(Files
+				.createTempDirectory("checkpoint").toString());
+		checkpointer.writeCheckpoint(new DrugPairCheckpoint(input
+				.getAbsolutePath(), input.length() - 1, input.lastModified(),
+				0, new DrugPairAccumulator()));
+		try {
+			new CheckpointedDrugPairRun(input.getPath(), checkpointer, 1).run(
+					2, true);
+			Assert.fail("Resumed from a checkpoint of a different input.");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage(),
+					e.getMessage().contains("has changed"));
+		}
+		// The checkpoint is kept for the right input.
+		Assert.assertNotNull(checkpointer.readCheckpoint());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNonPositiveInterval() throws IOException {
+		LOGGER.info("================ testRejectsNonPositiveInterval ================");
+		new CheckpointedDrugPairRun("input.txt", new DrugPairCheckpointer(
+				Files.createTempDirectory("checkpoint").toString()), 0);
+	}
+}
@@ -0,0 +1,142 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DrugPairBatchRunTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairBatchRunTest.class);
+
+	private static final long MEMORY_BUDGET_BYTES = 64 * 1024 * 1024;
+	private static final long SAMPLE_ROWS = 1000;
+
+	@Test
+	public void testReadManifest() throws IOException, ParseException {
+		LOGGER.info("================ testReadManifest ================");
+		File manifest = writeFile("# nightly jobs", "",
+				"--in a.txt --min 5 --out a5.pairs", "  --in a.txt  ");
+
+		List<DrugPairJob> jobs = DrugPairBatchRun.readManifest(
+				manifest.getPath(), 25);
+		Assert.assertEquals(2, jobs.size());
+		Assert.assertEquals(3, jobs.get(0).getLineNumber());
+		Assert.assertEquals("a.txt", jobs.get(0).getInputFilename());
+		Assert.assertEquals("a5.pairs", jobs.get(0).getOutputFilename());
+		Assert.assertEquals(5, jobs.get(0).getMinOccurrence());
+		Assert.assertEquals("a.txt.min25.pairs", jobs.get(1)
+				.getOutputFilename());
+		Assert.assertEquals(25, jobs.get(1).getMinOccurrence());
+	}
+
+	@Test(expected = ParseException.class)
+	public void testReadManifestWithSharedOutput() throws IOException,
+			ParseException {
+		LOGGER.info("================ testReadManifestWithSharedOutput ================");
+		File manifest = writeFile("--in a.txt --out same.pairs",
+				"--in b.txt --out same.pairs");
+		DrugPairBatchRun.readManifest(manifest.getPath(), 25);
+	}
+
+	@Test(expected = ParseException.class)
+	public void testReadManifestWithSharedOutputSpelledDifferently()
+			throws IOException, ParseException {
+		LOGGER.info("================ testReadManifestWithSharedOutputSpelledDifferently ================");
+		File manifest = writeFile("--in a.txt --out same.pairs",
+				"--in b.txt --out ./out/../same.pairs");
+		DrugPairBatchRun.readManifest(manifest.getPath(), 25);
+	}
+
+	@Test
+	public void testGroupJobsByNormalizedInput() {
+		LOGGER.info("================ testGroupJobsByNormalizedInput ================");
+		String absolute = new File("a.txt").getAbsolutePath();
+		List<DrugPairJob> jobs = Arrays.asList(new DrugPairJob(1, "a.txt",
+				"a1.pairs", 1), new DrugPairJob(2, "./a.txt", "a2.pairs", 2),
+				new DrugPairJob(3, absolute, "a3.pairs", 3), new DrugPairJob(4,
+						"b/../b.txt", "b.pairs", 1));
+		Map<Path, List<DrugPairJob>> jobsByInput = DrugPairBatchRun
+				.groupJobsByInput(jobs);
+		Assert.assertEquals(2, jobsByInput.size());
+		Assert.assertEquals(3, jobsByInput.get(Paths.get(absolute)).size());
+	}
+
+	@Test(expected = ParseException.class)
+	public void testReadManifestWithUnsupportedOption() throws IOException,
+			ParseException {
+		LOGGER.info("================ testReadManifestWithUnsupportedOption ================");
+		File manifest = writeFile("--in a.txt --stats");
+		DrugPairBatchRun.readManifest(manifest.getPath(), 25);
+	}
+
+	@Test
+	public void testRunJobsSharingInput() throws IOException,
+			InterruptedException {
+		LOGGER.info("================ testRunJobsSharingInput ================");
+		File input = writeFile("123,2014-01-01,A", "123,2014-01-01,B",
+				"456,2014-01-01,A", "456,2014-01-01,B", "456,2014-01-01,C");
+		File output1 = File.createTempFile("batch", ".pairs");
+		File output2 = File.createTempFile("batch", ".pairs");
+		File missingOutput = File.createTempFile("batch", ".pairs");
+		output1.deleteOnExit();
+		output2.deleteOnExit();
+		missingOutput.deleteOnExit();
+		List<DrugPairJob> jobs = Arrays.asList(
+				new DrugPairJob(1, input.getPath(), output1.getPath(), 1),
+				new DrugPairJob(2, input.getPath(), output2.getPath(), 2),
+				new DrugPairJob(3, input.getPath() + ".missing", missingOutput
+						.getPath(), 1));
+
+		boolean succeeded = new DrugPairBatchRun(jobs, 2, MEMORY_BUDGET_BYTES,
+				SAMPLE_ROWS).run();
+		Assert.assertFalse(succeeded);
+		Assert.assertEquals(3, Files.readAllLines(output1.toPath()).size());
+		List<String> lines = Files.readAllLines(output2.toPath());
+		Assert.assertEquals(1, lines.size());
+		Assert.assertTrue(lines.get(0).equals("A,B")
+				|| lines.get(0).equals("B,A"));
+	}
+
+	@Test
+	public void testRunJobWithUnwritableOutput() throws IOException,
+			InterruptedException {
+		LOGGER.info("================ testRunJobWithUnwritableOutput ================");
+		File input = writeFile("123,2014-01-01,A", "123,2014-01-01,B");
+		File output = File.createTempFile("batch", ".pairs");
+		output.deleteOnExit();
+		File unwritableOutput = new File(input.getPath() + ".missing",
+				"batch.pairs");
+		List<DrugPairJob> jobs = Arrays.asList(
+				new DrugPairJob(1, input.getPath(), output.getPath(), 1),
+				new DrugPairJob(2, input.getPath(), unwritableOutput.getPath(),
+						1));
+
+		boolean succeeded = new DrugPairBatchRun(jobs, 1, MEMORY_BUDGET_BYTES,
+				SAMPLE_ROWS).run();
+		Assert.assertFalse(succeeded);
+		Assert.assertFalse(unwritableOutput.exists());
+		Assert.assertEquals(1, Files.readAllLines(output.toPath()).size());
+	}
+
+	private static File writeFile(final String... lines_) throws IOException {
+		File file = File.createTempFile("batch", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList(lines_),
+				StandardCharsets.UTF_8);
+		return file;
+	}
+}
@@ -0,0 +1,195 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import api.SingleDrugAdministration;
+import calc.DrugPairCalculator;
+import calc.ExecutionPlan;
+import calc.ExecutionPlanner;
+import file.DrugAdministrationFileGenerator;
+import file.DrugFileParser;
+import file.DrugPairFileWriter;
+
+/**
+ * Runs the pipeline from {@link DrugFileParser} through
+ * {@link DrugPairCalculator} to {@link DrugPairFileWriter} on a generated
+ * input of fixed size, and the planned run the command line uses by default:
+ * the sampling pass that plans the calculation and the counting of
+ * {@link PlannedDrugPairRun}. Checks the allocated bytes per input row and the
+ * rows per second of each stage against the budgets in
+ * performance-baseline.properties. Excluded from the normal build; run with
+ * mvn test -Pperf.
+ */
+public class DrugPairPipelinePerformanceTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(DrugPairPipelinePerformanceTest.class);
+
+	private static final String BASELINE_RESOURCE = "/performance-baseline.properties";
+
+	private static final int ROWS = 200000;
+	private static final int PATIENTS = 20000;
+	private static final int DRUGS = 300;
+	private static final int MIN_DRUGS_PER_VISIT = 1;
+	private static final int MAX_DRUGS_PER_VISIT = 6;
+	private static final long SEED = 20140101L;
+	private static final int MIN_OCCURRENCE = 5;
+
+	private static final int WARMUP_RUNS = 2;
+	private static final int MEASURED_RUNS = 3;
+
+	private static final String[] STAGES = { "parse", "calculate", "write",
+			"pipeline", "plan", "count" };
+
+	private final com.sun.management.ThreadMXBean _threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	@Test
+	public void testPipelineWithinBudgets() throws IOException {
+		LOGGER.info("================ testPipelineWithinBudgets ================");
+		File input = File.createTempFile("performance", ".txt");
+		File output = File.createTempFile("performance", ".pairs");
+		input.deleteOnExit();
+		output.deleteOnExit();
+		new DrugAdministrationFileGenerator(PATIENTS, DRUGS,
+				MIN_DRUGS_PER_VISIT, MAX_DRUGS_PER_VISIT, SEED).generate(
+				input, ROWS);
+
+		for (int run = 0; run < WARMUP_RUNS; run++) {
+			runPipeline(input, output);
+		}
+		// Keep the best run of each stage: the least allocation and the
+		// highest throughput, which are the least disturbed by noise.
+		Map<String, long[]> best = null;
+		for (int run = 0; run < MEASURED_RUNS; run++) {
+			Map<String, long[]> measured = runPipeline(input, output);
+			if (best == null) {
+				best = measured;
+			} else {
+				for (String stage : STAGES) {
+					best.get(stage)[0] = Math.min(best.get(stage)[0],
+							measured.get(stage)[0]);
+					best.get(stage)[1] = Math.min(best.get(stage)[1],
+							measured.get(stage)[1]);
+				}
+			}
+		}
+
+		Properties baseline = loadBaseline();
+		List<String> violations = new ArrayList<String>();
+		for (String stage : STAGES) {
+			double bytesPerRow = (double) best.get(stage)[0] / ROWS;
+			double rowsPerSecond = ROWS / (best.get(stage)[1] / 1e9);
+			double maxBytesPerRow = Double.parseDouble(baseline
+					.getProperty(stage + ".maxBytesPerRow"));
+			double minRowsPerSecond = Double.parseDouble(baseline
+					.getProperty(stage + ".minRowsPerSecond"));
+			String measurement = String.format(
+					"%-9s %10.0f bytes/row (budget %.0f) %12.0f rows/s (budget %.0f)",
+					stage, bytesPerRow, maxBytesPerRow, rowsPerSecond,
+					minRowsPerSecond);
+			System.out.println(measurement);
+			if (bytesPerRow > maxBytesPerRow) {
+				violations.add(stage + " allocated " + Math.round(bytesPerRow)
+						+ " bytes/row, over the budget of "
+						+ Math.round(maxBytesPerRow));
+			}
+			if (rowsPerSecond < minRowsPerSecond) {
+				violations.add(stage + " ran at " + Math.round(rowsPerSecond)
+						+ " rows/s, under the budget of "
+						+ Math.round(minRowsPerSecond));
+			}
+		}
+		Assert.assertTrue("Performance budgets exceeded: " + violations,
+				violations.isEmpty());
+	}
+
+	/**
+	 * Run each stage once on this thread, measuring the bytes it allocated and
+	 * the nanoseconds it took.
+	 * 
+	 * @return Map of stage name to {allocated bytes, elapsed nanoseconds}.
+	 */
+	private Map<String, long[]> runPipeline(final File input_,
+			final File output_) throws IOException {
+		long threadId = Thread.currentThread().getId();
+		Map<String, long[]> measured = new LinkedHashMap<String, long[]>();
+
+		long startBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long startNanos = System.nanoTime();
+		List<SingleDrugAdministration> drugAdmins = new DrugFileParser()
+				.parseFile(input_.getPath());
+		long parsedBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long parsedNanos = System.nanoTime();
+		Assert.assertEquals(ROWS, drugAdmins.size());
+
+		Set<DrugPair> drugPairs = DrugPairCalculator
+				.getDrugPairsWithMinOccurence(drugAdmins, MIN_OCCURRENCE);
+		long calculatedBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long calculatedNanos = System.nanoTime();
+
+		new DrugPairFileWriter().writePairs(drugPairs, output_.getPath());
+		long writtenBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long writtenNanos = System.nanoTime();
+
+		measured.put("parse", new long[] { parsedBytes - startBytes,
+				parsedNanos - startNanos });
+		measured.put("calculate", new long[] { calculatedBytes - parsedBytes,
+				calculatedNanos - parsedNanos });
+		measured.put("write", new long[] { writtenBytes - calculatedBytes,
+				writtenNanos - calculatedNanos });
+		measured.put("pipeline", new long[] { writtenBytes - startBytes,
+				writtenNanos - startNanos });
+
+		// The planned run reads the input again, as the command line does.
+		long planStartBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long planStartNanos = System.nanoTime();
+		ExecutionPlan plan = DrugPairCalculationMain.planDrugPairCalculation(
+				input_.getPath(),
+				DrugPairCalculationMain.DEFAULT_PLAN_SAMPLE_ROWS,
+				ExecutionPlanner.getDefaultMemoryBudgetBytes(), null, null);
+		long plannedBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long plannedNanos = System.nanoTime();
+
+		Set<DrugPair> plannedDrugPairs = new PlannedDrugPairRun(
+				input_.getPath(), plan).run(MIN_OCCURRENCE);
+		long countedBytes = _threadMXBean.getThreadAllocatedBytes(threadId);
+		long countedNanos = System.nanoTime();
+		Assert.assertEquals(drugPairs, plannedDrugPairs);
+
+		measured.put("plan", new long[] { plannedBytes - planStartBytes,
+				plannedNanos - planStartNanos });
+		measured.put("count", new long[] { countedBytes - plannedBytes,
+				countedNanos - plannedNanos });
+		return measured;
+	}
+
+	private static Properties loadBaseline() throws IOException {
+		InputStream in = DrugPairPipelinePerformanceTest.class
+				.getResourceAsStream(BASELINE_RESOURCE);
+		Assert.assertNotNull("Missing " + BASELINE_RESOURCE, in);
+		Properties baseline = new Properties();
+		try {
+			baseline.load(in);
+		} finally {
+			in.close();
+		}
+		return baseline;
+	}
+}
@@ -0,0 +1,69 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import calc.DrugPairAccumulator;
+import calc.ExecutionPlan;
+import calc.ExecutionPlan.CountingStructure;
+import calc.ExecutionPlanner;
+import file.CardinalityEstimator;
+
+public class MultiFileDrugPairRunTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(MultiFileDrugPairRunTest.class);
+
+	private static final long MEMORY_BUDGET_BYTES = 64 * 1024 * 1024;
+
+	private static String writeFile(final String... lines_) throws IOException {
+		File file = File.createTempFile("shard", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList(lines_),
+				StandardCharsets.UTF_8);
+		return file.getPath();
+	}
+
+	@Test
+	public void testInstanceSpreadAcrossFiles() throws IOException,
+			InterruptedException {
+		LOGGER.info("================ testInstanceSpreadAcrossFiles ================");
+		List<String> filenames = new ArrayList<String>();
+		// Patient 123 on 2014-01-01 was given A and B in one file and B and C
+		// in another; the instance holds A, B and C.
+		filenames.add(writeFile("123,2014-01-01,A", "123,2014-01-01,B",
+				"456,2014-01-01,A"));
+		filenames.add(writeFile("123,2014-01-01,B", "123,2014-01-01,C",
+				"456,2014-01-01,C"));
+		filenames.add(writeFile("789,2014-01-02,A", "789,2014-01-02,B"));
+
+		for (CountingStructure countingStructure : CountingStructure.values()) {
+			ExecutionPlan plan = new ExecutionPlanner().plan(
+					new CardinalityEstimator().estimate(filenames.get(0), 100),
+					MEMORY_BUDGET_BYTES, countingStructure, 1);
+			DrugPairAccumulator accumulator = new MultiFileDrugPairRun(
+					filenames, 2, plan).accumulate();
+			Assert.assertEquals(3, accumulator
+					.getMapOfAdminInstanceToDrugsAdministered().size());
+			Assert.assertEquals(2,
+					accumulator.getDrugPairCounts().getOccurrence("A", "B"));
+			Assert.assertEquals(2,
+					accumulator.getDrugPairCounts().getOccurrence("A", "C"));
+			Assert.assertEquals(1,
+					accumulator.getDrugPairCounts().getOccurrence("B", "C"));
+			Assert.assertEquals(3, accumulator.getInstanceCount("A"));
+			Assert.assertEquals(2, accumulator.getInstanceCount("B"));
+		}
+	}
+}
@@ -0,0 +1,487 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import file.DrugAdministrationFileGenerator;
+
+/**
+ * Characterizes how the drug pair pipelines scale. Runs each pipeline over a
+ * matrix of generated input sizes and drugs-per-visit ranges, and, for the
+ * pipeline that parses many files in parallel, thread counts. Each run is a
+ * {@link ScalingRun} in a fresh JVM, so its peak heap and resident set size
+ * are its own. The best of the repeats of each run is reported by
+ * {@link ScalingReport} as scaling.csv and scaling.html in the output
+ * directory, with any superlinear growth printed and flagged.
+ *
+ * Unlike the performance tests this checks no budgets and takes minutes; run
+ * it with mvn verify -Pscaling -DskipTests, passing options in -Dscaling.args.
+ *
+ * Usage: ScalingHarness [--out dir] [--rows n,...] [--drugs-per-visit
+ * min-max,...] [--threads n,...] [--engines batch,planned,files] [--drugs n]
+ * [--shards n] [--repeats n] [--heap size] [--min n] [--superlinear-threshold
+ * exponent]
+ */
+public class ScalingHarness {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ScalingHarness.class);
+
+	private static final String DEFAULT_OUT = "target/scaling";
+	private static final String DEFAULT_ROWS = "100000,200000,400000,800000";
+	private static final String DEFAULT_DRUGS_PER_VISIT = "1-3,2-8,10-20";
+	private static final String DEFAULT_THREADS = "1,2,4";
+	private static final String DEFAULT_ENGINES = ScalingRun.BATCH + ","
+			+ ScalingRun.PLANNED + "," + ScalingRun.FILES;
+	private static final int DEFAULT_DRUGS = 300;
+	private static final int DEFAULT_SHARDS = 8;
+	private static final int DEFAULT_REPEATS = 1;
+	private static final String DEFAULT_HEAP = "2g";
+	private static final int DEFAULT_MINIMUM_OCCURRENCES = 5;
+	private static final double DEFAULT_SUPERLINEAR_THRESHOLD = 1.2;
+
+	// Patients grow with the input, so the shape of the data stays the same.
+	private static final int ROWS_PER_PATIENT = 20;
+	private static final long SEED = 20140101L;
+
+	private final File _outDirectory;
+	private final int _drugs;
+	private final int _shards;
+	private final int _repeats;
+	private final String _heap;
+	private final int _minOccurrence;
+
+	private int _failedCells;
+
+	/**
+	 * Constructor
+	 *
+	 * @param outDirectory_
+	 *            The directory to write inputs, logs and reports to.
+	 * @param drugs_
+	 *            The number of distinct drugs in the generated inputs.
+	 * @param shards_
+	 *            The number of files each input is split into for the files
+	 *            engine.
+	 * @param repeats_
+	 *            The number of times to run each cell of the matrix.
+	 * @param heap_
+	 *            The maximum heap of each run, as for -Xmx.
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pairs written.
+	 */
+	public ScalingHarness(final File outDirectory_, final int drugs_,
+			final int shards_, final int repeats_, final String heap_,
+			final int minOccurrence_) {
+		_outDirectory = outDirectory_;
+		_drugs = drugs_;
+		_shards = shards_;
+		_repeats = repeats_;
+		_heap = heap_;
+		_minOccurrence = minOccurrence_;
+	}
+
+	/**
+	 * Run every cell of the matrix.
+	 *
+	 * @param engines_
+	 *            The pipelines to run.
+	 * @param rows_
+	 *            The input sizes.
+	 * @param drugsPerVisit_
+	 *            The drugs-per-visit ranges, as min-max.
+	 * @param threads_
+	 *            The thread counts, for the engines that use threads.
+	 * @return The measurements of the best repeat of each cell that
+	 *         succeeded.
+	 * @throws IOException
+	 *             If an input could not be generated.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for a run.
+	 */
+	public List<ScalingMeasurement> run(final List<String> engines_,
+			final List<Long> rows_, final List<String> drugsPerVisit_,
+			final List<Integer> threads_) throws IOException,
+			InterruptedException {
+		new File(_outDirectory, "inputs").mkdirs();
+		new File(_outDirectory, "runs").mkdirs();
+		int cells = 0;
+		for (String engine : engines_) {
+			cells += getThreads(engine, threads_).size() * rows_.size()
+					* drugsPerVisit_.size();
+		}
+
+		List<ScalingMeasurement> measurements = new ArrayList<ScalingMeasurement>();
+		int cell = 0;
+		for (String drugsPerVisit : drugsPerVisit_) {
+			for (long rows : rows_) {
+				File input = generateInput(rows, drugsPerVisit);
+				for (String engine : engines_) {
+					String engineInput = ScalingRun.FILES.equals(engine) ? shard(
+							input).getPath() : input.getPath();
+					for (int threads : getThreads(engine, threads_)) {
+						cell++;
+						List<ScalingMeasurement> best = runCell(engine,
+								engineInput, rows, drugsPerVisit, threads);
+						if (best == null) {
+							_failedCells++;
+							System.out.println(String.format(Locale.ROOT,
+									"[%d/%d] %s %d rows %s drugs/visit %d threads: failed",
+									cell, cells, engine, rows, drugsPerVisit,
+									threads));
+							continue;
+						}
+						measurements.addAll(best);
+						ScalingMeasurement total = best.get(best.size() - 1);
+						System.out.println(String.format(Locale.ROOT,
+								"[%d/%d] %s %d rows %s drugs/visit %d threads: "
+										+ "%.0f ms, %.0f rows/s, peak heap %.0f MB, "
+										+ "peak RSS %.0f MB, GC %d ms",
+								cell, cells, engine, rows, drugsPerVisit,
+								threads, total.getWallMillis(),
+								total.getRowsPerSecond(),
+								total.getPeakHeapMegabytes(),
+								total.getPeakRssMegabytes(),
+								total.getGcMillis()));
+					}
+				}
+			}
+		}
+		return measurements;
+	}
+
+	/**
+	 * @return The thread counts to run an engine with; only the files engine
+	 *         uses more than one thread.
+	 */
+	private static List<Integer> getThreads(final String engine_,
+			final List<Integer> threads_) {
+		if (ScalingRun.FILES.equals(engine_)) {
+			return threads_;
+		}
+		return Collections.singletonList(1);
+	}
+
+	/**
+	 * Run one cell of the matrix the given number of times, each in a fresh
+	 * JVM.
+	 *
+	 * @return The measurements of the repeat with the shortest total wall
+	 *         time, or null if every repeat failed.
+	 */
+	private List<ScalingMeasurement> runCell(final String engine_,
+			final String input_, final long rows_, final String drugsPerVisit_,
+			final int threads_) throws IOException, InterruptedException {
+		String name = engine_ + "-" + rows_ + "-" + drugsPerVisit_ + "-"
+				+ threads_;
+		List<ScalingMeasurement> best = null;
+		for (int repeat = 1; repeat <= _repeats; repeat++) {
+			File runDirectory = new File(_outDirectory, "runs");
+			File result = new File(runDirectory, name + "-" + repeat + ".csv");
+			File log = new File(runDirectory, name + "-" + repeat + ".log");
+			File pairs = new File(runDirectory, name + ".pairs");
+			result.delete();
+			List<String> command = Arrays.asList(
+					new File(System.getProperty("java.home"), "bin/java")
+							.getPath(),
+					"-Xmx" + _heap,
+					"-Dorg.slf4j.simpleLogger.defaultLogLevel=warn", "-cp",
+					System.getProperty("java.class.path"),
+					ScalingRun.class.getName(), engine_, input_,
+					pairs.getPath(), Long.toString(rows_), drugsPerVisit_,
+					Integer.toString(threads_),
+					Integer.toString(_minOccurrence), result.getPath());
+			LOGGER.info("Running {}.", command);
+			Process process = new ProcessBuilder(command)
+					.redirectErrorStream(true).redirectOutput(log).start();
+			int exitCode = process.waitFor();
+			pairs.delete();
+			if (exitCode != 0 || !result.exists()) {
+				LOGGER.error("Run {} failed with exit code {}; see {}.", name
+						+ "-" + repeat, exitCode, log);
+				continue;
+			}
+			List<ScalingMeasurement> measurements = readMeasurements(result);
+			if (best == null
+					|| measurements.get(measurements.size() - 1)
+							.getWallNanos() < best.get(best.size() - 1)
+							.getWallNanos()) {
+				best = measurements;
+			}
+		}
+		return best;
+	}
+
+	private static List<ScalingMeasurement> readMeasurements(final File file_)
+			throws IOException {
+		List<ScalingMeasurement> measurements = new ArrayList<ScalingMeasurement>();
+		BufferedReader r = new BufferedReader(new FileReader(file_));
+		try {
+			String line;
+			while ((line = r.readLine()) != null) {
+				measurements.add(ScalingMeasurement.parse(line));
+			}
+		} finally {
+			r.close();
+		}
+		return measurements;
+	}
+
+	/**
+	 * Generate an input, or reuse one generated before: the same size and
+	 * drugs per visit always give the same file.
+	 */
+	private File generateInput(final long rows_, final String drugsPerVisit_)
+			throws IOException {
+		File input = new File(new File(_outDirectory, "inputs"), "rows-"
+				+ rows_ + "-visit-" + drugsPerVisit_ + "-drugs-" + _drugs
+				+ ".csv");
+		if (!input.exists()) {
+			String[] range = drugsPerVisit_.split("-");
+			LOGGER.info("Generating {}.", input);
+			File partial = new File(input.getPath() + ".tmp");
+			new DrugAdministrationFileGenerator((int) Math.max(1, rows_
+					/ ROWS_PER_PATIENT), _drugs, Integer.parseInt(range[0]),
+					Integer.parseInt(range[1]), SEED).generate(partial, rows_);
+			if (!partial.renameTo(input)) {
+				throw new IOException("Could not rename " + partial + " to "
+						+ input);
+			}
+		}
+		return input;
+	}
+
+	/**
+	 * Split an input into consecutive runs of rows, like daily files, or reuse
+	 * a split made before.
+	 *
+	 * @return The directory of the parts.
+	 */
+	private File shard(final File input_) throws IOException {
+		File directory = new File(input_.getPath() + ".shards-" + _shards);
+		if (directory.isDirectory()) {
+			return directory;
+		}
+		long rows = 0;
+		BufferedReader r = new BufferedReader(new FileReader(input_));
+		try {
+			while (r.readLine() != null) {
+				rows++;
+			}
+		} finally {
+			r.close();
+		}
+		File partial = new File(directory.getPath() + ".tmp");
+		partial.mkdirs();
+		r = new BufferedReader(new FileReader(input_));
+		BufferedWriter w = null;
+		try {
+			long row = 0;
+			int currentShard = -1;
+			String line;
+			while ((line = r.readLine()) != null) {
+				int shard = (int) (row * _shards / Math.max(1, rows));
+				if (shard != currentShard) {
+					if (w != null) {
+						w.close();
+					}
+					w = new BufferedWriter(new FileWriter(new File(partial,
+							String.format(Locale.ROOT, "part-%03d.csv", shard))));
+					currentShard = shard;
+				}
+				w.write(line);
+				w.newLine();
+				row++;
+			}
+		} finally {
+			r.close();
+			if (w != null) {
+				w.close();
+			}
+		}
+		if (!partial.renameTo(directory)) {
+			throw new IOException("Could not rename " + partial + " to "
+					+ directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * @return Where the measurements are being taken.
+	 */
+	private String describeEnvironment() {
+		return String.format(Locale.ROOT,
+				"Measured %s on %d available processors, %s %s, Java %s; "
+						+ "each run in its own JVM with -Xmx%s. "
+						+ "%d distinct drugs, %d input rows per patient, "
+						+ "minimum occurrence %d, best of %d repeats.",
+				new DateTime().toString("yyyy-MM-dd HH:mm"), Runtime
+						.getRuntime().availableProcessors(), System
+						.getProperty("os.name"), System
+						.getProperty("os.arch"), System
+						.getProperty("java.version"), _heap, _drugs,
+				ROWS_PER_PATIENT, _minOccurrence, _repeats);
+	}
+
+	private static Options getOptions() {
+		Options options = new Options();
+		options.addOption(OptionBuilder.withLongOpt("out").withArgName("dir")
+				.hasArg().withDescription("directory to write reports to")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("rows")
+				.withArgName("n,...").hasArg()
+				.withDescription("input sizes in rows").create());
+		options.addOption(OptionBuilder.withLongOpt("drugs-per-visit")
+				.withArgName("min-max,...").hasArg()
+				.withDescription("ranges of drugs per visit").create());
+		options.addOption(OptionBuilder.withLongOpt("threads")
+				.withArgName("n,...").hasArg()
+				.withDescription("thread counts of the files engine").create());
+		options.addOption(OptionBuilder.withLongOpt("engines")
+				.withArgName("engine,...").hasArg()
+				.withDescription("pipelines to run: batch, planned, files")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("drugs").withArgName("n")
+				.hasArg().withDescription("distinct drugs in the inputs")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("shards")
+				.withArgName("n").hasArg()
+				.withDescription("files per input for the files engine")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("repeats")
+				.withArgName("n").hasArg()
+				.withDescription("runs per cell, of which the best is kept")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("heap")
+				.withArgName("size").hasArg()
+				.withDescription("maximum heap of each run, as for -Xmx")
+				.create());
+		options.addOption(OptionBuilder.withLongOpt("min").withArgName("n")
+				.hasArg().withDescription("minimum occurrences").create());
+		options.addOption(OptionBuilder.withLongOpt("superlinear-threshold")
+				.withArgName("exponent").hasArg()
+				.withDescription("scaling exponent above which to flag growth")
+				.create());
+		return options;
+	}
+
+	private static List<Long> parseLongs(final String list_) {
+		List<Long> values = new ArrayList<Long>();
+		for (String value : list_.split(",")) {
+			values.add(Long.valueOf(value.trim()));
+		}
+		Collections.sort(values);
+		return values;
+	}
+
+	private static List<Integer> parseInts(final String list_) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (String value : list_.split(",")) {
+			values.add(Integer.valueOf(value.trim()));
+		}
+		Collections.sort(values);
+		return values;
+	}
+
+	private static List<String> parseStrings(final String list_) {
+		List<String> values = new ArrayList<String>();
+		for (String value : list_.split(",")) {
+			values.add(value.trim());
+		}
+		return values;
+	}
+
+	public static void main(final String[] args_) {
+		CommandLineParser parser = new BasicParser();
+		Options options = getOptions();
+		try {
+			CommandLine line = parser.parse(options, args_);
+			List<String> engines = parseStrings(line.getOptionValue("engines",
+					DEFAULT_ENGINES));
+			for (String engine : engines) {
+				if (!Arrays.asList(ScalingRun.BATCH, ScalingRun.PLANNED,
+						ScalingRun.FILES).contains(engine)) {
+					throw new ParseException("Unknown engine " + engine);
+				}
+			}
+			List<String> drugsPerVisit = parseStrings(line.getOptionValue(
+					"drugs-per-visit", DEFAULT_DRUGS_PER_VISIT));
+			for (String range : drugsPerVisit) {
+				if (!range.matches("\\d+-\\d+")) {
+					throw new ParseException("Drugs per visit must be min-max but was "
+							+ range);
+				}
+			}
+			File outDirectory = new File(line.getOptionValue("out",
+					DEFAULT_OUT));
+			double superlinearThreshold = Double.parseDouble(line
+					.getOptionValue("superlinear-threshold",
+							Double.toString(DEFAULT_SUPERLINEAR_THRESHOLD)));
+			ScalingHarness harness = new ScalingHarness(outDirectory,
+					Integer.parseInt(line.getOptionValue("drugs",
+							Integer.toString(DEFAULT_DRUGS))),
+					Integer.parseInt(line.getOptionValue("shards",
+							Integer.toString(DEFAULT_SHARDS))),
+					Integer.parseInt(line.getOptionValue("repeats",
+							Integer.toString(DEFAULT_REPEATS))),
+					line.getOptionValue("heap", DEFAULT_HEAP),
+					Integer.parseInt(line.getOptionValue("min",
+							Integer.toString(DEFAULT_MINIMUM_OCCURRENCES))));
+			List<ScalingMeasurement> measurements = harness.run(engines,
+					parseLongs(line.getOptionValue("rows", DEFAULT_ROWS)),
+					drugsPerVisit, parseInts(line.getOptionValue("threads",
+							DEFAULT_THREADS)));
+			ScalingReport report = new ScalingReport(measurements,
+					superlinearThreshold);
+			File csv = new File(outDirectory, "scaling.csv");
+			File html = new File(outDirectory, "scaling.html");
+			report.writeCsv(csv.getPath());
+			report.writeHtml(html.getPath(), harness.describeEnvironment());
+			List<String> findings = report.findSuperlinearScaling();
+			for (String finding : findings) {
+				System.out.println("SUPERLINEAR: " + finding);
+			}
+			System.out.println("Wrote " + csv + " and " + html + "; "
+					+ findings.size() + " superlinear findings.");
+			if (harness._failedCells > 0) {
+				LOGGER.error("{} runs failed; see the logs in {}.",
+						harness._failedCells, new File(outDirectory, "runs"));
+				System.exit(1);
+			}
+		} catch (ParseException e) {
+			LOGGER.error("Could not characterize scaling: {}", e.getMessage());
+			new HelpFormatter().printHelp(ScalingHarness.class.getName(),
+					options);
+			System.exit(1);
+		} catch (NumberFormatException e) {
+			LOGGER.error("Could not characterize scaling: {}", e.getMessage());
+			System.exit(1);
+		} catch (IOException e) {
+			LOGGER.error("Could not characterize scaling.", e);
+			System.exit(1);
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted while characterizing scaling.", e);
+			System.exit(1);
+		}
+	}
+}
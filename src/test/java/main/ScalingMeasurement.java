@@ -0,0 +1,204 @@
+package main;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * One stage of one run of the scaling harness: what was run, on how much
+ * input, and what it cost. Measurements travel from a {@link ScalingRun} to
+ * the {@link ScalingHarness} as comma separated lines.
+ */
+public class ScalingMeasurement {
+
+	static final String DELIMITER = ",";
+
+	/** Stage covering the whole pipeline of a run. */
+	static final String TOTAL = "total";
+
+	private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+	private final String _engine;
+	private final long _rows;
+	private final String _drugsPerVisit;
+	private final int _threads;
+	private final String _stage;
+	private final long _wallNanos;
+	private final long _peakHeapBytes;
+	private final long _peakRssBytes;
+	private final long _gcMillis;
+
+	/**
+	 * Constructor
+	 *
+	 * @param engine_
+	 *            The pipeline that was run.
+	 * @param rows_
+	 *            The number of input rows.
+	 * @param drugsPerVisit_
+	 *            The range of drugs per visit of the input, as min-max.
+	 * @param threads_
+	 *            The number of threads the pipeline was allowed.
+	 * @param stage_
+	 *            The stage of the pipeline measured.
+	 * @param wallNanos_
+	 *            Wall time of the stage.
+	 * @param peakHeapBytes_
+	 *            Peak heap used during the stage.
+	 * @param peakRssBytes_
+	 *            Peak resident set size during the stage, or -1 if unknown.
+	 * @param gcMillis_
+	 *            Time spent collecting garbage during the stage.
+	 */
+	public ScalingMeasurement(final String engine_, final long rows_,
+			final String drugsPerVisit_, final int threads_,
+			final String stage_, final long wallNanos_,
+			final long peakHeapBytes_, final long peakRssBytes_,
+			final long gcMillis_) {
+		_engine = engine_;
+		_rows = rows_;
+		_drugsPerVisit = drugsPerVisit_;
+		_threads = threads_;
+		_stage = stage_;
+		_wallNanos = wallNanos_;
+		_peakHeapBytes = peakHeapBytes_;
+		_peakRssBytes = peakRssBytes_;
+		_gcMillis = gcMillis_;
+	}
+
+	/**
+	 * Parse a measurement written by {@link #toLine()}.
+	 *
+	 * @param line_
+	 *            The line.
+	 * @return The measurement.
+	 */
+	public static ScalingMeasurement parse(final String line_) {
+		String[] fields = line_.split(DELIMITER);
+		if (fields.length != 9) {
+			throw new IllegalArgumentException(
+					"Could not parse scaling measurement: " + line_);
+		}
+		return new ScalingMeasurement(fields[0], Long.parseLong(fields[1]),
+				fields[2], Integer.parseInt(fields[3]), fields[4],
+				Long.parseLong(fields[5]), Long.parseLong(fields[6]),
+				Long.parseLong(fields[7]), Long.parseLong(fields[8]));
+	}
+
+	/**
+	 * @return The measurement as a line for {@link #parse(String)}.
+	 */
+	public String toLine() {
+		return StringUtils.join(new Object[] { _engine, _rows,
+				_drugsPerVisit, _threads, _stage, _wallNanos, _peakHeapBytes,
+				_peakRssBytes, _gcMillis }, DELIMITER);
+	}
+
+	/**
+	 * @return The pipeline that was run.
+	 */
+	public String getEngine() {
+		return _engine;
+	}
+
+	/**
+	 * @return The number of input rows.
+	 */
+	public long getRows() {
+		return _rows;
+	}
+
+	/**
+	 * @return The range of drugs per visit of the input, as min-max.
+	 */
+	public String getDrugsPerVisit() {
+		return _drugsPerVisit;
+	}
+
+	/**
+	 * @return The number of threads the pipeline was allowed.
+	 */
+	public int getThreads() {
+		return _threads;
+	}
+
+	/**
+	 * @return The stage of the pipeline measured.
+	 */
+	public String getStage() {
+		return _stage;
+	}
+
+	/**
+	 * @return Wall time of the stage in nanoseconds.
+	 */
+	public long getWallNanos() {
+		return _wallNanos;
+	}
+
+	/**
+	 * @return Wall time of the stage in milliseconds.
+	 */
+	public double getWallMillis() {
+		return _wallNanos / 1e6;
+	}
+
+	/**
+	 * @return Input rows per second of wall time of the stage.
+	 */
+	public double getRowsPerSecond() {
+		return _rows / Math.max(_wallNanos / 1e9, 1e-9);
+	}
+
+	/**
+	 * @return Peak heap used during the stage in bytes.
+	 */
+	public long getPeakHeapBytes() {
+		return _peakHeapBytes;
+	}
+
+	/**
+	 * @return Peak heap used during the stage in megabytes.
+	 */
+	public double getPeakHeapMegabytes() {
+		return _peakHeapBytes / BYTES_PER_MEGABYTE;
+	}
+
+	/**
+	 * @return Peak resident set size during the stage in bytes, or -1 if
+	 *         unknown.
+	 */
+	public long getPeakRssBytes() {
+		return _peakRssBytes;
+	}
+
+	/**
+	 * @return Peak resident set size during the stage in megabytes, or -1 if
+	 *         unknown.
+	 */
+	public double getPeakRssMegabytes() {
+		return _peakRssBytes < 0 ? -1 : _peakRssBytes / BYTES_PER_MEGABYTE;
+	}
+
+	/**
+	 * @return Time spent collecting garbage during the stage in milliseconds.
+	 */
+	public long getGcMillis() {
+		return _gcMillis;
+	}
+
+	/**
+	 * @return The series this measurement belongs to when plotted against
+	 *         input size: everything but the size.
+	 */
+	public String getSeries() {
+		return _engine + " " + _drugsPerVisit + " drugs/visit " + _threads
+				+ (_threads == 1 ? " thread" : " threads");
+	}
+
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this,
+				ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+}
@@ -0,0 +1,536 @@
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns the measurements of the scaling harness into a CSV file and an HTML
+ * report with SVG charts of how each stage scales with input size and
+ * threads, and flags superlinear scaling. Between two input sizes n1 < n2 a
+ * cost growing from c1 to c2 scales with exponent log(c2 / c1) / log(n2 / n1):
+ * 1 is linear, and anything well above 1 will hurt as the input grows.
+ */
+public class ScalingReport {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ScalingReport.class);
+
+	private static final String DELIMITER = ",";
+
+	// Below these the measurements are too noisy to judge scaling by.
+	private static final double MIN_FLAGGED_WALL_MILLIS = 50;
+	private static final double MIN_FLAGGED_HEAP_MEGABYTES = 16;
+
+	private static final int CHART_WIDTH = 880;
+	private static final int CHART_HEIGHT = 360;
+	private static final int PLOT_LEFT = 70;
+	private static final int PLOT_TOP = 30;
+	private static final int PLOT_WIDTH = 520;
+	private static final int PLOT_HEIGHT = 280;
+	private static final int TICKS = 5;
+	private static final String[] COLORS = { "#1f77b4", "#ff7f0e", "#2ca02c",
+			"#d62728", "#9467bd", "#8c564b", "#e377c2", "#7f7f7f", "#bcbd22",
+			"#17becf" };
+
+	private static final Comparator<ScalingMeasurement> BY_SERIES_THEN_ROWS = new Comparator<ScalingMeasurement>() {
+		@Override
+		public int compare(final ScalingMeasurement a_,
+				final ScalingMeasurement b_) {
+			int bySeries = (a_.getSeries() + a_.getStage()).compareTo(b_
+					.getSeries() + b_.getStage());
+			return bySeries != 0 ? bySeries : Long.compare(a_.getRows(),
+					b_.getRows());
+		}
+	};
+
+	private final List<ScalingMeasurement> _measurements;
+	private final double _superlinearThreshold;
+
+	/**
+	 * Constructor
+	 *
+	 * @param measurements_
+	 *            One measurement per stage of each run in the matrix.
+	 * @param superlinearThreshold_
+	 *            The scaling exponent above which growth is flagged.
+	 */
+	public ScalingReport(final List<ScalingMeasurement> measurements_,
+			final double superlinearThreshold_) {
+		_measurements = new ArrayList<ScalingMeasurement>(measurements_);
+		Collections.sort(_measurements, BY_SERIES_THEN_ROWS);
+		_superlinearThreshold = superlinearThreshold_;
+	}
+
+	/**
+	 * Get the exponent with which a cost grew between two input sizes.
+	 *
+	 * @param rows1_
+	 *            The smaller input size.
+	 * @param cost1_
+	 *            The cost at the smaller input size.
+	 * @param rows2_
+	 *            The larger input size.
+	 * @param cost2_
+	 *            The cost at the larger input size.
+	 * @return The scaling exponent, or NaN if it cannot be told.
+	 */
+	static double scalingExponent(final long rows1_, final double cost1_,
+			final long rows2_, final double cost2_) {
+		if (rows1_ <= 0 || rows2_ <= rows1_ || cost1_ <= 0 || cost2_ <= 0) {
+			return Double.NaN;
+		}
+		return Math.log(cost2_ / cost1_) / Math.log((double) rows2_ / rows1_);
+	}
+
+	/**
+	 * Find the costs that grew superlinearly with input size: the wall time or
+	 * peak heap of a stage whose scaling exponent between consecutive input
+	 * sizes of a series is above the threshold.
+	 *
+	 * @return A description of each superlinear step.
+	 */
+	public List<String> findSuperlinearScaling() {
+		List<String> findings = new ArrayList<String>();
+		for (ScalingMeasurement[] step : getSizeSteps()) {
+			ScalingMeasurement smaller = step[0];
+			ScalingMeasurement larger = step[1];
+			double timeExponent = getTimeExponent(smaller, larger);
+			if (timeExponent > _superlinearThreshold) {
+				findings.add(String.format(Locale.ROOT,
+						"%s, %s: wall time grew from %.0f ms to %.0f ms as rows grew "
+								+ "from %d to %d (exponent %.2f)",
+						larger.getSeries(), larger.getStage(),
+						smaller.getWallMillis(), larger.getWallMillis(),
+						smaller.getRows(), larger.getRows(), timeExponent));
+			}
+			double heapExponent = getHeapExponent(smaller, larger);
+			if (heapExponent > _superlinearThreshold) {
+				findings.add(String.format(Locale.ROOT,
+						"%s, %s: peak heap grew from %.0f MB to %.0f MB as rows grew "
+								+ "from %d to %d (exponent %.2f)",
+						larger.getSeries(), larger.getStage(),
+						smaller.getPeakHeapMegabytes(),
+						larger.getPeakHeapMegabytes(), smaller.getRows(),
+						larger.getRows(), heapExponent));
+			}
+		}
+		return findings;
+	}
+
+	/**
+	 * Write every measurement, with its scaling exponents from the next
+	 * smaller input size and its speedup over one thread, to a CSV file.
+	 *
+	 * @param filename_
+	 *            The file to write.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void writeCsv(final String filename_) throws IOException {
+		Map<ScalingMeasurement, ScalingMeasurement> smallerOf = new LinkedHashMap<ScalingMeasurement, ScalingMeasurement>();
+		for (ScalingMeasurement[] step : getSizeSteps()) {
+			smallerOf.put(step[1], step[0]);
+		}
+		PrintWriter w = new PrintWriter(new FileWriter(filename_));
+		try {
+			w.println(StringUtils.join(new String[] { "engine", "rows",
+					"drugs_per_visit", "threads", "stage", "wall_ms",
+					"rows_per_s", "peak_heap_mb", "peak_rss_mb", "gc_ms",
+					"time_exponent", "heap_exponent", "speedup" }, DELIMITER));
+			for (ScalingMeasurement m : _measurements) {
+				ScalingMeasurement smaller = smallerOf.get(m);
+				double speedup = getSpeedup(m);
+				w.println(StringUtils.join(new Object[] { m.getEngine(),
+						m.getRows(), m.getDrugsPerVisit(), m.getThreads(),
+						m.getStage(), format(m.getWallMillis(), 1),
+						format(m.getRowsPerSecond(), 0),
+						format(m.getPeakHeapMegabytes(), 1),
+						format(m.getPeakRssMegabytes(), 1), m.getGcMillis(),
+						smaller == null ? "" : format(
+								getTimeExponent(smaller, m), 2),
+						smaller == null ? "" : format(
+								getHeapExponent(smaller, m), 2),
+						format(speedup, 2) }, DELIMITER));
+			}
+		} finally {
+			w.close();
+		}
+		LOGGER.info("Wrote {} scaling measurements to {}.",
+				_measurements.size(), filename_);
+	}
+
+	/**
+	 * Write an HTML report: the superlinear findings, charts of each cost of
+	 * the whole run against input size, of each stage's wall time against
+	 * input size and of speedup against threads, and a table of every
+	 * measurement.
+	 *
+	 * @param filename_
+	 *            The file to write.
+	 * @param environment_
+	 *            A description of where the measurements were taken.
+	 * @throws IOException
+	 *             If the file could not be written.
+	 */
+	public void writeHtml(final String filename_, final String environment_)
+			throws IOException {
+		PrintWriter w = new PrintWriter(new FileWriter(filename_));
+		try {
+			w.println("<!DOCTYPE html>");
+			w.println("<html><head><meta charset=\"utf-8\"><title>Drug pair scaling</title>");
+			w.println("<style>body{font-family:sans-serif;margin:2em}"
+					+ "table{border-collapse:collapse}"
+					+ "td,th{border:1px solid #ccc;padding:2px 6px;text-align:right}"
+					+ ".flag{color:#b00}</style></head><body>");
+			w.println("<h1>Drug pair scaling</h1>");
+			w.println("<p>" + escape(environment_) + "</p>");
+
+			w.println("<h2>Superlinear scaling</h2>");
+			List<String> findings = findSuperlinearScaling();
+			if (findings.isEmpty()) {
+				w.println("<p>No stage grew faster than rows^"
+						+ _superlinearThreshold + ".</p>");
+			} else {
+				w.println("<ul>");
+				for (String finding : findings) {
+					w.println("<li class=\"flag\">" + escape(finding) + "</li>");
+				}
+				w.println("</ul>");
+			}
+
+			w.println("<h2>Whole run against input size</h2>");
+			w.println(chartAgainstRows(ScalingMeasurement.TOTAL,
+					"Wall time (ms)", Cost.WALL_MILLIS));
+			w.println(chartAgainstRows(ScalingMeasurement.TOTAL, "Rows/s",
+					Cost.ROWS_PER_SECOND));
+			w.println(chartAgainstRows(ScalingMeasurement.TOTAL,
+					"Peak heap (MB)", Cost.PEAK_HEAP_MEGABYTES));
+			w.println(chartAgainstRows(ScalingMeasurement.TOTAL,
+					"Peak RSS (MB)", Cost.PEAK_RSS_MEGABYTES));
+			w.println(chartAgainstRows(ScalingMeasurement.TOTAL,
+					"GC time (ms)", Cost.GC_MILLIS));
+
+			w.println("<h2>Stages against input size</h2>");
+			for (String stage : getStages()) {
+				if (!ScalingMeasurement.TOTAL.equals(stage)) {
+					w.println(chartAgainstRows(stage, stage + " wall time (ms)",
+							Cost.WALL_MILLIS));
+				}
+			}
+
+			if (getThreadCounts().size() > 1) {
+				w.println("<h2>Speedup against threads</h2>");
+				for (String stage : getStages()) {
+					String chart = chartAgainstThreads(stage);
+					if (chart != null) {
+						w.println(chart);
+					}
+				}
+			}
+
+			w.println("<h2>Measurements</h2>");
+			w.println("<table><tr><th>engine</th><th>rows</th><th>drugs/visit</th>"
+					+ "<th>threads</th><th>stage</th><th>wall ms</th><th>rows/s</th>"
+					+ "<th>peak heap MB</th><th>peak RSS MB</th><th>GC ms</th>"
+					+ "<th>speedup</th></tr>");
+			for (ScalingMeasurement m : _measurements) {
+				w.println("<tr><td>" + escape(m.getEngine()) + "</td><td>"
+						+ m.getRows() + "</td><td>"
+						+ escape(m.getDrugsPerVisit()) + "</td><td>"
+						+ m.getThreads() + "</td><td>" + escape(m.getStage())
+						+ "</td><td>" + format(m.getWallMillis(), 1)
+						+ "</td><td>" + format(m.getRowsPerSecond(), 0)
+						+ "</td><td>" + format(m.getPeakHeapMegabytes(), 1)
+						+ "</td><td>" + format(m.getPeakRssMegabytes(), 1)
+						+ "</td><td>" + m.getGcMillis() + "</td><td>"
+						+ format(getSpeedup(m), 2) + "</td></tr>");
+			}
+			w.println("</table></body></html>");
+		} finally {
+			w.close();
+		}
+		LOGGER.info("Wrote scaling report to {}.", filename_);
+	}
+
+	/**
+	 * A cost that can be plotted against input size.
+	 */
+	private enum Cost {
+		WALL_MILLIS, ROWS_PER_SECOND, PEAK_HEAP_MEGABYTES, PEAK_RSS_MEGABYTES, GC_MILLIS;
+
+		double of(final ScalingMeasurement measurement_) {
+			switch (this) {
+			case WALL_MILLIS:
+				return measurement_.getWallMillis();
+			case ROWS_PER_SECOND:
+				return measurement_.getRowsPerSecond();
+			case PEAK_HEAP_MEGABYTES:
+				return measurement_.getPeakHeapMegabytes();
+			case PEAK_RSS_MEGABYTES:
+				return measurement_.getPeakRssMegabytes();
+			default:
+				return measurement_.getGcMillis();
+			}
+		}
+	}
+
+	/**
+	 * @return Each pair of measurements of the same series and stage at
+	 *         consecutive input sizes, smaller first.
+	 */
+	private List<ScalingMeasurement[]> getSizeSteps() {
+		List<ScalingMeasurement[]> steps = new ArrayList<ScalingMeasurement[]>();
+		for (int i = 1; i < _measurements.size(); i++) {
+			ScalingMeasurement smaller = _measurements.get(i - 1);
+			ScalingMeasurement larger = _measurements.get(i);
+			if (smaller.getSeries().equals(larger.getSeries())
+					&& smaller.getStage().equals(larger.getStage())
+					&& smaller.getRows() < larger.getRows()) {
+				steps.add(new ScalingMeasurement[] { smaller, larger });
+			}
+		}
+		return steps;
+	}
+
+	private static double getTimeExponent(final ScalingMeasurement smaller_,
+			final ScalingMeasurement larger_) {
+		if (smaller_.getWallMillis() < MIN_FLAGGED_WALL_MILLIS) {
+			return Double.NaN;
+		}
+		return scalingExponent(smaller_.getRows(), smaller_.getWallMillis(),
+				larger_.getRows(), larger_.getWallMillis());
+	}
+
+	private static double getHeapExponent(final ScalingMeasurement smaller_,
+			final ScalingMeasurement larger_) {
+		if (smaller_.getPeakHeapMegabytes() < MIN_FLAGGED_HEAP_MEGABYTES) {
+			return Double.NaN;
+		}
+		return scalingExponent(smaller_.getRows(),
+				smaller_.getPeakHeapMegabytes(), larger_.getRows(),
+				larger_.getPeakHeapMegabytes());
+	}
+
+	/**
+	 * @return The wall time of the same run on one thread over this one's, or
+	 *         NaN if there was no such run.
+	 */
+	private double getSpeedup(final ScalingMeasurement measurement_) {
+		for (ScalingMeasurement m : _measurements) {
+			if (m.getThreads() == 1
+					&& m.getEngine().equals(measurement_.getEngine())
+					&& m.getRows() == measurement_.getRows()
+					&& m.getDrugsPerVisit().equals(
+							measurement_.getDrugsPerVisit())
+					&& m.getStage().equals(measurement_.getStage())) {
+				return m.getWallMillis() / measurement_.getWallMillis();
+			}
+		}
+		return Double.NaN;
+	}
+
+	private Set<String> getStages() {
+		Set<String> stages = new LinkedHashSet<String>();
+		for (ScalingMeasurement m : _measurements) {
+			stages.add(m.getStage());
+		}
+		return stages;
+	}
+
+	private Set<Integer> getThreadCounts() {
+		Set<Integer> threadCounts = new TreeSet<Integer>();
+		for (ScalingMeasurement m : _measurements) {
+			threadCounts.add(m.getThreads());
+		}
+		return threadCounts;
+	}
+
+	private String chartAgainstRows(final String stage_, final String title_,
+			final Cost cost_) {
+		Map<String, List<double[]>> series = new LinkedHashMap<String, List<double[]>>();
+		for (ScalingMeasurement m : _measurements) {
+			double cost = cost_.of(m);
+			if (m.getStage().equals(stage_) && cost >= 0) {
+				if (!series.containsKey(m.getSeries())) {
+					series.put(m.getSeries(), new ArrayList<double[]>());
+				}
+				series.get(m.getSeries()).add(
+						new double[] { m.getRows(), cost });
+			}
+		}
+		if (series.isEmpty()) {
+			return "<p>No " + escape(title_) + " was measured.</p>";
+		}
+		return chart(title_, "rows", series);
+	}
+
+	/**
+	 * @return A chart of the speedup over one thread of each engine, input size
+	 *         and drugs per visit run on more than one thread count, or null
+	 *         if there are none.
+	 */
+	private String chartAgainstThreads(final String stage_) {
+		Map<String, List<double[]>> series = new LinkedHashMap<String, List<double[]>>();
+		List<ScalingMeasurement> byThreads = new ArrayList<ScalingMeasurement>(
+				_measurements);
+		Collections.sort(byThreads, new Comparator<ScalingMeasurement>() {
+			@Override
+			public int compare(final ScalingMeasurement a_,
+					final ScalingMeasurement b_) {
+				return Integer.compare(a_.getThreads(), b_.getThreads());
+			}
+		});
+		for (ScalingMeasurement m : byThreads) {
+			double speedup = getSpeedup(m);
+			if (m.getStage().equals(stage_) && !Double.isNaN(speedup)) {
+				String name = m.getEngine() + " " + m.getRows() + " rows "
+						+ m.getDrugsPerVisit() + " drugs/visit";
+				if (!series.containsKey(name)) {
+					series.put(name, new ArrayList<double[]>());
+				}
+				series.get(name).add(new double[] { m.getThreads(), speedup });
+			}
+		}
+		for (List<double[]> points : series.values()) {
+			if (points.size() > 1) {
+				return chart(stage_ + " speedup over 1 thread", "threads",
+						series);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Draw a line chart with linear axes from zero, so that linear scaling is
+	 * a straight line through the origin.
+	 */
+	private static String chart(final String title_, final String xLabel_,
+			final Map<String, List<double[]>> series_) {
+		double maxX = 0;
+		double maxY = 0;
+		for (List<double[]> points : series_.values()) {
+			for (double[] point : points) {
+				maxX = Math.max(maxX, point[0]);
+				maxY = Math.max(maxY, point[1]);
+			}
+		}
+		double stepX = niceStep(maxX);
+		double stepY = niceStep(maxY);
+		maxX = stepX * TICKS;
+		maxY = stepY * TICKS;
+
+		StringBuilder svg = new StringBuilder();
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+				.append(CHART_WIDTH).append("\" height=\"")
+				.append(CHART_HEIGHT)
+				.append("\" font-size=\"11\" font-family=\"sans-serif\">\n");
+		svg.append("<text x=\"").append(PLOT_LEFT).append("\" y=\"16\" font-size=\"13\">")
+				.append(escape(title_)).append("</text>\n");
+		for (int i = 0; i <= TICKS; i++) {
+			double x = PLOT_LEFT + PLOT_WIDTH * i / (double) TICKS;
+			double y = PLOT_TOP + PLOT_HEIGHT - PLOT_HEIGHT * i / (double) TICKS;
+			svg.append(String.format(Locale.ROOT,
+					"<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#eee\"/>\n",
+					x, PLOT_TOP, x, PLOT_TOP + PLOT_HEIGHT));
+			svg.append(String.format(Locale.ROOT,
+					"<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#eee\"/>\n",
+					PLOT_LEFT, y, PLOT_LEFT + PLOT_WIDTH, y));
+			svg.append(String.format(Locale.ROOT,
+					"<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s</text>\n",
+					x, PLOT_TOP + PLOT_HEIGHT + 14, tickLabel(stepX * i)));
+			svg.append(String.format(Locale.ROOT,
+					"<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>\n",
+					PLOT_LEFT - 4, y + 4, tickLabel(stepY * i)));
+		}
+		svg.append(String.format(Locale.ROOT,
+				"<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"#999\"/>\n",
+				PLOT_LEFT, PLOT_TOP, PLOT_WIDTH, PLOT_HEIGHT));
+		svg.append(String.format(Locale.ROOT,
+				"<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>\n",
+				PLOT_LEFT + PLOT_WIDTH / 2, CHART_HEIGHT - 4, escape(xLabel_)));
+
+		int color = 0;
+		for (Map.Entry<String, List<double[]>> entry : series_.entrySet()) {
+			String stroke = COLORS[color % COLORS.length];
+			StringBuilder polyline = new StringBuilder();
+			for (double[] point : entry.getValue()) {
+				double x = PLOT_LEFT + PLOT_WIDTH * point[0] / maxX;
+				double y = PLOT_TOP + PLOT_HEIGHT - PLOT_HEIGHT * point[1]
+						/ maxY;
+				polyline.append(String.format(Locale.ROOT, "%.1f,%.1f ", x, y));
+				svg.append(String.format(Locale.ROOT,
+						"<circle cx=\"%.1f\" cy=\"%.1f\" r=\"3\" fill=\"%s\"/>\n",
+						x, y, stroke));
+			}
+			svg.append("<polyline fill=\"none\" stroke=\"").append(stroke)
+					.append("\" points=\"").append(polyline.toString().trim())
+					.append("\"/>\n");
+			int legendY = PLOT_TOP + 10 + 16 * color;
+			svg.append(String.format(Locale.ROOT,
+					"<rect x=\"%d\" y=\"%d\" width=\"10\" height=\"10\" fill=\"%s\"/>\n",
+					PLOT_LEFT + PLOT_WIDTH + 16, legendY - 9, stroke));
+			svg.append(String.format(Locale.ROOT,
+					"<text x=\"%d\" y=\"%d\">%s</text>\n", PLOT_LEFT
+							+ PLOT_WIDTH + 30, legendY, escape(entry.getKey())));
+			color++;
+		}
+		svg.append("</svg>");
+		return svg.toString();
+	}
+
+	/**
+	 * @return A step of 1, 2 or 5 times a power of ten such that the ticks
+	 *         cover the maximum.
+	 */
+	private static double niceStep(final double max_) {
+		if (max_ <= 0) {
+			return 1;
+		}
+		double raw = max_ / TICKS;
+		double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+		for (double multiple : new double[] { 1, 2, 5, 10 }) {
+			if (multiple * magnitude >= raw) {
+				return multiple * magnitude;
+			}
+		}
+		return 10 * magnitude;
+	}
+
+	private static String tickLabel(final double value_) {
+		if (value_ >= 1e6 && value_ % 1e5 == 0) {
+			return format(value_ / 1e6, value_ % 1e6 == 0 ? 0 : 1) + "M";
+		}
+		if (value_ >= 1e3 && value_ % 100 == 0) {
+			return format(value_ / 1e3, value_ % 1e3 == 0 ? 0 : 1) + "k";
+		}
+		return value_ == Math.rint(value_) ? format(value_, 0) : format(
+				value_, 2);
+	}
+
+	private static String format(final double value_, final int decimals_) {
+		if (Double.isNaN(value_)) {
+			return "";
+		}
+		return String.format(Locale.ROOT, "%." + decimals_ + "f", value_);
+	}
+
+	private static String escape(final String text_) {
+		return StringEscapeUtils.escapeHtml4(text_);
+	}
+}
@@ -0,0 +1,116 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ScalingReportTest {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ScalingReportTest.class);
+
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final long MILLISECOND = 1000000;
+
+	/**
+	 * A run whose parse stage is linear in rows and whose calculate stage is
+	 * quadratic, on one and two threads, where two threads halve the time.
+	 */
+	private static List<ScalingMeasurement> createMeasurements() {
+		List<ScalingMeasurement> measurements = new ArrayList<ScalingMeasurement>();
+		for (int threads = 1; threads <= 2; threads++) {
+			for (long rows = 100000; rows <= 400000; rows *= 2) {
+				long scale = rows / 100000;
+				measurements.add(new ScalingMeasurement("files", rows, "2-8",
+						threads, "parse", 100 * scale * MILLISECOND / threads,
+						64 * scale * MEGABYTE, -1, 10));
+				measurements.add(new ScalingMeasurement("files", rows, "2-8",
+						threads, "calculate", 100 * scale * scale
+								* MILLISECOND / threads, 64 * MEGABYTE, -1, 10));
+			}
+		}
+		return measurements;
+	}
+
+	@Test
+	public void testScalingExponent() {
+		LOGGER.info("================ testScalingExponent ================");
+		Assert.assertEquals(1.0,
+				ScalingReport.scalingExponent(100, 10, 200, 20), 1e-9);
+		Assert.assertEquals(2.0,
+				ScalingReport.scalingExponent(100, 10, 200, 40), 1e-9);
+		Assert.assertEquals(0.0,
+				ScalingReport.scalingExponent(100, 10, 400, 10), 1e-9);
+		Assert.assertTrue(Double.isNaN(ScalingReport.scalingExponent(100, 0,
+				200, 40)));
+	}
+
+	@Test
+	public void testFlagsOnlySuperlinearStages() {
+		LOGGER.info("================ testFlagsOnlySuperlinearStages ================");
+		List<String> findings = new ScalingReport(createMeasurements(), 1.2)
+				.findSuperlinearScaling();
+		// Two size steps of the calculate stage on each thread count.
+		Assert.assertEquals(4, findings.size());
+		for (String finding : findings) {
+			Assert.assertTrue(finding, finding.contains("calculate"));
+			Assert.assertTrue(finding, finding.contains("exponent 2.00"));
+		}
+		Assert.assertTrue(new ScalingReport(createMeasurements(), 2.5)
+				.findSuperlinearScaling().isEmpty());
+	}
+
+	@Test
+	public void testWritesCsvAndHtml() throws IOException {
+		LOGGER.info("================ testWritesCsvAndHtml ================");
+		File csv = File.createTempFile("scaling", ".csv");
+		File html = File.createTempFile("scaling", ".html");
+		csv.deleteOnExit();
+		html.deleteOnExit();
+		ScalingReport report = new ScalingReport(createMeasurements(), 1.2);
+		report.writeCsv(csv.getPath());
+		report.writeHtml(html.getPath(), "test");
+
+		List<String> lines = readLines(csv);
+		Assert.assertEquals(13, lines.size());
+		Assert.assertEquals(
+				"engine,rows,drugs_per_visit,threads,stage,wall_ms,rows_per_s,"
+						+ "peak_heap_mb,peak_rss_mb,gc_ms,time_exponent,"
+						+ "heap_exponent,speedup", lines.get(0));
+		Assert.assertTrue(lines.contains("files,400000,2-8,2,calculate,"
+				+ "800.0,500000,64.0,-1.0,10,2.00,0.00,2.00"));
+		Assert.assertTrue(lines.contains("files,100000,2-8,1,parse,"
+				+ "100.0,1000000,64.0,-1.0,10,,,1.00"));
+
+		StringBuilder page = new StringBuilder();
+		for (String line : readLines(html)) {
+			page.append(line).append('\n');
+		}
+		Assert.assertTrue(page.indexOf("<svg") >= 0);
+		Assert.assertTrue(page.indexOf("Speedup against threads") >= 0);
+		Assert.assertTrue(page.indexOf("class=\"flag\"") >= 0);
+	}
+
+	private static List<String> readLines(final File file_) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader r = new BufferedReader(new FileReader(file_));
+		try {
+			String line;
+			while ((line = r.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			r.close();
+		}
+		return lines;
+	}
+}
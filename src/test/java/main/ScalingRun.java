@@ -0,0 +1,302 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import api.DrugPair;
+import api.SingleDrugAdministration;
+import calc.DrugPairCalculator;
+import calc.DrugPairCounts;
+import calc.ExecutionPlan;
+import calc.ExecutionPlanner;
+import file.DrugFileFinder;
+import file.DrugFileParser;
+import file.DrugPairFileWriter;
+
+/**
+ * Runs one pipeline once over one input, stage by stage, in a JVM of its own,
+ * and appends a {@link ScalingMeasurement} of each stage and of the whole run
+ * to a result file. Started by the {@link ScalingHarness}; a fresh JVM per run
+ * keeps the peak heap and resident set size of one run from leaking into the
+ * next.
+ *
+ * The pipelines are those of {@link DrugPairCalculationMain}:
+ * <ul>
+ * <li>batch: parse every row into memory, calculate pairs with
+ * {@link DrugPairCalculator} and write them (stages parse, calculate, write).
+ * </li>
+ * <li>planned: plan from a sample, count into the planned structure while
+ * parsing, filter by minimum occurrence and write (stages plan, count, filter,
+ * write).</li>
+ * <li>files: the input is a directory of files, parsed in parallel by
+ * {@link MultiFileDrugPairRun} on the given number of threads (stages plan,
+ * accumulate, filter, write).</li>
+ * </ul>
+ *
+ * Usage: ScalingRun engine input output rows drugs_per_visit threads
+ * min_occurrence result_file
+ */
+public class ScalingRun {
+
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ScalingRun.class);
+
+	static final String BATCH = "batch";
+	static final String PLANNED = "planned";
+	static final String FILES = "files";
+
+	private static final long PLAN_SAMPLE_ROWS = 100000;
+
+	private static final String PROC_STATUS = "/proc/self/status";
+	private static final String PROC_CLEAR_REFS = "/proc/self/clear_refs";
+	private static final String PEAK_RSS_FIELD = "VmHWM:";
+	// Writing 5 to clear_refs resets the peak resident set size.
+	private static final String RESET_PEAK_RSS = "5";
+	private static final long BYTES_PER_KILOBYTE = 1024;
+
+	private final String _engine;
+	private final String _input;
+	private final String _output;
+	private final long _rows;
+	private final String _drugsPerVisit;
+	private final int _threads;
+	private final int _minOccurrence;
+
+	private final List<ScalingMeasurement> _measurements = new ArrayList<ScalingMeasurement>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param engine_
+	 *            The pipeline to run: batch, planned or files.
+	 * @param input_
+	 *            The input file, or directory of files for the files engine.
+	 * @param output_
+	 *            The file to write drug pairs to.
+	 * @param rows_
+	 *            The number of rows of the input.
+	 * @param drugsPerVisit_
+	 *            The range of drugs per visit of the input, as min-max.
+	 * @param threads_
+	 *            The number of threads the pipeline is allowed.
+	 * @param minOccurrence_
+	 *            The minimum occurrence of the drug pairs written.
+	 */
+	public ScalingRun(final String engine_, final String input_,
+			final String output_, final long rows_,
+			final String drugsPerVisit_, final int threads_,
+			final int minOccurrence_) {
+		_engine = engine_;
+		_input = input_;
+		_output = output_;
+		_rows = rows_;
+		_drugsPerVisit = drugsPerVisit_;
+		_threads = threads_;
+		_minOccurrence = minOccurrence_;
+	}
+
+	/**
+	 * Run the pipeline, measuring each stage.
+	 *
+	 * @return The measurements of each stage, then of the whole run.
+	 * @throws Exception
+	 *             If a stage failed.
+	 */
+	public List<ScalingMeasurement> run() throws Exception {
+		_measurements.clear();
+		long startNanos = System.nanoTime();
+		long startGcMillis = getGcMillis();
+		final DrugPairFileWriter drugPairFileWriter = new DrugPairFileWriter();
+		if (BATCH.equals(_engine)) {
+			final List<SingleDrugAdministration> drugAdmins = measure("parse",
+					() -> new DrugFileParser().parseFile(_input));
+			final Set<DrugPair> drugPairs = measure("calculate",
+					() -> DrugPairCalculator.getDrugPairsWithMinOccurence(
+							drugAdmins, _minOccurrence));
+			measure("write", () -> {
+				drugPairFileWriter.writePairs(drugPairs, _output);
+				return null;
+			});
+		} else if (PLANNED.equals(_engine) || FILES.equals(_engine)) {
+			final List<String> inputFilenames = new DrugFileFinder()
+					.find(_input);
+			final ExecutionPlan plan = measure("plan",
+					() -> DrugPairCalculationMain.planDrugPairCalculation(
+							inputFilenames.get(0), PLAN_SAMPLE_ROWS,
+							ExecutionPlanner.getDefaultMemoryBudgetBytes()
+									/ _threads, null,
+							FILES.equals(_engine) ? 1 : null));
+			final DrugPairCounts drugPairCounts;
+			if (PLANNED.equals(_engine)) {
+				drugPairCounts = measure("count", () -> new PlannedDrugPairRun(
+						_input, plan).countDrugPairs());
+			} else {
+				drugPairCounts = measure("accumulate",
+						() -> new MultiFileDrugPairRun(inputFilenames,
+								_threads, plan).accumulate()
+								.getDrugPairCounts());
+			}
+			final Set<DrugPair> drugPairs = measure("filter",
+					() -> drugPairCounts
+							.getDrugPairsWithMinOccurrence(_minOccurrence));
+			measure("write", () -> {
+				drugPairFileWriter.writePairs(drugPairs, _output);
+				return null;
+			});
+		} else {
+			throw new IllegalArgumentException("Unknown engine " + _engine);
+		}
+
+		// Without a reset between stages the high water mark is the run's.
+		long peakRssBytes = getPeakRssBytes();
+		long peakHeapBytes = 0;
+		for (ScalingMeasurement measurement : _measurements) {
+			peakHeapBytes = Math.max(peakHeapBytes,
+					measurement.getPeakHeapBytes());
+			peakRssBytes = Math.max(peakRssBytes,
+					measurement.getPeakRssBytes());
+		}
+		_measurements.add(new ScalingMeasurement(_engine, _rows,
+				_drugsPerVisit, _threads, ScalingMeasurement.TOTAL,
+				System.nanoTime() - startNanos, peakHeapBytes, peakRssBytes,
+				getGcMillis() - startGcMillis));
+		return new ArrayList<ScalingMeasurement>(_measurements);
+	}
+
+	/**
+	 * Run a stage and measure its wall time, peak heap, peak resident set size
+	 * and garbage collection time.
+	 */
+	private <T> T measure(final String stage_, final Callable<T> work_)
+			throws Exception {
+		List<MemoryPoolMXBean> heapPools = getHeapPools();
+		for (MemoryPoolMXBean pool : heapPools) {
+			pool.resetPeakUsage();
+		}
+		boolean peakRssReset = resetPeakRss();
+		long startGcMillis = getGcMillis();
+		long startNanos = System.nanoTime();
+		T result = work_.call();
+		long wallNanos = System.nanoTime() - startNanos;
+		// The pools peak at different times, so their sum is an upper bound.
+		long peakHeapBytes = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			peakHeapBytes += pool.getPeakUsage().getUsed();
+		}
+		ScalingMeasurement measurement = new ScalingMeasurement(_engine,
+				_rows, _drugsPerVisit, _threads, stage_, wallNanos,
+				peakHeapBytes, peakRssReset ? getPeakRssBytes() : -1,
+				getGcMillis() - startGcMillis);
+		LOGGER.info("Measured {}.", measurement);
+		_measurements.add(measurement);
+		return result;
+	}
+
+	private static List<MemoryPoolMXBean> getHeapPools() {
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool);
+			}
+		}
+		return heapPools;
+	}
+
+	private static long getGcMillis() {
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			gcMillis += Math.max(0, collector.getCollectionTime());
+		}
+		return gcMillis;
+	}
+
+	/**
+	 * @return Whether the peak resident set size could be reset, which only
+	 *         Linux allows.
+	 */
+	private static boolean resetPeakRss() {
+		PrintWriter w = null;
+		try {
+			w = new PrintWriter(new FileWriter(PROC_CLEAR_REFS));
+			w.print(RESET_PEAK_RSS);
+			w.flush();
+			return !w.checkError();
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (w != null) {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * @return The peak resident set size of this process, or -1 where
+	 *         /proc/self/status cannot be read.
+	 */
+	static long getPeakRssBytes() {
+		if (!new File(PROC_STATUS).canRead()) {
+			return -1;
+		}
+		BufferedReader r = null;
+		try {
+			r = new BufferedReader(new FileReader(PROC_STATUS));
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.startsWith(PEAK_RSS_FIELD)) {
+					// For example "VmHWM:	  123456 kB".
+					return Long.parseLong(line
+							.substring(PEAK_RSS_FIELD.length()).trim()
+							.split("\\s+")[0])
+							* BYTES_PER_KILOBYTE;
+				}
+			}
+			return -1;
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			if (r != null) {
+				try {
+					r.close();
+				} catch (IOException e) {
+					LOGGER.warn("Could not close {}.", PROC_STATUS, e);
+				}
+			}
+		}
+	}
+
+	public static void main(final String[] args_) throws Exception {
+		if (args_.length != 8) {
+			System.err.println("Usage: ScalingRun engine input output rows "
+					+ "drugs_per_visit threads min_occurrence result_file");
+			System.exit(2);
+		}
+		List<ScalingMeasurement> measurements = new ScalingRun(args_[0],
+				args_[1], args_[2], Long.parseLong(args_[3]), args_[4],
+				Integer.parseInt(args_[5]), Integer.parseInt(args_[6])).run();
+		PrintWriter w = new PrintWriter(new FileWriter(args_[7], true));
+		try {
+			for (ScalingMeasurement measurement : measurements) {
+				w.println(measurement.toLine());
+			}
+		} finally {
+			w.close();
+		}
+	}
+}